@@ -0,0 +1,122 @@
+package gym.bench;
+
+import gym.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for a running ApiServer: many clients at once, each sending
+ * a mix of page reads, single reads and adds as fast as it can.
+ *
+ * Usage (start the server first, e.g. java gym.App --server copy.db):
+ *   java gym.bench.ApiLoadTest [--url http://localhost:8080] [--clients 200]
+ *        [--seconds 20] [--writes 0.2] [--first-id 10000000] [--seed 42]
+ *
+ * Adds use ids from --first-id upward, so run it against a copy of the
+ * database. Prints requests per second and p50/p99 latency for reads
+ * and writes, then the server's own /api/metrics.
+ */
+public class ApiLoadTest {
+
+    private static final String[] EXERCISES = {"Bench Press", "Squat", "Deadlift", "Overhead Press", "Barbell Row"};
+    private static final String[] MUSCLES = {"Chest", "Legs", "Back", "Shoulders", "Back"};
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int clients = 200;
+        int seconds = 20;
+        double writes = 0.2;
+        int firstId = 10_000_000;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url": url = args[i + 1]; break;
+                case "--clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "--writes": writes = Double.parseDouble(args[i + 1]); break;
+                case "--first-id": firstId = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        String base = url + "/api/";
+        AtomicInteger nextId = new AtomicInteger(firstId);
+        LatencyHistogram readTimes = new LatencyHistogram();
+        LatencyHistogram writeTimes = new LatencyHistogram();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong adds = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        double writeShare = writes;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Random rnd = new Random(seed + c);
+            Thread t = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    HttpRequest req;
+                    boolean write = rnd.nextDouble() < writeShare;
+                    if (write) {
+                        int e = rnd.nextInt(EXERCISES.length);
+                        String body = "{\"id\":" + nextId.getAndIncrement()
+                                + ",\"date\":\"" + LocalDate.of(2024, 1, 1).plusDays(rnd.nextInt(365)) + "\""
+                                + ",\"exerciseName\":\"" + EXERCISES[e] + "\",\"muscleGroup\":\"" + MUSCLES[e] + "\""
+                                + ",\"sets\":" + (3 + rnd.nextInt(3)) + ",\"reps\":" + (3 + rnd.nextInt(8))
+                                + ",\"weightLbs\":" + (95 + rnd.nextInt(200)) + ",\"durationMin\":" + (5 + rnd.nextInt(20))
+                                + ",\"rpe\":" + (6 + rnd.nextInt(4)) + ",\"notes\":\"load test\"}";
+                        req = HttpRequest.newBuilder(URI.create(base + "sessions"))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                    } else if (rnd.nextBoolean()) {
+                        req = HttpRequest.newBuilder(URI.create(base + "sessions?after=" + rnd.nextInt(100_000) + "&limit=50")).build();
+                    } else {
+                        req = HttpRequest.newBuilder(URI.create(base + "sessions/" + (1 + rnd.nextInt(100_000)))).build();
+                    }
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+                        long took = System.nanoTime() - t0;
+                        if (res.statusCode() >= 500 || (write && res.statusCode() != 201)) failed.incrementAndGet();
+                        if (write) {
+                            writeTimes.record(took);
+                            adds.incrementAndGet();
+                        } else {
+                            readTimes.record(took);
+                            reads.incrementAndGet();
+                        }
+                    } catch (Exception ex) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }, "client-" + c);
+            threads.add(t);
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        double took = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("clients=%d seconds=%.1f requests/s=%.1f failed=%d%n",
+                clients, took, (reads.get() + adds.get()) / took, failed.get());
+        System.out.printf("reads  n=%-8d p50=%-10s p99=%s%n", reads.get(),
+                Bench.fmt(readTimes.percentile(0.50)), Bench.fmt(readTimes.percentile(0.99)));
+        System.out.printf("adds   n=%-8d p50=%-10s p99=%s%n", adds.get(),
+                Bench.fmt(writeTimes.percentile(0.50)), Bench.fmt(writeTimes.percentile(0.99)));
+
+        HttpResponse<String> m = http.send(HttpRequest.newBuilder(URI.create(base + "metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        System.out.println(m.body());
+    }
+}
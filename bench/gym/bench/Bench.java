@@ -0,0 +1,17 @@
+package gym.bench;
+
+/**
+ * Output helpers shared by the load tools. The per-operation benchmarks
+ * live in the jmh module.
+ */
+public final class Bench {
+
+    private Bench() {
+    }
+
+    static String fmt(long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return (nanos / 1_000) + "us";
+        return (nanos / 1_000_000) + "ms";
+    }
+}
@@ -0,0 +1,137 @@
+package gym.bench;
+
+import gym.Csv;
+import gym.SessionService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes a large, realistic-looking workout database for benchmarks.
+ *
+ * The exercises, muscle groups and typical sets/reps/weights come from
+ * data/workouts.csv. Rows are generated from a fixed seed, so the same
+ * size and seed always give exactly the same database.
+ */
+public class SyntheticHistory {
+
+    /** One exercise template taken from the seed CSV. */
+    static class Template {
+        String exercise;
+        String muscle;
+        int sets;
+        int reps;
+        double weight;
+        int duration;
+        int rpe;
+    }
+
+    private final List<Template> templates = new ArrayList<>();
+    private final long seed;
+
+    /**
+     * @param seedCsv the CSV to copy exercises and typical values from
+     * @param seed    random seed
+     * @throws IOException if the CSV cannot be read
+     */
+    public SyntheticHistory(Path seedCsv, long seed) throws IOException {
+        this.seed = seed;
+        try (BufferedReader br = Files.newBufferedReader(seedCsv)) {
+            Csv.Reader csv = new Csv.Reader(br);
+            csv.next(); // header
+            for (String[] rec = csv.next(); rec != null; rec = csv.next()) {
+                if (rec.length < 9) continue;
+                Template t = new Template();
+                t.exercise = rec[2];
+                t.muscle = rec[3];
+                t.sets = Integer.parseInt(rec[4].trim());
+                t.reps = Integer.parseInt(rec[5].trim());
+                t.weight = Double.parseDouble(rec[6].trim());
+                t.duration = Integer.parseInt(rec[7].trim());
+                t.rpe = Integer.parseInt(rec[8].trim());
+                templates.add(t);
+            }
+        }
+        if (templates.isEmpty()) throw new IOException("No rows in " + seedCsv);
+    }
+
+    /**
+     * Returns a database with the given number of rows, creating it
+     * the first time and reusing it after that.
+     * @param dir  folder for generated files
+     * @param rows number of workout rows
+     * @return path of the .db file
+     * @throws Exception if generation fails
+     */
+    public Path database(Path dir, int rows) throws Exception {
+        Files.createDirectories(dir);
+        Path db = dir.resolve("history-" + rows + "-" + seed + ".db");
+        if (Files.exists(db)) return db;
+
+        Path tmp = dir.resolve(db.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        SessionService service = new SessionService();
+        service.connect(tmp.toString()); // creates the current schema
+        service.close();
+        generate(tmp, rows);
+        Files.move(tmp, db);
+        return db;
+    }
+
+    // about one session per exercise slot per training day, spread back from today
+    private void generate(Path file, int rows) throws SQLException {
+        Random rnd = new Random(seed);
+        LocalDate start = LocalDate.of(2025, 10, 1).minusDays(rows / 6 + 1);
+        String sql = "INSERT INTO workouts (id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes, epoch_day) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (int i = 1; i <= rows; i++) {
+                Template t = templates.get(rnd.nextInt(templates.size()));
+                LocalDate day = start.plusDays(i / 6);
+                double progress = 1.0 + 0.25 * i / rows; // lifts slowly get heavier
+                double w = Math.max(1, Math.round(t.weight * progress * (0.85 + rnd.nextDouble() * 0.3) / 5) * 5);
+
+                ps.setInt(1, i);
+                ps.setString(2, day.toString());
+                ps.setString(3, t.exercise);
+                ps.setString(4, t.muscle);
+                ps.setInt(5, Math.max(1, t.sets + rnd.nextInt(3) - 1));
+                ps.setInt(6, Math.max(1, t.reps + rnd.nextInt(5) - 2));
+                ps.setDouble(7, t.weight <= 1 ? t.weight : w);
+                ps.setInt(8, Math.max(5, t.duration + rnd.nextInt(11) - 5));
+                ps.setInt(9, Math.min(10, Math.max(1, t.rpe + rnd.nextInt(3) - 1)));
+                ps.setString(10, rnd.nextInt(10) == 0 ? "synthetic note " + i : "");
+                ps.setInt(11, (int) day.toEpochDay());
+                ps.addBatch();
+                if (i % 10_000 == 0) {
+                    ps.executeBatch();
+                    conn.commit();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /**
+     * Picks a random exercise name (same distribution as the seed CSV).
+     * @param rnd random source
+     * @return an exercise name
+     */
+    public String randomExercise(Random rnd) {
+        return templates.get(rnd.nextInt(templates.size())).exercise;
+    }
+}
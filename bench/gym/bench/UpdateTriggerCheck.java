@@ -0,0 +1,110 @@
+package gym.bench;
+
+import gym.SessionService;
+import gym.WorkoutSession;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Checks what one UPDATE costs in the trigger-maintained tables: each
+ * edit, by this program or another one, must log exactly one change_log
+ * row, move the row's version by exactly one and leave daily_stats equal
+ * to a recount from the raw rows.
+ *
+ * Usage:
+ *   java gym.bench.UpdateTriggerCheck
+ *
+ * Works on a new database in a temp folder. Prints one line per check
+ * and exits with status 1 if any failed.
+ */
+public class UpdateTriggerCheck {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("gym-triggers");
+        Path db = dir.resolve("check.db");
+        SessionService service = new SessionService();
+        service.connect(db.toString());
+        try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement st = other.createStatement()) {
+            WorkoutSession s = new WorkoutSession();
+            s.id = 1;
+            s.date = "2024-01-01";
+            s.exerciseName = "Squat";
+            s.muscleGroup = "Legs";
+            s.sets = 3;
+            s.reps = 5;
+            s.weightLbs = 225;
+            s.durationMin = 10;
+            s.rpe = 8;
+            s.notes = "";
+            check("service add", logged(st, () -> service.add(s)) == 1 && version(st) == 1 && statsMatch(st));
+
+            check("other program: notes", logged(st, () -> st.executeUpdate("UPDATE workouts SET notes = 'x' WHERE id = 1")) == 1
+                    && version(st) == 2);
+            check("other program: date", logged(st, () -> st.executeUpdate("UPDATE workouts SET date = '2024-01-05' WHERE id = 1")) == 1
+                    && version(st) == 3 && statsMatch(st));
+            check("other program: weight", logged(st, () -> st.executeUpdate("UPDATE workouts SET weight = 245 WHERE id = 1")) == 1
+                    && version(st) == 4 && statsMatch(st));
+            check("other program: insert without epoch_day",
+                    logged(st, () -> st.executeUpdate("INSERT INTO workouts (id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes) "
+                            + "VALUES (2, '2024-01-06', 'Squat', 'Legs', 3, 5, 255, 10, 8, '')")) == 1
+                    && statsMatch(st));
+
+            WorkoutSession mine = service.findById(1);
+            mine.date = "2024-01-09";
+            mine.version = version(st); // the cache has not seen the other program's edits
+            check("service update", logged(st, () -> service.updateSession(mine)) == 1
+                    && version(st) == 5 && mine.version == 5 && statsMatch(st));
+        } finally {
+            service.close();
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(dir);
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private interface Work {
+        void run() throws SQLException;
+    }
+
+    // change_log rows written while work runs
+    private static long logged(Statement st, Work work) throws SQLException {
+        long before = scalar(st, "SELECT COUNT(*) FROM change_log");
+        work.run();
+        return scalar(st, "SELECT COUNT(*) FROM change_log") - before;
+    }
+
+    private static long version(Statement st) throws SQLException {
+        return scalar(st, "SELECT version FROM workouts WHERE id = 1");
+    }
+
+    // daily_stats holds the same days and totals as a recount
+    private static boolean statsMatch(Statement st) throws SQLException {
+        String recount = "SELECT exercise, epoch_day, MAX(weight * (1 + reps / 30.0)) AS best_e1rm, "
+                + "SUM(sets * reps * weight) AS volume, SUM(sets) AS set_count FROM workouts GROUP BY exercise, epoch_day";
+        String stored = "SELECT exercise, epoch_day, best_e1rm, volume, set_count FROM daily_stats";
+        return scalar(st, "SELECT COUNT(*) FROM (" + recount + " EXCEPT " + stored + ")") == 0
+                && scalar(st, "SELECT COUNT(*) FROM (" + stored + " EXCEPT " + recount + ")") == 0;
+    }
+
+    private static long scalar(Statement st, String sql) throws SQLException {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "ok      " : "FAILED  ") + name);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,120 @@
+package gym.bench;
+
+import gym.DurabilityProfile;
+import gym.SessionService;
+import gym.SessionWrite;
+import gym.WorkoutSession;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that writes survive another program holding the database: a
+ * second connection takes the write lock (BEGIN IMMEDIATE) and lets it
+ * go after a moment, while the service adds rows with a busy timeout far
+ * shorter than that, so every write has to go through the busy retries.
+ *
+ * Usage:
+ *   java gym.bench.WriteContentionCheck [--hold-ms 80]
+ *
+ * Works on a new database in a temp folder. Prints one line per check
+ * and exits with status 1 if any failed.
+ */
+public class WriteContentionCheck {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int holdMs = 80;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--hold-ms": holdMs = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("gym-contention");
+        Path db = dir.resolve("check.db");
+        SessionService service = new SessionService();
+        service.setDurability(new DurabilityProfile("check", true, DurabilityProfile.Sync.NORMAL, 10, 2_048));
+        service.connect(db.toString());
+        try {
+            List<WorkoutSession> first = sessions(1, 20);
+            check("addBatch without contention", allTrue(service.addBatch(first)) && service.countAll() == 20);
+
+            holdLock(db, holdMs);
+            boolean[] added = service.addBatch(sessions(21, 3));
+            check("addBatch while locked " + Arrays.toString(added), allTrue(added) && service.countAll() == 23);
+
+            holdLock(db, holdMs);
+            check("add while locked", service.add(sessions(24, 1).get(0)) && service.countAll() == 24);
+
+            holdLock(db, holdMs);
+            List<SessionWrite> writes = new ArrayList<>();
+            for (WorkoutSession s : sessions(25, 3)) writes.add(SessionWrite.add(s));
+            boolean[] written = service.writeAll(writes);
+            check("writeAll while locked " + Arrays.toString(written), allTrue(written) && service.countAll() == 27);
+        } finally {
+            service.close();
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(dir);
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // another connection takes the write lock now and gives it back after ms
+    private static void holdLock(Path db, int ms) throws SQLException, InterruptedException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+        Statement st = conn.createStatement();
+        st.execute("BEGIN IMMEDIATE");
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(ms);
+                st.execute("ROLLBACK");
+                conn.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "lock-holder");
+        t.start();
+    }
+
+    private static List<WorkoutSession> sessions(int firstId, int n) {
+        List<WorkoutSession> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            WorkoutSession s = new WorkoutSession();
+            s.id = firstId + i;
+            s.date = LocalDate.of(2024, 1, 1).plusDays(i).toString();
+            s.exerciseName = "Squat";
+            s.muscleGroup = "Legs";
+            s.sets = 3;
+            s.reps = 5;
+            s.weightLbs = 225;
+            s.durationMin = 10;
+            s.rpe = 8;
+            s.notes = "";
+            list.add(s);
+        }
+        return list;
+    }
+
+    private static boolean allTrue(boolean[] a) {
+        for (boolean b : a) if (!b) return false;
+        return true;
+    }
+
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "ok      " : "FAILED  ") + name);
+        if (!ok) failures++;
+    }
+}
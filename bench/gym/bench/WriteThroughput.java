@@ -0,0 +1,126 @@
+package gym.bench;
+
+import gym.DurabilityProfile;
+import gym.LatencyHistogram;
+import gym.SessionService;
+import gym.WorkoutSession;
+import gym.WriteQueue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write throughput with many writer threads: each thread adds sessions
+ * one after another, either straight through SessionService.add() (one
+ * commit each) or through a WriteQueue (group commit). Prints writes per
+ * second and p50/p99 time until each write was acknowledged.
+ *
+ * Usage:
+ *   java gym.bench.WriteThroughput --db file.db [--threads 1,8,64]
+ *        [--writes 2000] [--profile safe] [--max-wait 2] [--first-id 10000000] [--seed 42]
+ *
+ * Runs against a copy of --db (made next to it, deleted afterwards);
+ * new sessions use ids from --first-id upward.
+ */
+public class WriteThroughput {
+
+    public static void main(String[] args) throws Exception {
+        Path db = null;
+        String threads = "1,8,64";
+        int writes = 2000;
+        String profile = "safe";
+        int maxWait = WriteQueue.DEFAULT_MAX_WAIT_MS;
+        int firstId = 10_000_000;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--db": db = Path.of(args[i + 1]); break;
+                case "--threads": threads = args[i + 1]; break;
+                case "--writes": writes = Integer.parseInt(args[i + 1]); break;
+                case "--profile": profile = args[i + 1]; break;
+                case "--max-wait": maxWait = Integer.parseInt(args[i + 1]); break;
+                case "--first-id": firstId = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (db == null) throw new IllegalArgumentException("--db is required");
+
+        Path copy = db.resolveSibling(db.getFileName() + ".write-bench");
+        Files.copy(db, copy, StandardCopyOption.REPLACE_EXISTING);
+        SessionService service = new SessionService();
+        service.setDurability(DurabilityProfile.named(profile));
+        service.connect(copy.toString());
+        System.out.println("profile: " + DurabilityProfile.named(profile));
+        AtomicInteger nextId = new AtomicInteger(firstId);
+        try {
+            for (String t : threads.split(",")) {
+                int n = Integer.parseInt(t.trim());
+                run("direct", n, writes, seed, nextId, null, service);
+                WriteQueue queue = new WriteQueue(service, WriteQueue.DEFAULT_CAPACITY, WriteQueue.DEFAULT_MAX_BATCH, maxWait);
+                try {
+                    run("queued", n, writes, seed, nextId, queue, service);
+                } finally {
+                    queue.close();
+                }
+            }
+        } finally {
+            service.close();
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                Files.deleteIfExists(copy.resolveSibling(copy.getFileName() + suffix));
+            }
+        }
+    }
+
+    private static void run(String mode, int threads, int writes, long seed, AtomicInteger nextId,
+                            WriteQueue queue, SessionService service) throws InterruptedException {
+        LatencyHistogram times = new LatencyHistogram();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger left = new AtomicInteger(writes);
+        List<Thread> list = new ArrayList<>();
+        for (int c = 0; c < threads; c++) {
+            Random rnd = new Random(seed + c);
+            list.add(new Thread(() -> {
+                while (left.getAndDecrement() > 0) {
+                    WorkoutSession s = session(nextId.getAndIncrement(), rnd);
+                    long t0 = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = queue == null ? service.add(s) : queue.add(s).join();
+                    } catch (RuntimeException e) {
+                        ok = false;
+                    }
+                    times.record(System.nanoTime() - t0);
+                    if (!ok) failed.incrementAndGet();
+                }
+            }, "writer-" + c));
+        }
+        long start = System.nanoTime();
+        for (Thread t : list) t.start();
+        for (Thread t : list) t.join();
+        double took = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-7s threads=%-4d writes/s=%-10.1f p50=%-10s p99=%-10s failed=%d%n", mode, threads,
+                writes / took, Bench.fmt(times.percentile(0.50)), Bench.fmt(times.percentile(0.99)), failed.get());
+    }
+
+    private static WorkoutSession session(int id, Random rnd) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = LocalDate.of(2025, 10, 1).minusDays(rnd.nextInt(30)).toString();
+        s.exerciseName = "Bench Press";
+        s.muscleGroup = "Chest";
+        s.sets = 1 + rnd.nextInt(5);
+        s.reps = 1 + rnd.nextInt(12);
+        s.weightLbs = 45 + rnd.nextInt(60) * 5;
+        s.durationMin = 10 + rnd.nextInt(40);
+        s.rpe = 1 + rnd.nextInt(10);
+        s.notes = "";
+        return s;
+    }
+}
@@ -0,0 +1,75 @@
+package gym.jmh;
+
+import gym.WorkoutSession;
+import gym.bench.SyntheticHistory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Where the benchmarks get their data: databases made by SyntheticHistory
+ * from data/workouts.csv with a fixed seed, cached in bench-data/ (both
+ * relative to the folder the benchmarks are started from). Override
+ * with -Dgym.bench.csv=... and -Dgym.bench.dir=...
+ */
+final class Databases {
+
+    /** Seed for the generated rows and for the benchmarks' random picks. */
+    static final long SEED = 42;
+
+    private Databases() {}
+
+    /** @return the generator for the seed CSV */
+    static SyntheticHistory history() throws IOException {
+        return new SyntheticHistory(Path.of(System.getProperty("gym.bench.csv", "data/workouts.csv")), SEED);
+    }
+
+    /** @return the folder generated databases are kept in */
+    static Path dir() {
+        return Path.of(System.getProperty("gym.bench.dir", "bench-data"));
+    }
+
+    /**
+     * Copies a database (for benchmarks that change it), replacing an old copy.
+     * @param db   the source
+     * @param name file name of the copy, in dir()
+     * @return the copy
+     */
+    static Path copy(Path db, String name) throws IOException {
+        Path copy = dir().resolve(name);
+        delete(copy);
+        Files.copy(db, copy);
+        return copy;
+    }
+
+    /** Deletes a database with its WAL and journal files. */
+    static void delete(Path db) throws IOException {
+        for (String suffix : new String[] {"", "-wal", "-shm", "-journal"}) {
+            Files.deleteIfExists(db.resolveSibling(db.getFileName() + suffix));
+        }
+    }
+
+    /**
+     * @param id      session id
+     * @param rnd     random source
+     * @param history gives the exercise names
+     * @return a session like the generated ones, dated in the last month
+     */
+    static WorkoutSession session(int id, Random rnd, SyntheticHistory history) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = LocalDate.of(2025, 10, 1).minusDays(rnd.nextInt(30)).toString();
+        s.exerciseName = history.randomExercise(rnd);
+        s.muscleGroup = "Bench";
+        s.sets = 1 + rnd.nextInt(5);
+        s.reps = 1 + rnd.nextInt(12);
+        s.weightLbs = 45 + rnd.nextInt(60) * 5;
+        s.durationMin = 10 + rnd.nextInt(40);
+        s.rpe = 1 + rnd.nextInt(10);
+        s.notes = "";
+        return s;
+    }
+}
@@ -0,0 +1,95 @@
+package gym.jmh;
+
+import gym.PagedTableModel;
+import gym.SessionRecord;
+import gym.SessionService;
+import gym.WorkoutSession;
+import gym.bench.SyntheticHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionService reads against generated histories of 1k to 10M rows:
+ * the full listing, id lookups, the 7-day best e1RM and the two queries
+ * the paged table model runs to fill a page (count + first page, and a
+ * jump to a random offset while scrolling).
+ *
+ * The database for each size is generated once and reused (see Databases).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmarks {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private SessionService service;
+    private SyntheticHistory history;
+    private Random rnd;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        history = Databases.history();
+        service = new SessionService();
+        service.connect(history.database(Databases.dir(), rows).toString());
+        rnd = new Random(Databases.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        service.close();
+    }
+
+    @Benchmark
+    public ArrayList<WorkoutSession> listAll() {
+        return service.listAll();
+    }
+
+    /** Half the ids asked for exist. */
+    @Benchmark
+    public boolean existsId() {
+        return service.existsId(1 + rnd.nextInt(rows * 2));
+    }
+
+    @Benchmark
+    public double bestE1RMInLast7Days() {
+        int spanDays = Math.max(1, rows / 6);
+        return service.bestE1RMInLast7Days(history.randomExercise(rnd),
+                LocalDate.of(2025, 10, 1).minusDays(rnd.nextInt(spanDays)).toString());
+    }
+
+    /** What PagedTableModel does on reset(): count the rows, load page 0. */
+    @Benchmark
+    public void tableFirstPage(Blackhole bh) {
+        bh.consume(service.countAll());
+        bh.consume(service.listRecordsAfter(Long.MIN_VALUE, PagedTableModel.PAGE_SIZE));
+    }
+
+    /** What PagedTableModel does for a page it has not seen: find its first id, load it. */
+    @Benchmark
+    public ArrayList<SessionRecord> tableJumpToPage() {
+        Integer after = service.idAtOffset(rnd.nextInt(rows));
+        return service.listRecordsAfter(after == null ? Long.MIN_VALUE : after, PagedTableModel.PAGE_SIZE);
+    }
+}
@@ -0,0 +1,89 @@
+package gym.jmh;
+
+import gym.SessionService;
+import gym.bench.SyntheticHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionService writes (one commit each, with the durability profile
+ * from -Dgym.durability) against generated histories of 1k to 10M rows.
+ * Each trial works on a fresh copy of the generated database, so the
+ * cached one is never changed. Adds and deletes use ids above the
+ * generated range; updates rewrite random existing rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmarks {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    SessionService service;
+    SyntheticHistory history;
+    Random rnd;
+    int nextId;
+    private Path copy;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        history = Databases.history();
+        copy = Databases.copy(history.database(Databases.dir(), rows), "write-" + rows + ".db");
+        service = new SessionService();
+        service.connect(copy.toString());
+        rnd = new Random(Databases.SEED);
+        nextId = rows + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        service.close();
+        Databases.delete(copy);
+    }
+
+    /** A row that exists, added before each deleteById call (not timed). */
+    @State(Scope.Thread)
+    public static class Victim {
+        int id;
+
+        @Setup(Level.Invocation)
+        public void insert(WriteBenchmarks b) {
+            id = b.nextId++;
+            b.service.add(Databases.session(id, b.rnd, b.history));
+        }
+    }
+
+    @Benchmark
+    public boolean add() {
+        return service.add(Databases.session(nextId++, rnd, history));
+    }
+
+    @Benchmark
+    public boolean updateSession() {
+        return service.updateSession(Databases.session(1 + rnd.nextInt(rows), rnd, history));
+    }
+
+    @Benchmark
+    public boolean deleteById(Victim v) {
+        return service.deleteById(v.id);
+    }
+}
@@ -0,0 +1,384 @@
+package gym;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless HTTP/JSON server, so tablets on the gym floor can log
+ * sessions without the Swing window. Start it with
+ * {@code java gym.App --server path/to/file.db [port]}.
+ *
+ * There is no login, so by default it only listens on this computer's
+ * loopback address. To let tablets reach it, name the address to listen
+ * on with -Dgym.api.bind=ADDRESS (0.0.0.0 for every interface), on a
+ * network you trust.
+ *
+ * Endpoints (all JSON; sessions use the CSV column names as fields):
+ *   GET    /api/sessions?after=ID&amp;limit=N   one page in id order (limit max 1000)
+ *   GET    /api/sessions/ID                 one session
+ *   POST   /api/sessions                    add a session (201, or 409 if the id is used)
+ *   PUT    /api/sessions/ID                 replace a session (409 if "version" is given and stale)
+ *   DELETE /api/sessions/ID?version=V       delete a session (409 if V is given and stale)
+ *   GET    /api/count                       number of sessions
+ *   GET    /api/best?exercise=X&amp;date=D      best e1RM in the 7 days before D
+ *   GET    /api/rolling?exercise=X&amp;date=D&amp;days=7,28,90
+ *   POST   /api/calc                        {"sets","reps","weight"} → volume and e1RM
+ *   GET    /api/metrics                     request and database timings
+ *
+ * Every request runs on its own pooled thread. Reads go straight to the
+ * service (which has a pool of reader connections); all writes go
+ * through one WriteQueue, which groups concurrent adds into one commit.
+ *
+ * Sessions carry a "version" that goes up on every change. A client that
+ * sends back the version it read gets 409 instead of overwriting a change
+ * someone else made in between; without a version the write always wins.
+ */
+public class ApiServer {
+
+    /** Port used when none is given. */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** Max rows returned by one page request. */
+    public static final int MAX_PAGE = 1000;
+
+    /** The endpoints timed under their own name in /api/metrics; any other request counts as "unknown". */
+    static final Set<String> ENDPOINTS = Set.of(
+            "GET /api/sessions", "POST /api/sessions",
+            "GET /api/sessions/{id}", "PUT /api/sessions/{id}", "DELETE /api/sessions/{id}",
+            "GET /api/count", "GET /api/best", "GET /api/rolling", "POST /api/calc", "GET /api/metrics");
+
+    private final SessionService service;
+    private final WriteQueue writes;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /** Per-endpoint timings (plus the service's own, see /api/metrics). */
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Creates a server on the loopback address (not started yet).
+     * @param service a connected service
+     * @param port    TCP port (0 picks a free one)
+     * @throws IOException if the port cannot be opened
+     */
+    public ApiServer(SessionService service, int port) throws IOException {
+        this(service, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Creates the server (not started yet).
+     * @param service a connected service
+     * @param bind    address to listen on (see bindAddress())
+     * @param port    TCP port (0 picks a free one)
+     * @throws IOException if the port cannot be opened
+     */
+    public ApiServer(SessionService service, InetAddress bind, int port) throws IOException {
+        this.service = service;
+        this.writes = new WriteQueue(service);
+        this.server = HttpServer.create(new InetSocketAddress(bind, port), 1024);
+        AtomicInteger n = new AtomicInteger();
+        // one thread per request in flight (Java 17 has no virtual threads); idle ones are reused
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "api-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    /** Starts accepting requests. */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the address named by -Dgym.api.bind, or the loopback address
+     * @throws IllegalArgumentException if the name cannot be resolved
+     */
+    public static InetAddress bindAddress() {
+        String name = System.getProperty("gym.api.bind");
+        if (name == null || name.isBlank()) return InetAddress.getLoopbackAddress();
+        try {
+            return InetAddress.getByName(name.trim());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown address for gym.api.bind: " + name);
+        }
+    }
+
+    /** @return the address the server listens on */
+    public InetAddress getAddress() {
+        return server.getAddress().getAddress();
+    }
+
+    /** @return the port the server listens on */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** @return per-endpoint timings */
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the server: waits up to a second for open requests, then
+     * finishes the queued writes.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writes.close();
+    }
+
+    /** A reply: status code and JSON body. */
+    private static class Reply {
+        final int status;
+        final Object body;
+
+        Reply(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        String method = ex.getRequestMethod();
+        String path = ex.getRequestURI().getPath();
+        String[] parts = path.substring("/api/".length()).split("/");
+        Reply reply;
+        Throwable failure = null;
+        try {
+            reply = route(ex, method, parts);
+            if (reply.status >= 500) failure = new IllegalStateException(String.valueOf(reply.body));
+        } catch (IllegalArgumentException e) {
+            reply = error(400, e.getMessage());
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            reply = error(cause instanceof IllegalStateException ? 503 : 500, String.valueOf(cause.getMessage()));
+            failure = cause;
+        }
+        // a fixed set of names, so made-up paths cannot grow the metrics without end
+        String name = method + " /api/" + parts[0] + (parts.length > 1 ? "/{id}" : "");
+        OpStats stats = metrics.op(ENDPOINTS.contains(name) ? name : "unknown");
+        if (failure == null) stats.success(t0, 0, 0);
+        else stats.failure(t0, failure);
+        send(ex, reply);
+    }
+
+    private Reply route(HttpExchange ex, String method, String[] parts) throws IOException {
+        Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+        String resource = parts[0];
+        boolean hasId = parts.length > 1;
+
+        switch (resource) {
+            case "sessions":
+                if (!hasId && method.equals("GET")) {
+                    long after = q.containsKey("after") ? Long.parseLong(q.get("after")) : Long.MIN_VALUE;
+                    int limit = Math.min(MAX_PAGE, q.containsKey("limit") ? Integer.parseInt(q.get("limit")) : 100);
+                    return new Reply(200, service.listAfter(after, limit));
+                }
+                if (!hasId && method.equals("POST")) {
+                    WorkoutSession s = sessionFrom(Json.parseObject(body(ex)), null);
+                    if (service.existsId(s.id)) return error(409, "ID already exists: " + s.id);
+                    if (!writes.add(s).join()) return error(409, "ID already exists: " + s.id);
+                    return new Reply(201, s);
+                }
+                if (hasId) {
+                    int id = parseId(parts[1]);
+                    switch (method) {
+                        case "GET": {
+                            WorkoutSession s = service.findById(id);
+                            return s == null ? error(404, "No session " + id) : new Reply(200, s);
+                        }
+                        case "PUT": {
+                            Map<String, Object> in = Json.parseObject(body(ex));
+                            WorkoutSession s = sessionFrom(in, id);
+                            s.version = parseVersion(text(in, "version"));
+                            if (!service.existsId(id)) return error(404, "No session " + id);
+                            if (!writes.update(s).join()) return writeFailed(id, s.version, "Update failed.");
+                            return new Reply(200, s);
+                        }
+                        case "DELETE": {
+                            long version = parseVersion(q.getOrDefault("version", ""));
+                            if (!service.existsId(id)) return error(404, "No session " + id);
+                            if (!writes.delete(id, version).join()) return writeFailed(id, version, "Delete failed.");
+                            return new Reply(200, Map.of("deleted", id));
+                        }
+                    }
+                }
+                break;
+            case "count":
+                if (method.equals("GET")) return new Reply(200, Map.of("count", service.countAll()));
+                break;
+            case "best":
+                if (method.equals("GET")) {
+                    double best = service.bestE1RMInLast7Days(required(q, "exercise"), required(q, "date"));
+                    return new Reply(200, Map.of("bestE1RM", best));
+                }
+                break;
+            case "rolling":
+                if (method.equals("GET")) {
+                    String[] d = q.getOrDefault("days", "7,28,90").split(",");
+                    int[] days = new int[d.length];
+                    for (int i = 0; i < d.length; i++) days[i] = Integer.parseInt(d[i].trim());
+                    return new Reply(200, List.of(service.rollingStats(required(q, "exercise"), required(q, "date"), days)));
+                }
+                break;
+            case "calc":
+                if (method.equals("POST")) {
+                    Map<String, Object> in = Json.parseObject(body(ex));
+                    int sets = SessionValidator.parseIntNice(text(in, "sets"), "Sets");
+                    int reps = SessionValidator.parseIntNice(text(in, "reps"), "Reps");
+                    double weight = SessionValidator.parseDoubleNice(text(in, "weight"), "Weight");
+                    Map<String, Object> out = new LinkedHashMap<>();
+                    out.put("volume", sets * reps * weight);
+                    out.put("e1RM", weight * (1 + reps / 30.0));
+                    return new Reply(200, out);
+                }
+                break;
+            case "metrics":
+                if (method.equals("GET")) return new Reply(200, metricsJson());
+                break;
+            default:
+                return error(404, "Unknown endpoint /api/" + resource);
+        }
+        return error(405, method + " is not supported here.");
+    }
+
+    // builds a session with the same rules as the GUI form
+    private static WorkoutSession sessionFrom(Map<String, Object> m, Integer pathId) {
+        int id = pathId != null ? pathId : parseId(text(m, "id"));
+        return SessionValidator.build(id, text(m, "date"), text(m, "exerciseName"), text(m, "muscleGroup"),
+                text(m, "sets"), text(m, "reps"), text(m, "weightLbs"),
+                text(m, "durationMin"), text(m, "rpe"), text(m, "notes"));
+    }
+
+    private static String text(Map<String, Object> m, String key) {
+        Object v = m.get(key);
+        return v == null ? "" : String.valueOf(v);
+    }
+
+    private static int parseId(String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Please enter a whole number for ID.");
+        }
+    }
+
+    // "" means no version (write whatever the row's version is)
+    private static long parseVersion(String s) {
+        if (s.isBlank()) return 0;
+        try {
+            long v = Long.parseLong(s.trim());
+            if (v < 0) throw new NumberFormatException();
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Please enter a whole number of 0 or more for version.");
+        }
+    }
+
+    // a write that changed nothing: the row went away, lost to another writer (with a version), or an error
+    private Reply writeFailed(int id, long version, String message) {
+        WorkoutSession now = service.findById(id);
+        if (now == null) return version == 0 ? error(404, "No session " + id)
+                : error(409, "Session " + id + " was deleted by someone else.");
+        if (version == 0) return error(500, message);
+        return error(409, "Session " + id + " was changed by someone else (now version " + now.version + ").");
+    }
+
+    private static String required(Map<String, String> q, String name) {
+        String v = q.get(name);
+        if (v == null || v.isBlank()) throw new IllegalArgumentException("Missing parameter: " + name);
+        return v;
+    }
+
+    private Map<String, Object> metricsJson() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        double uptime = (System.nanoTime() - startedAt) / 1e9;
+        long requests = 0;
+        for (OpStats s : metrics.all().values()) requests += s.getCount();
+        out.put("uptimeSeconds", uptime);
+        out.put("requests", requests);
+        out.put("requestsPerSecond", uptime > 0 ? requests / uptime : 0);
+        out.put("pendingWrites", writes.pending());
+        out.put("endpoints", statsList(metrics));
+        out.put("database", statsList(service.getMetrics()));
+        return out;
+    }
+
+    private static List<Object> statsList(ServiceMetrics m) {
+        List<Object> list = new ArrayList<>();
+        for (OpStats s : m.all().values()) {
+            Map<String, Object> e = new LinkedHashMap<>();
+            e.put("name", s.getName());
+            e.put("count", s.getCount());
+            e.put("errors", s.getErrors());
+            e.put("meanMicros", s.getMeanMicros());
+            e.put("p50Micros", s.getP50Micros());
+            e.put("p99Micros", s.getP99Micros());
+            e.put("maxMicros", s.getMaxMicros());
+            list.add(e);
+        }
+        return list;
+    }
+
+    private static Reply error(int status, String message) {
+        return new Reply(status, Map.of("error", message == null ? "" : message));
+    }
+
+    private static String body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static void send(HttpExchange ex, Reply reply) throws IOException {
+        byte[] bytes = Json.write(reply.body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(reply.status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -1,20 +1,94 @@
 package gym;
 
+import java.net.InetAddress;
+
 /**
  * Pedro Salcedo
  * CEN 3024 - Phase 4
  *
  * launches the MainGUI so the
  * program starts with the interface.
+ *
+ * Maintenance commands:
+ *   --rebuild-stats path/to/file.db          checks and rebuilds the per-day totals
+ *   --export path/to/file.db backup.csv      writes every row as CSV
+ *   --export path/to/file.db backup.gwb      writes every row in the binary format
+ *   --server path/to/file.db [port]          runs the HTTP/JSON API without the GUI (see ApiServer);
+ *                                            local only unless -Dgym.api.bind=ADDRESS is set
  */
 public class App {
 
     /**
      * Starts the program by opening the GUI.
      *
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments (see above; none opens the GUI)
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--rebuild-stats")) {
+            rebuildStats(args[1]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--export")) {
+            export(args[1], args[2]);
+            return;
+        }
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--server")) {
+            server(args[1], args.length == 3 ? Integer.parseInt(args[2]) : ApiServer.DEFAULT_PORT);
+            return;
+        }
         MainGUI.main(args);
     }
+
+    /**
+     * Runs the API server until the process is stopped (Ctrl+C).
+     * @param path the .db file
+     * @param port TCP port
+     */
+    private static void server(String path, int port) throws Exception {
+        SessionService service = new SessionService();
+        service.connect(path);
+        ApiServer server = new ApiServer(service, ApiServer.bindAddress(), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            service.close();
+        }));
+        server.start();
+        InetAddress bind = server.getAddress();
+        boolean local = bind.isLoopbackAddress();
+        if (!local) {
+            String where = bind.isAnyLocalAddress() ? "every network interface" : bind.getHostAddress();
+            System.out.println("Warning: the API has no login and listens on " + where + "; use it on a trusted network only.");
+        }
+        String host = local || bind.isAnyLocalAddress() ? "localhost" : bind.getHostAddress();
+        System.out.println("Serving " + path + " on http://" + host + ":" + server.getPort() + "/api/");
+    }
+
+    /**
+     * Compares the per-day totals with the raw rows and rebuilds them.
+     * @param path the .db file
+     */
+    private static void rebuildStats(String path) throws Exception {
+        SessionService service = new SessionService();
+        service.connect(path);
+        System.out.println("Days that did not match: " + service.checkDailyStats());
+        System.out.println("Rebuilt " + service.rebuildDailyStats() + " exercise/day entries.");
+        service.close();
+    }
+
+    /**
+     * Exports the whole table; the file extension picks the format.
+     * @param path the .db file
+     * @param out  output file (.csv for CSV, anything else for binary)
+     */
+    private static void export(String path, String out) throws Exception {
+        SessionService service = new SessionService();
+        service.connect(path);
+        WorkoutExporter exporter = new WorkoutExporter(service);
+        long start = System.currentTimeMillis();
+        long rows = out.toLowerCase().endsWith(".csv")
+                ? exporter.exportCsv(java.nio.file.Path.of(out))
+                : exporter.exportBinary(java.nio.file.Path.of(out));
+        System.out.println("Exported " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms.");
+        service.close();
+    }
 }
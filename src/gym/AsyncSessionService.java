@@ -0,0 +1,319 @@
+package gym;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs WorkoutStore calls in the background so the GUI never waits
+ * on the database.
+ *
+ * Every method returns a CompletableFuture that finishes on a worker
+ * thread. Use onEdt() to get the result back on the Swing thread.
+ * Work started with a "key" cancels the previous unfinished work with
+ * the same key, so clicking "Display All" five times only does the
+ * last refresh.
+ *
+ * The store can be swapped with use() (SQLite or a LogStore). Calls that
+ * only SQLite supports, like rollingStats(), fail with an
+ * UnsupportedOperationException on other stores. Opening and closing
+ * stores runs on one separate thread, in the order it was asked for, and
+ * is never interrupted: a newer connect() only makes an older one's
+ * result be ignored.
+ */
+public class AsyncSessionService {
+
+    /** How long close() waits for a connect or close that is running (seconds). */
+    private static final long LIFECYCLE_WAIT_S = 10;
+
+    private volatile WorkoutStore service;
+    private final ExecutorService executor;
+
+    /** Runs connect() and the closes from use(), one at a time and in order. */
+    private final ExecutorService lifecycle;
+
+    /** Latest unfinished task for each key (for superseding). */
+    private final Map<String, CompletableFuture<?>> latest = new ConcurrentHashMap<>();
+
+    /** Number of tasks that are queued or running. */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /** Told (on the Swing thread) when the service becomes busy or idle. */
+    private volatile Consumer<Boolean> busyListener = busy -> {};
+
+    /**
+     * @param service the store that does the real work
+     */
+    public AsyncSessionService(WorkoutStore service) {
+        this.service = service;
+        AtomicInteger n = new AtomicInteger();
+        // one thread per reader connection plus the writer
+        this.executor = Executors.newFixedThreadPool(DBHelper.DEFAULT_READERS + 1, r -> {
+            Thread t = new Thread(r, "db-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.lifecycle = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "db-lifecycle");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** @return the wrapped (blocking) store */
+    public WorkoutStore blocking() {
+        return service;
+    }
+
+    /**
+     * @return the wrapped store, if it is the SQLite one
+     * @throws UnsupportedOperationException for other stores
+     */
+    public SessionService sqlite() {
+        WorkoutStore s = service;
+        if (s instanceof SessionService) return (SessionService) s;
+        throw new UnsupportedOperationException("This needs a SQLite database (.db file).");
+    }
+
+    /**
+     * Switches to another store. The old one is closed after the connects
+     * and closes asked for before this one, unless it has been switched
+     * back to by then.
+     * @param store the store to use from now on
+     */
+    public void use(WorkoutStore store) {
+        WorkoutStore old = service;
+        if (old == store) return;
+        service = store;
+        submit(lifecycle, false, () -> {
+            if (old != service) old.close();
+            return null;
+        });
+    }
+
+    /**
+     * Sets who gets told when work starts and stops (called on the Swing thread).
+     * @param listener receives true when busy, false when idle
+     */
+    public void setBusyListener(Consumer<Boolean> listener) {
+        busyListener = listener == null ? busy -> {} : listener;
+    }
+
+    /**
+     * Runs work in the background.
+     * @param work the database work
+     * @return a future with the result; cancelling it interrupts the work
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return submit(executor, true, work);
+    }
+
+    // cancelling the result skips work that has not started, and interrupts running work if asked to
+    private <T> CompletableFuture<T> submit(ExecutorService on, boolean interrupt, Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (running.getAndIncrement() == 0) fireBusy(true);
+
+        Future<?> task = on.submit(() -> {
+            try {
+                if (!result.isDone()) result.complete(work.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) task.cancel(interrupt);
+            if (running.decrementAndGet() == 0) fireBusy(false);
+        });
+        return result;
+    }
+
+    /**
+     * Runs work in the background and cancels any unfinished work started
+     * with the same key (its result is thrown away).
+     * @param key  name for this kind of request, e.g. "refresh"
+     * @param work the database work
+     * @return a future with the result
+     */
+    public <T> CompletableFuture<T> submitLatest(String key, Supplier<T> work) {
+        return supersede(key, submit(work));
+    }
+
+    private <T> CompletableFuture<T> supersede(String key, CompletableFuture<T> f) {
+        CompletableFuture<?> old = latest.put(key, f);
+        if (old != null) old.cancel(true);
+        f.whenComplete((r, t) -> latest.remove(key, f));
+        return f;
+    }
+
+    /**
+     * Calls back on the Swing thread when a future finishes.
+     * Cancelled (superseded) work is ignored.
+     * @param f      the future
+     * @param ok     gets the result
+     * @param failed gets the error
+     */
+    public static <T> void onEdt(CompletableFuture<T> f, Consumer<T> ok, Consumer<Throwable> failed) {
+        f.whenComplete((r, t) -> SwingUtilities.invokeLater(() -> {
+            if (t == null) {
+                ok.accept(r);
+                return;
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (!(cause instanceof CancellationException)) failed.accept(cause);
+        }));
+    }
+
+    /**
+     * Stops the worker threads and closes the database connections. A
+     * connect or close that is under way is waited for (up to
+     * LIFECYCLE_WAIT_S seconds) instead of being interrupted.
+     */
+    public void close() {
+        executor.shutdownNow();
+        lifecycle.shutdown();
+        try {
+            lifecycle.awaitTermination(LIFECYCLE_WAIT_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        service.close();
+    }
+
+    private void fireBusy(boolean busy) {
+        Consumer<Boolean> l = busyListener;
+        SwingUtilities.invokeLater(() -> l.accept(busy));
+    }
+
+    // ---- async versions of the store methods ----
+
+    /**
+     * Opens a file in the current store, after any earlier connect or
+     * close has finished. A newer connect does not interrupt this one
+     * (a file half opened could be left broken); its result is ignored.
+     * @see WorkoutStore#connect(String)
+     */
+    public CompletableFuture<Integer> connect(String path) {
+        WorkoutStore store = service;
+        return supersede("connect", submit(lifecycle, false, () -> {
+            store.connect(path);
+            return store.countAll();
+        }));
+    }
+
+    /** @see WorkoutStore#countBefore(int) */
+    public CompletableFuture<Integer> countBefore(int id) {
+        return submit(() -> service.countBefore(id));
+    }
+
+    /** @see WorkoutStore#countAll() */
+    public CompletableFuture<Integer> countAll() {
+        return submitLatest("count", () -> service.countAll());
+    }
+
+    /** @see WorkoutStore#listAfter(long, int) */
+    public CompletableFuture<ArrayList<WorkoutSession>> listAfter(long afterId, int limit) {
+        return submit(() -> service.listAfter(afterId, limit));
+    }
+
+    /**
+     * Runs a search; a newer search cancels one that has not finished.
+     * @see WorkoutStore#search(SessionQuery)
+     */
+    public CompletableFuture<ArrayList<SessionRecord>> search(SessionQuery q) {
+        return submitLatest("search", () -> service.search(q));
+    }
+
+    /** @see WorkoutStore#add(WorkoutSession) */
+    public CompletableFuture<Boolean> add(WorkoutSession s) {
+        return submit(() -> service.add(s));
+    }
+
+    /** @see WorkoutStore#updateSession(WorkoutSession) */
+    public CompletableFuture<Boolean> updateSession(WorkoutSession s) {
+        return submit(() -> service.updateSession(s));
+    }
+
+    /** @see WorkoutStore#deleteById(int) */
+    public CompletableFuture<Boolean> deleteById(int id) {
+        return submit(() -> service.deleteById(id));
+    }
+
+    /** @see WorkoutStore#deleteById(int, long) */
+    public CompletableFuture<Boolean> deleteById(int id, long version) {
+        return submit(() -> service.deleteById(id, version));
+    }
+
+    /** @see WorkoutStore#existsId(int) */
+    public CompletableFuture<Boolean> existsId(int id) {
+        return submit(() -> service.existsId(id));
+    }
+
+    /** @see WorkoutStore#bestE1RMInLast7Days(String, String) */
+    public CompletableFuture<Double> bestE1RMInLast7Days(String exercise, String date) {
+        return submitLatest("best", () -> service.bestE1RMInLast7Days(exercise, date));
+    }
+
+    /** @see SessionService#rollingStats(String, String, int...) */
+    public CompletableFuture<RollingStats[]> rollingStats(String exercise, String date, int... windows) {
+        return submitLatest("rolling", () -> {
+            WorkoutStore s = service;
+            if (s instanceof MultiSessionService) return ((MultiSessionService) s).rollingStats(exercise, date, windows);
+            return sqlite().rollingStats(exercise, date, windows);
+        });
+    }
+
+    /** @see SessionService#trend(String) */
+    public CompletableFuture<TrendSeries> trend(String exercise) {
+        return submitLatest("trend", () -> {
+            WorkoutStore s = service;
+            if (s instanceof MultiSessionService) return ((MultiSessionService) s).trend(exercise);
+            return sqlite().trend(exercise);
+        });
+    }
+
+    /**
+     * Makes the training-load report (SQLite only). When the startup
+     * snapshot can be brought up to date the report is a parallel pass
+     * over its columns; otherwise SQLite sums it with a GROUP BY.
+     * @param period weekly or monthly
+     * @return finishes with the report
+     */
+    public CompletableFuture<TrainingLoadReport> trainingLoad(TrainingLoadReport.Period period) {
+        return submitLatest("trainingLoad", () -> {
+            SessionService s = sqlite();
+            StartupSnapshot snap = StartupSnapshot.sync(s);
+            return snap != null ? TrainingLoadReport.compute(snap.toColumnar(), period) : s.trainingLoad(period);
+        });
+    }
+
+    /** @see SessionService#trendExercises() */
+    public CompletableFuture<List<String>> trendExercises() {
+        return submit(() -> {
+            WorkoutStore s = service;
+            if (s instanceof MultiSessionService) return ((MultiSessionService) s).trendExercises();
+            return sqlite().trendExercises();
+        });
+    }
+
+    /** @see WorkoutStore#findById(int) */
+    public CompletableFuture<WorkoutSession> findById(int id) {
+        return submit(() -> service.findById(id));
+    }
+
+    /** @see SessionService#loadSnapshot() */
+    public CompletableFuture<ColumnarSnapshot> loadSnapshot() {
+        return submitLatest("snapshot", () -> sqlite().loadSnapshot());
+    }
+}
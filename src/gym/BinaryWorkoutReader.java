@@ -0,0 +1,163 @@
+package gym;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads the binary export written by {@link WorkoutExporter#exportBinary(Path)}.
+ * Rows are read one at a time through a reusable buffer.
+ */
+public class BinaryWorkoutReader implements AutoCloseable {
+
+    private final FileChannel ch;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+    private final ArrayList<String> exercises = new ArrayList<>();
+    private final ArrayList<String> muscles = new ArrayList<>();
+    private long rowsRead;
+    private boolean finished;
+
+    /**
+     * Opens a binary export and checks its header.
+     * @param file the file
+     * @throws IOException if the file cannot be read or is not a binary export
+     */
+    public BinaryWorkoutReader(Path file) throws IOException {
+        ch = FileChannel.open(file, StandardOpenOption.READ);
+        buf.limit(0);
+        try {
+            need(8);
+            byte[] magic = new byte[4];
+            buf.get(magic);
+            if (!Arrays.equals(magic, WorkoutExporter.BINARY_MAGIC))
+                throw new IOException("Not a workout export: " + file);
+            int version = buf.getShort() & 0xFFFF;
+            buf.getShort(); // flags
+            if (version > WorkoutExporter.BINARY_VERSION)
+                throw new IOException("Export version " + version + " is newer than this program.");
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next row.
+     * @return the session, or null at the end of the file
+     * @throws IOException if the file is cut short or damaged
+     */
+    public WorkoutSession next() throws IOException {
+        while (!finished) {
+            need(1);
+            int tag = buf.get();
+            switch (tag) {
+                case WorkoutExporter.TAG_EXERCISE:
+                    exercises.add(string());
+                    break;
+                case WorkoutExporter.TAG_MUSCLE:
+                    muscles.add(string());
+                    break;
+                case WorkoutExporter.TAG_ROW:
+                case WorkoutExporter.TAG_ROW_TEXT_DATE:
+                    rowsRead++;
+                    return row(tag == WorkoutExporter.TAG_ROW);
+                case WorkoutExporter.TAG_END:
+                    need(8);
+                    long expected = buf.getLong();
+                    if (expected != rowsRead)
+                        throw new IOException("Export says " + expected + " rows but has " + rowsRead + ".");
+                    finished = true;
+                    break;
+                default:
+                    throw new IOException("Damaged export (unknown entry " + tag + ").");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calls the visitor for every remaining row.
+     * @param visitor gets each row in file order
+     * @return number of rows visited
+     * @throws IOException if the file is cut short or damaged
+     */
+    public long forEach(Consumer<WorkoutSession> visitor) throws IOException {
+        long n = 0;
+        for (WorkoutSession s = next(); s != null; s = next()) {
+            visitor.accept(s);
+            n++;
+        }
+        return n;
+    }
+
+    private WorkoutSession row(boolean dayDate) throws IOException {
+        WorkoutSession s = new WorkoutSession();
+        need(8);
+        s.id = buf.getInt();
+        s.date = dayDate ? java.time.LocalDate.ofEpochDay(buf.getInt()).toString() : string();
+        s.exerciseName = exercises.get(varint());
+        s.muscleGroup = muscles.get(varint());
+        s.sets = unzigzag(varint());
+        s.reps = unzigzag(varint());
+        need(8);
+        s.weightLbs = buf.getDouble();
+        s.durationMin = unzigzag(varint());
+        s.rpe = unzigzag(varint());
+        int len = varint();
+        s.notes = len == 0 ? null : text(len - 1);
+        return s;
+    }
+
+    private String string() throws IOException {
+        return text(varint());
+    }
+
+    private String text(int len) throws IOException {
+        byte[] b = new byte[len];
+        int off = 0;
+        while (off < len) {
+            if (!buf.hasRemaining()) need(1);
+            int n = Math.min(buf.remaining(), len - off);
+            buf.get(b, off, n);
+            off += n;
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private int varint() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            need(1);
+            byte b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Damaged export (bad number).");
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // makes sure at least n bytes are in the buffer
+    private void need(int n) throws IOException {
+        if (buf.remaining() >= n) return;
+        buf.compact();
+        while (buf.position() < n) {
+            if (ch.read(buf) < 0) throw new EOFException("Export file is cut short.");
+        }
+        buf.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+}
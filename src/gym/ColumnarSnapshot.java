@@ -0,0 +1,203 @@
+package gym;
+
+import java.util.Arrays;
+
+/**
+ * Read-only copy of the workouts table stored column by column in
+ * primitive arrays, for fast analytics.
+ *
+ * Instead of one WorkoutSession object (with its own strings) per row,
+ * each column is one int[] or double[], and exercise and muscle names
+ * are stored as SessionCatalog codes (the same codes SessionRecord uses). Queries are plain loops over the
+ * arrays: no objects are created, and the CPU reads memory in order.
+ * Notes are not kept since no analytics use them.
+ */
+public class ColumnarSnapshot {
+
+    /** Exercise names and their codes (the shared catalog). */
+    public final StringDictionary exercises = SessionCatalog.EXERCISES;
+
+    /** Muscle group names and their codes (the shared catalog). */
+    public final StringDictionary muscles = SessionCatalog.MUSCLES;
+
+    private int size;
+    private int[] ids;
+    private int[] days;
+    private int[] exercise;
+    private int[] muscle;
+    private int[] sets;
+    private int[] reps;
+    private double[] weight;
+    private int[] duration;
+    private int[] rpe;
+
+    /**
+     * Creates an empty snapshot.
+     * @param expectedRows starting array size (grows as needed)
+     */
+    public ColumnarSnapshot(int expectedRows) {
+        int n = Math.max(16, expectedRows);
+        ids = new int[n];
+        days = new int[n];
+        exercise = new int[n];
+        muscle = new int[n];
+        sets = new int[n];
+        reps = new int[n];
+        weight = new double[n];
+        duration = new int[n];
+        rpe = new int[n];
+    }
+
+    /**
+     * Appends one row (used while building the snapshot).
+     * @param epochDay days since 1970-01-01
+     */
+    public void add(int id, int epochDay, String exerciseName, String muscleGroup,
+                    int setCount, int repCount, double weightLbs, int durationMin, int rpeValue) {
+        if (size == ids.length) grow();
+        ids[size] = id;
+        days[size] = epochDay;
+        exercise[size] = exercises.code(exerciseName);
+        muscle[size] = muscles.code(muscleGroup);
+        sets[size] = setCount;
+        reps[size] = repCount;
+        weight[size] = weightLbs;
+        duration[size] = durationMin;
+        rpe[size] = rpeValue;
+        size++;
+    }
+
+    /**
+     * Appends one row whose names are already SessionCatalog codes
+     * (used when copying from a StartupSnapshot).
+     */
+    void addCodes(int id, int epochDay, int exerciseCode, int muscleCode,
+                  int setCount, int repCount, double weightLbs, int durationMin, int rpeValue) {
+        if (size == ids.length) grow();
+        ids[size] = id;
+        days[size] = epochDay;
+        exercise[size] = exerciseCode;
+        muscle[size] = muscleCode;
+        sets[size] = setCount;
+        reps[size] = repCount;
+        weight[size] = weightLbs;
+        duration[size] = durationMin;
+        rpe[size] = rpeValue;
+        size++;
+    }
+
+    private void grow() {
+        int n = size + (size >> 1) + 16;
+        ids = Arrays.copyOf(ids, n);
+        days = Arrays.copyOf(days, n);
+        exercise = Arrays.copyOf(exercise, n);
+        muscle = Arrays.copyOf(muscle, n);
+        sets = Arrays.copyOf(sets, n);
+        reps = Arrays.copyOf(reps, n);
+        weight = Arrays.copyOf(weight, n);
+        duration = Arrays.copyOf(duration, n);
+        rpe = Arrays.copyOf(rpe, n);
+    }
+
+    /** Shrinks the arrays to the number of rows (call once after loading). */
+    public void trim() {
+        if (size == ids.length) return;
+        ids = Arrays.copyOf(ids, size);
+        days = Arrays.copyOf(days, size);
+        exercise = Arrays.copyOf(exercise, size);
+        muscle = Arrays.copyOf(muscle, size);
+        sets = Arrays.copyOf(sets, size);
+        reps = Arrays.copyOf(reps, size);
+        weight = Arrays.copyOf(weight, size);
+        duration = Arrays.copyOf(duration, size);
+        rpe = Arrays.copyOf(rpe, size);
+    }
+
+    /** @return number of rows */
+    public int size() {
+        return size;
+    }
+
+    /** @return rough heap used by the column arrays, in bytes */
+    public long estimatedBytes() {
+        return (long) ids.length * (8 * Integer.BYTES + Double.BYTES);
+    }
+
+    // column access by row (for callers that need single values)
+    public int id(int row) { return ids[row]; }
+    public int epochDay(int row) { return days[row]; }
+    public int exerciseCode(int row) { return exercise[row]; }
+    public int muscleCode(int row) { return muscle[row]; }
+    public int sets(int row) { return sets[row]; }
+    public int reps(int row) { return reps[row]; }
+    public double weight(int row) { return weight[row]; }
+    public int duration(int row) { return duration[row]; }
+    public int rpe(int row) { return rpe[row]; }
+
+    /**
+     * Best Epley estimate for one exercise in a day range.
+     * @param exerciseCode code from {@link #exercises}
+     * @param fromDay      first day (inclusive)
+     * @param toDay        last day (inclusive)
+     * @return the best estimate, or 0 if there are no rows
+     */
+    public double bestE1RM(int exerciseCode, int fromDay, int toDay) {
+        double best = 0;
+        for (int i = 0; i < size; i++) {
+            if (exercise[i] != exerciseCode) continue;
+            int d = days[i];
+            if (d < fromDay || d > toDay) continue;
+            double est = weight[i] * (1 + reps[i] / 30.0);
+            if (est > best) best = est;
+        }
+        return best;
+    }
+
+    /**
+     * Total volume (sets×reps×weight) for one exercise in a day range.
+     * @param exerciseCode code from {@link #exercises}
+     * @param fromDay      first day (inclusive)
+     * @param toDay        last day (inclusive)
+     * @return the total volume
+     */
+    public double volume(int exerciseCode, int fromDay, int toDay) {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            if (exercise[i] != exerciseCode) continue;
+            int d = days[i];
+            if (d < fromDay || d > toDay) continue;
+            total += sets[i] * reps[i] * weight[i];
+        }
+        return total;
+    }
+
+    /**
+     * Best Epley estimate for every exercise in one pass.
+     * @return best estimate indexed by exercise code
+     */
+    public double[] bestE1RMPerExercise() {
+        double[] best = new double[exercises.size()];
+        for (int i = 0; i < size; i++) {
+            double est = weight[i] * (1 + reps[i] / 30.0);
+            int e = exercise[i];
+            if (est > best[e]) best[e] = est;
+        }
+        return best;
+    }
+
+    /**
+     * Total volume per muscle group in a day range, in one pass.
+     * @param fromDay first day (inclusive)
+     * @param toDay   last day (inclusive)
+     * @return volume indexed by muscle code
+     */
+    public double[] volumePerMuscle(int fromDay, int toDay) {
+        double[] total = new double[muscles.size()];
+        for (int i = 0; i < size; i++) {
+            int d = days[i];
+            if (d < fromDay || d > toDay) continue;
+            total[muscle[i]] += sets[i] * reps[i] * weight[i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,127 @@
+package gym;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Small CSV helpers used by the import and export code.
+ * Supports quoted fields ("a, b"), doubled quotes ("say ""hi""")
+ * and quoted fields that span more than one line.
+ */
+public class Csv {
+
+    private Csv() {}
+
+    /**
+     * Appends one field, quoting it if it contains a comma, quote or line break.
+     * @param out   where to append
+     * @param value the field (null is written as an empty field)
+     */
+    public static void appendField(StringBuilder out, String value) {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.append('"');
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Appends a number the way data/workouts.csv writes it
+     * (275 rather than 275.0 for whole numbers).
+     * @param out where to append
+     * @param d   the number
+     */
+    public static void appendNumber(StringBuilder out, double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) out.append((long) d);
+        else out.append(d);
+    }
+
+    /**
+     * Reads CSV records one at a time so large files never have to fit in memory.
+     */
+    public static class Reader {
+
+        private final BufferedReader in;
+        private final StringBuilder field = new StringBuilder();
+        private final ArrayList<String> fields = new ArrayList<>();
+        private long lineNumber;
+        private long recordLine;
+
+        /**
+         * @param in the text to read (closed by the caller)
+         */
+        public Reader(BufferedReader in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads the next record.
+         * @return the fields of the record, or null at end of file
+         * @throws IOException if reading fails
+         */
+        public String[] next() throws IOException {
+            String line = in.readLine();
+            if (line == null) return null;
+            lineNumber++;
+            recordLine = lineNumber;
+            fields.clear();
+            field.setLength(0);
+
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i >= line.length()) {
+                    if (!quoted) break;
+                    // quoted field continues on the next line
+                    String more = in.readLine();
+                    if (more == null) break;
+                    lineNumber++;
+                    field.append('\n');
+                    line = more;
+                    i = 0;
+                    continue;
+                }
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[0]);
+        }
+
+        /** @return the line number where the last record started (1-based) */
+        public long getRecordLine() {
+            return recordLine;
+        }
+    }
+}
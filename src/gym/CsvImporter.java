@@ -0,0 +1,266 @@
+package gym;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a CSV file of workouts (same columns as data/workouts.csv) into the database.
+ *
+ * The file is read one row at a time, so it can be any size. Good rows are
+ * inserted with JDBC batches, and every chunk of rows is one transaction
+ * instead of one transaction per row. Bad rows are skipped and reported.
+ * The chunks are written by a ChunkWriter, which takes the database's
+ * writer for one chunk at a time, so other writes can go in between.
+ */
+public class CsvImporter {
+
+    /** Rows per transaction. */
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    /** Max rejects kept in memory; the rest only go to the reject report file. */
+    private static final int MAX_REJECTS_KEPT = 1_000;
+
+    /** Column names in data/workouts.csv order. Database names are accepted too. */
+    private static final String[][] COLUMN_NAMES = {
+            {"id"}, {"date"}, {"exercisename", "exercise"}, {"musclegroup", "muscle"},
+            {"sets"}, {"reps"}, {"weightlbs", "weight"}, {"durationmin", "duration"},
+            {"rpe"}, {"notes"}
+    };
+
+    /** Called every chunk so the GUI can show progress. */
+    public interface Progress {
+        /**
+         * @param rowsRead   rows read so far
+         * @param bytesRead  bytes of the file read so far
+         * @param totalBytes size of the file
+         */
+        void update(long rowsRead, long bytesRead, long totalBytes);
+    }
+
+    /** Writes one chunk of rows as one transaction. */
+    public interface ChunkWriter {
+        /**
+         * @param chunk the sessions to insert (INSERT OR IGNORE)
+         * @return for each session, the rows inserted (0 if its id was already used)
+         * @throws SQLException if the chunk could not be written (nothing of it is kept)
+         */
+        int[] insert(List<WorkoutSession> chunk) throws SQLException;
+    }
+
+    /** One row that could not be imported. */
+    public static class Reject {
+        /** Line in the file where the row starts. */
+        public final long line;
+        /** Why it was skipped. */
+        public final String reason;
+
+        Reject(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    /** Summary of one import. */
+    public static class Result {
+        /** Rows read from the file (not counting the header). */
+        public long rowsRead;
+        /** Rows inserted into the database. */
+        public long imported;
+        /** Rows that were skipped. */
+        public long rejected;
+        /** The first rejects (up to 1000); see the reject report for all of them. */
+        public final List<Reject> rejects = new ArrayList<>();
+        /** How long the import took in milliseconds. */
+        public long millis;
+
+        @Override
+        public String toString() {
+            return "Read " + rowsRead + " rows, imported " + imported
+                    + ", rejected " + rejected + " (" + millis + " ms)";
+        }
+    }
+
+    private final ChunkWriter writer;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param writer writes each chunk into the database
+     */
+    public CsvImporter(ChunkWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Sets how many rows go into each transaction.
+     * @param rows rows per chunk (at least 1)
+     */
+    public void setChunkSize(int rows) {
+        chunkSize = Math.max(1, rows);
+    }
+
+    /**
+     * Imports a CSV file.
+     * @param file         the CSV to read
+     * @param rejectReport where to write every rejected row (may be null)
+     * @param progress     progress callback (may be null)
+     * @return a summary of what happened
+     * @throws IOException if the file cannot be read
+     * @throws SQLException if the database fails (the current chunk is rolled back;
+     *                      earlier chunks stay imported)
+     */
+    public Result importFile(Path file, Path rejectReport, Progress progress) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        long total = Files.size(file);
+        Result result = new Result();
+
+        try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(file));
+             BufferedReader br = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter rejectOut = rejectReport == null ? null : Files.newBufferedWriter(rejectReport)) {
+
+            if (rejectOut != null) rejectOut.write("line,reason\n");
+            Csv.Reader csv = new Csv.Reader(br);
+            int[] cols = defaultColumns();
+            List<WorkoutSession> chunk = new ArrayList<>(chunkSize);
+            long[] lines = new long[chunkSize];
+
+            String[] rec = csv.next();
+            if (rec != null && isHeader(rec)) {
+                cols = mapHeader(rec);
+                rec = csv.next();
+            }
+
+            for (; rec != null; rec = csv.next()) {
+                result.rowsRead++;
+                if (rec.length == 1 && rec[0].isBlank()) {
+                    result.rowsRead--;
+                    continue;
+                }
+                WorkoutSession s;
+                try {
+                    s = toSession(rec, cols);
+                } catch (IllegalArgumentException ex) {
+                    reject(result, rejectOut, csv.getRecordLine(), ex.getMessage());
+                    continue;
+                }
+                lines[chunk.size()] = csv.getRecordLine();
+                chunk.add(s);
+
+                if (chunk.size() == chunkSize) {
+                    flush(chunk, lines, result, rejectOut);
+                    if (progress != null) progress.update(result.rowsRead, counter.count, total);
+                }
+            }
+            flush(chunk, lines, result, rejectOut);
+            if (progress != null) progress.update(result.rowsRead, total, total);
+        }
+
+        result.millis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    // writes the chunk and empties it; rows the database ignored were duplicate ids
+    private void flush(List<WorkoutSession> chunk, long[] lines, Result result,
+                       BufferedWriter rejectOut) throws SQLException, IOException {
+        int pending = chunk.size();
+        if (pending == 0) return;
+        int[] counts = writer.insert(chunk);
+        chunk.clear();
+        for (int i = 0; i < pending; i++) {
+            if (i < counts.length && counts[i] == 0) reject(result, rejectOut, lines[i], "ID is already used.");
+            else result.imported++;
+        }
+    }
+
+    private void reject(Result result, BufferedWriter out, long line, String reason) throws IOException {
+        result.rejected++;
+        if (result.rejects.size() < MAX_REJECTS_KEPT) result.rejects.add(new Reject(line, reason));
+        if (out != null) {
+            out.write(Long.toString(line));
+            out.write(",\"");
+            out.write(reason.replace("\"", "\"\""));
+            out.write("\"\n");
+        }
+    }
+
+    private WorkoutSession toSession(String[] rec, int[] cols) {
+        int id = SessionValidator.parseIntNice(field(rec, cols[0]), "ID");
+        return SessionValidator.build(id, field(rec, cols[1]), field(rec, cols[2]), field(rec, cols[3]),
+                field(rec, cols[4]), field(rec, cols[5]), field(rec, cols[6]),
+                field(rec, cols[7]), field(rec, cols[8]), field(rec, cols[9]));
+    }
+
+    private static String field(String[] rec, int col) {
+        return col >= 0 && col < rec.length ? rec[col] : "";
+    }
+
+    private static int[] defaultColumns() {
+        int[] cols = new int[COLUMN_NAMES.length];
+        for (int i = 0; i < cols.length; i++) cols[i] = i;
+        return cols;
+    }
+
+    // a header row has a first column that is not a number
+    private static boolean isHeader(String[] rec) {
+        try {
+            Integer.parseInt(rec[0].trim());
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static int[] mapHeader(String[] header) {
+        int[] cols = new int[COLUMN_NAMES.length];
+        for (int c = 0; c < cols.length; c++) {
+            cols[c] = -1;
+            for (int h = 0; h < header.length && cols[c] < 0; h++) {
+                String name = header[h].trim().toLowerCase();
+                for (String alias : COLUMN_NAMES[c]) {
+                    if (alias.equals(name)) {
+                        cols[c] = h;
+                        break;
+                    }
+                }
+            }
+        }
+        return cols;
+    }
+
+    /** Counts bytes read so progress can be shown as a percentage. */
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
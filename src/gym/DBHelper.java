@@ -1,40 +1,542 @@
 package gym;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simple helper class that manages the SQLite database connection.
+ * Helper class that manages the SQLite database connections.
  * The GUI and service classes use this to open the database file.
+ *
+ * Connections are kept open and reused instead of opening the file
+ * on every call. There is one writer connection (SQLite only allows
+ * one writer at a time anyway) and a small pool of reader connections.
+ * Calling close() on a connection from this class hands it back to
+ * the pool instead of really closing it.
+ *
+ * Every new connection gets the pragmas of the DurabilityProfile
+ * (journal mode, synchronous level, busy timeout, cache size).
+ *
+ * Each connection also keeps its prepared statements: prepareStatement(sql)
+ * hands back the statement prepared the last time the same SQL ran on
+ * that connection, and closing it only clears the parameters. SQLite then
+ * skips parsing and planning the query again.
  */
 public class DBHelper {
 
+    /** Default number of reader connections. */
+    public static final int DEFAULT_READERS = 4;
+
+    /** Default time an unused connection stays open (ms). */
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60_000;
+
+    /** Max prepared statements kept per connection. */
+    public static final int STATEMENT_CACHE_SIZE = 64;
+
+    /** How long a caller waits for a free connection before giving up (ms). */
+    private static final long ACQUIRE_TIMEOUT_MS = 30_000;
+
     /** Path to the SQLite .db file. */
     private String dbPath = "";
 
+    /** Max number of reader connections. */
+    private int readerCount = DEFAULT_READERS;
+
+    /** Unused connections older than this are closed. */
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    /** Pragmas set on every new connection. */
+    private DurabilityProfile durability = DurabilityProfile.fromSystemProperty();
+
+    /** Bumped every time the pool is shut down so old connections are not reused. */
+    private int generation;
+
+    /** Only one caller can hold the writer at a time. */
+    private final Semaphore writerPermit = new Semaphore(1, true);
+
+    /** Limits how many readers can be checked out at once. */
+    private Semaphore readerPermits = new Semaphore(readerCount, true);
+
+    /** The open writer connection (null until first used). */
+    private Idle writer;
+
+    /** Open reader connections that are not checked out right now. */
+    private final ArrayDeque<Idle> idleReaders = new ArrayDeque<>();
+
+    /** Prepared statements of every open connection, by connection. */
+    private final Map<Connection, StatementCache> statements = new IdentityHashMap<>();
+
+    /** Time spent waiting for and opening connections. */
+    private volatile OpStats writeWait = new OpStats("connection.write");
+    private volatile OpStats readWait = new OpStats("connection.read");
+
+    /** prepareStatement calls answered from the cache, and ones that had to prepare. */
+    private volatile OpStats statementHits = new OpStats("statement.reused");
+    private volatile OpStats statementMisses = new OpStats("statement.prepared");
+
+    /**
+     * Records connection checkout times in the given metrics
+     * (as "connection.write" and "connection.read"), and statement
+     * cache use (as "statement.reused" and "statement.prepared").
+     * @param metrics where to record
+     */
+    public void setMetrics(ServiceMetrics metrics) {
+        writeWait = metrics.op("connection.write");
+        readWait = metrics.op("connection.read");
+        statementHits = metrics.op("statement.reused");
+        statementMisses = metrics.op("statement.prepared");
+    }
+
     /**
      * Sets the file path for the database.
+     * If the path changes, every pooled connection to the old file is closed.
      * @param path the full path to the .db file
      */
     public void setPath(String path) {
-        dbPath = path.trim();
+        String p = path.trim();
+        synchronized (this) {
+            if (p.equals(dbPath)) return;
+            shutdown();
+            dbPath = p;
+        }
+    }
+
+    /** @return the current database path */
+    public synchronized String getPath() {
+        return dbPath;
+    }
+
+    /**
+     * Sets how many reader connections may be open at the same time.
+     * Takes effect for the pool right away; extra idle readers are closed.
+     * @param readers number of readers (at least 1)
+     */
+    public synchronized void setPoolSize(int readers) {
+        if (readers < 1) throw new IllegalArgumentException("Pool size must be at least 1.");
+        shutdown();
+        readerCount = readers;
+        readerPermits = new Semaphore(readers, true);
+    }
+
+    /** @return the max number of reader connections */
+    public synchronized int getPoolSize() {
+        return readerCount;
+    }
+
+    /**
+     * Sets the pragmas for new connections. Open connections are closed
+     * so every connection uses the new profile.
+     * @param profile the profile to use
+     */
+    public synchronized void setDurability(DurabilityProfile profile) {
+        shutdown();
+        durability = profile;
+    }
+
+    /** @return the profile new connections get */
+    public synchronized DurabilityProfile getDurability() {
+        return durability;
+    }
+
+    /**
+     * Sets how long an unused connection stays open before it is closed.
+     * @param ms idle time in milliseconds (0 or less keeps them forever)
+     */
+    public synchronized void setIdleTimeout(long ms) {
+        idleTimeoutMs = ms;
     }
 
     /**
-     * Opens a connection to the database.
+     * Checks out the writer connection. Use this for inserts, updates and deletes.
+     * Closing the returned connection gives it back to the pool.
      * @return a valid SQLite connection
      * @throws IllegalArgumentException if the path is missing or connection fails
      */
     public Connection connect() {
+        long t0 = System.nanoTime();
+        try {
+            Connection c = checkoutWriter();
+            writeWait.success(t0, 0, 0);
+            return c;
+        } catch (RuntimeException e) {
+            writeWait.failure(t0, e);
+            throw e;
+        }
+    }
+
+    private Connection checkoutWriter() {
+        acquire(writerPermit);
         try {
-            if (dbPath.isEmpty())
-                throw new IllegalArgumentException("Database path is empty.");
+            Idle w;
+            int gen;
+            synchronized (this) {
+                checkPath();
+                evictIdle(System.currentTimeMillis());
+                w = writer;
+                writer = null;
+                gen = generation;
+            }
+            if (w == null || !isUsable(w.conn)) {
+                if (w != null) quietClose(w.conn);
+                w = new Idle(open(false));
+            }
+            return wrap(w.conn, gen, true, writerPermit);
+        } catch (RuntimeException e) {
+            writerPermit.release();
+            throw e;
+        }
+    }
 
-            String url = "jdbc:sqlite:" + dbPath;
-            return DriverManager.getConnection(url);
+    /**
+     * Checks out one of the reader connections. Use this for SELECT queries.
+     * Closing the returned connection gives it back to the pool.
+     * @return a valid read-only SQLite connection
+     * @throws IllegalArgumentException if the path is missing or connection fails
+     */
+    public Connection connectRead() {
+        long t0 = System.nanoTime();
+        try {
+            Connection c = checkoutReader();
+            readWait.success(t0, 0, 0);
+            return c;
+        } catch (RuntimeException e) {
+            readWait.failure(t0, e);
+            throw e;
+        }
+    }
+
+    private Connection checkoutReader() {
+        Semaphore permits;
+        synchronized (this) {
+            permits = readerPermits;
+        }
+        acquire(permits);
+        try {
+            while (true) {
+                Idle r;
+                int gen;
+                synchronized (this) {
+                    checkPath();
+                    evictIdle(System.currentTimeMillis());
+                    r = idleReaders.pollFirst();
+                    gen = generation;
+                }
+                if (r == null) return wrap(open(true), gen, false, permits);
+                if (isUsable(r.conn)) return wrap(r.conn, gen, false, permits);
+                quietClose(r.conn);
+            }
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection. Connections that are checked out
+     * right now are closed when they are handed back.
+     */
+    public synchronized void close() {
+        shutdown();
+    }
+
+    // closes idle connections and makes checked-out ones stale
+    private void shutdown() {
+        generation++;
+        if (writer != null) {
+            quietClose(writer.conn);
+            writer = null;
+        }
+        for (Idle r : idleReaders) quietClose(r.conn);
+        idleReaders.clear();
+    }
 
+    private void checkPath() {
+        if (dbPath.isEmpty())
+            throw new IllegalArgumentException("Database path is empty.");
+    }
+
+    // closes connections that have been sitting unused for too long
+    private void evictIdle(long now) {
+        if (idleTimeoutMs <= 0) return;
+        if (writer != null && now - writer.lastUsed > idleTimeoutMs) {
+            quietClose(writer.conn);
+            writer = null;
+        }
+        Iterator<Idle> it = idleReaders.iterator();
+        while (it.hasNext()) {
+            Idle r = it.next();
+            if (now - r.lastUsed > idleTimeoutMs) {
+                quietClose(r.conn);
+                it.remove();
+            }
+        }
+    }
+
+    private Connection open(boolean readOnly) {
+        String path = getPath();
+        DurabilityProfile profile = getDurability();
+        try {
+            Connection c = DriverManager.getConnection("jdbc:sqlite:" + path);
+            try {
+                profile.apply(c, readOnly);
+                if (readOnly) {
+                    try (Statement st = c.createStatement()) {
+                        st.execute("PRAGMA query_only = true");
+                    }
+                }
+            } catch (SQLException e) {
+                quietClose(c);
+                throw e;
+            }
+            return c;
         } catch (Exception e) {
-            throw new IllegalArgumentException("Could not connect to: " + dbPath);
+            throw new IllegalArgumentException("Could not connect to: " + path);
+        }
+    }
+
+    private void acquire(Semaphore s) {
+        try {
+            if (!s.tryAcquire(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                throw new IllegalStateException("Timed out waiting for a database connection.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection.");
+        }
+    }
+
+    // validation on checkout
+    private boolean isUsable(Connection c) {
+        try {
+            return c.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // called when a pooled connection is closed by the caller
+    private void release(Connection c, int gen, boolean isWriter, Semaphore permits) {
+        try {
+            statementsOf(c).checkInAll();
+            boolean ok = resetForReuse(c);
+            synchronized (this) {
+                if (ok && gen == generation) {
+                    Idle idle = new Idle(c);
+                    if (isWriter) writer = idle;
+                    else idleReaders.addFirst(idle);
+                } else {
+                    quietClose(c);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // rolls back anything left open so the next user gets a clean connection
+    private boolean resetForReuse(Connection c) {
+        try {
+            if (c.isClosed()) return false;
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // closes the connection and its cached statements
+    private void quietClose(Connection c) {
+        StatementCache cache;
+        synchronized (statements) {
+            cache = statements.remove(c);
+        }
+        if (cache != null) cache.closeAll();
+        try {
+            c.close();
+        } catch (SQLException ignore) {}
+    }
+
+    private StatementCache statementsOf(Connection real) {
+        synchronized (statements) {
+            return statements.computeIfAbsent(real, c -> new StatementCache());
+        }
+    }
+
+    // the cached statement for this SQL, or a new uncached one if it is in use right now
+    private PreparedStatement prepare(Connection real, Connection proxy, String sql) throws SQLException {
+        long t0 = System.nanoTime();
+        StatementCache cache = statementsOf(real);
+        PreparedStatement ps = cache.checkOut(sql);
+        if (ps != null) {
+            statementHits.success(t0, 0, 0);
+            return wrapStatement(ps, proxy, cache, sql);
+        }
+        ps = real.prepareStatement(sql);
+        statementMisses.success(t0, 0, 0);
+        if (!cache.add(sql, ps)) return ps;
+        return wrapStatement(ps, proxy, cache, sql);
+    }
+
+    // hands out a proxy whose close() puts the statement back in the cache
+    private static PreparedStatement wrapStatement(PreparedStatement real, Connection owner, StatementCache cache, String sql) {
+        InvocationHandler h = new InvocationHandler() {
+            private boolean returned;
+            private ResultSet open;
+
+            @Override
+            public Object invoke(Object proxy, java.lang.reflect.Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if (name.equals("close")) {
+                    if (!returned) {
+                        returned = true;
+                        try {
+                            if (open != null) open.close();
+                            real.clearParameters();
+                            real.clearBatch();
+                            cache.checkIn(sql);
+                        } catch (SQLException e) {
+                            cache.discard(sql);
+                        }
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) return returned;
+                if (name.equals("getConnection")) return owner;
+                if (returned) throw new SQLException("Statement is closed.");
+                try {
+                    Object result = m.invoke(real, args);
+                    if (result instanceof ResultSet) open = (ResultSet) result;
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, h);
+    }
+
+    // hands out a proxy whose close() returns the connection to the pool
+    private Connection wrap(Connection real, int gen, boolean isWriter, Semaphore permits) {
+        InvocationHandler h = new InvocationHandler() {
+            private boolean returned;
+
+            @Override
+            public Object invoke(Object proxy, java.lang.reflect.Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if (name.equals("close")) {
+                    if (!returned) {
+                        returned = true;
+                        release(real, gen, isWriter, permits);
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) return returned || real.isClosed();
+                if (returned) throw new SQLException("Connection was already returned to the pool.");
+                if (name.equals("prepareStatement") && args.length == 1) return prepare(real, (Connection) proxy, (String) args[0]);
+                try {
+                    return m.invoke(real, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, h);
+    }
+
+    /**
+     * The prepared statements of one connection, least recently used
+     * first. A statement is "out" while a caller holds it; it is only
+     * closed when it is back in and pushed out by newer ones.
+     */
+    private static class StatementCache {
+        private final LinkedHashMap<String, PreparedStatement> bySql = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<String> out = new HashSet<>();
+
+        // the statement for this SQL if it is cached and not out
+        synchronized PreparedStatement checkOut(String sql) {
+            PreparedStatement ps = bySql.get(sql);
+            if (ps == null || !out.add(sql)) return null;
+            return ps;
+        }
+
+        // caches a new statement as out; false if the SQL is already cached (and out)
+        synchronized boolean add(String sql, PreparedStatement ps) {
+            if (bySql.containsKey(sql)) return false;
+            bySql.put(sql, ps);
+            out.add(sql);
+            Iterator<Map.Entry<String, PreparedStatement>> it = bySql.entrySet().iterator();
+            while (bySql.size() > STATEMENT_CACHE_SIZE && it.hasNext()) {
+                Map.Entry<String, PreparedStatement> e = it.next();
+                if (out.contains(e.getKey())) continue;
+                quietClose(e.getValue());
+                it.remove();
+            }
+            return true;
+        }
+
+        synchronized void checkIn(String sql) {
+            out.remove(sql);
+        }
+
+        // drops a statement that could not be reset
+        synchronized void discard(String sql) {
+            out.remove(sql);
+            PreparedStatement ps = bySql.remove(sql);
+            if (ps != null) quietClose(ps);
+        }
+
+        // the connection went back to the pool: whatever is still out is reset and back in
+        synchronized void checkInAll() {
+            for (String sql : new ArrayList<>(out)) {
+                try {
+                    bySql.get(sql).clearParameters();
+                    out.remove(sql);
+                } catch (SQLException e) {
+                    discard(sql);
+                }
+            }
+        }
+
+        synchronized void closeAll() {
+            for (PreparedStatement ps : bySql.values()) quietClose(ps);
+            bySql.clear();
+            out.clear();
+        }
+
+        private static void quietClose(Statement st) {
+            try {
+                st.close();
+            } catch (SQLException ignore) {}
+        }
+    }
+
+    /** An open connection plus the time it was last handed back. */
+    private static class Idle {
+        final Connection conn;
+        final long lastUsed = System.currentTimeMillis();
+
+        Idle(Connection conn) {
+            this.conn = conn;
         }
     }
 }
@@ -0,0 +1,177 @@
+package gym;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+/**
+ * Notices when another program writes to the database file.
+ *
+ * A background thread runs PRAGMA data_version on its own connection
+ * every few hundred milliseconds. That number only changes when some
+ * other connection has committed, so most polls cost next to nothing.
+ * When it changes, the new entries of the change_log table (filled by
+ * triggers, see SchemaMigrator version 4) say which ids were touched,
+ * and only those are reported.
+ */
+public class DataVersionWatcher {
+
+    /** More changes than this in one poll are reported as "everything changed". */
+    public static final int MAX_CHANGES = 1000;
+
+    /** Gets the changes made by others (called on the watcher thread). */
+    public interface Listener {
+        /**
+         * @param ops id → 'I' (new row), 'U' (changed row) or 'D' (deleted row),
+         *            with several changes to one id folded together
+         */
+        void rowsChanged(Map<Integer, Character> ops);
+
+        /** Too many changes, or the log was trimmed; everything should be re-read. */
+        void everythingChanged();
+    }
+
+    private final String path;
+    private final LongPredicate isOwn;
+    private final Listener listener;
+    private final ScheduledExecutorService timer;
+
+    private Connection conn;
+    private long dataVersion;
+    private long lastSeq;
+
+    /**
+     * @param path     the database file
+     * @param isOwn    true for change_log seqs written by this program (those are skipped)
+     * @param listener gets the other changes
+     */
+    public DataVersionWatcher(String path, LongPredicate isOwn, Listener listener) {
+        this.path = path;
+        this.isOwn = isOwn;
+        this.listener = listener;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens the watcher's connection and starts polling.
+     * @param periodMs time between polls
+     * @throws SQLException if the database cannot be opened
+     */
+    public synchronized void start(long periodMs) throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA query_only = true");
+        }
+        dataVersion = dataVersion();
+        lastSeq = maxSeq(conn);
+        timer.scheduleWithFixedDelay(this::poll, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops polling and closes the connection. */
+    public synchronized void close() {
+        timer.shutdownNow();
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {}
+            conn = null;
+        }
+    }
+
+    /**
+     * @param conn any connection to a migrated database
+     * @return the newest change_log seq (0 if the log is empty)
+     * @throws SQLException if the query fails
+     */
+    static long maxSeq(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MAX(seq) FROM change_log")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private synchronized void poll() {
+        if (conn == null) return;
+        try {
+            long v = dataVersion();
+            if (v == dataVersion) return;
+            dataVersion = v;
+            readChanges();
+        } catch (SQLException e) {
+            // SQLITE_BUSY / SQLITE_LOCKED: someone is writing right now; try again next time
+            if (e.getErrorCode() != 5 && e.getErrorCode() != 6)
+                System.err.println("Change watcher: " + e.getMessage());
+        }
+    }
+
+    private void readChanges() throws SQLException {
+        // first and last op per id, in id order of first appearance
+        LinkedHashMap<Integer, char[]> seen = new LinkedHashMap<>();
+        long expected = lastSeq + 1;
+        int count = 0;
+        boolean gap = false;
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT seq, row_id, op FROM change_log WHERE seq > ? ORDER BY seq LIMIT ?")) {
+            // our own rows are skipped cheaply, so keep reading until the end or too many foreign ones
+            int batch;
+            do {
+                batch = 0;
+                ps.setLong(1, lastSeq);
+                ps.setInt(2, MAX_CHANGES + 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        batch++;
+                        long seq = rs.getLong(1);
+                        if (seq != expected && lastSeq > 0) gap = true;
+                        expected = seq + 1;
+                        lastSeq = seq;
+                        if (isOwn.test(seq)) continue;
+                        count++;
+                        char op = rs.getString(3).charAt(0);
+                        char[] firstLast = seen.computeIfAbsent(rs.getInt(2), k -> new char[]{op, op});
+                        firstLast[1] = op;
+                    }
+                }
+            } while (batch > MAX_CHANGES && count <= MAX_CHANGES && !gap);
+        }
+
+        if (gap || count > MAX_CHANGES) {
+            lastSeq = maxSeq(conn);
+            listener.everythingChanged();
+            return;
+        }
+        if (seen.isEmpty()) return;
+
+        LinkedHashMap<Integer, Character> ops = new LinkedHashMap<>();
+        for (Map.Entry<Integer, char[]> e : seen.entrySet()) {
+            char first = e.getValue()[0];
+            char last = e.getValue()[1];
+            if (first == 'I' && last == 'D') continue; // came and went
+            if (first == 'I') ops.put(e.getKey(), 'I');
+            else if (last == 'D') ops.put(e.getKey(), 'D');
+            else ops.put(e.getKey(), 'U');
+        }
+        if (!ops.isEmpty()) listener.rowsChanged(ops);
+    }
+
+    private long dataVersion() throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
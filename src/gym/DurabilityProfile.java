@@ -0,0 +1,107 @@
+package gym;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * How SQLite connections trade safety for speed. DBHelper applies the
+ * profile to every connection it opens.
+ *
+ * All profiles use the WAL journal: readers never block the writer, and
+ * a commit appends to one file instead of rewriting pages twice. What
+ * changes is the synchronous level (when SQLite waits for the disk):
+ *   SAFE     FULL   - a committed write survives a power cut (the default)
+ *   BALANCED NORMAL - survives a program crash; a power cut may lose the last commits
+ *   FAST     OFF    - for bulk loads and benchmarks only
+ *
+ * Pick one with -Dgym.durability=safe|balanced|fast.
+ */
+public final class DurabilityProfile {
+
+    /** SQLite's PRAGMA synchronous levels. */
+    public enum Sync { OFF, NORMAL, FULL, EXTRA }
+
+    /** WAL, synchronous FULL. */
+    public static final DurabilityProfile SAFE = new DurabilityProfile("safe", true, Sync.FULL, 5_000, 16_384);
+
+    /** WAL, synchronous NORMAL. */
+    public static final DurabilityProfile BALANCED = new DurabilityProfile("balanced", true, Sync.NORMAL, 5_000, 16_384);
+
+    /** WAL, synchronous OFF, bigger cache. */
+    public static final DurabilityProfile FAST = new DurabilityProfile("fast", true, Sync.OFF, 5_000, 65_536);
+
+    /** Short name (safe, balanced, fast or custom). */
+    public final String name;
+
+    /** True for the WAL journal, false to leave the file's journal mode alone. */
+    public final boolean wal;
+
+    /** When SQLite waits for the disk. */
+    public final Sync synchronous;
+
+    /** How long a connection waits for a lock held by another one (ms). */
+    public final int busyTimeoutMs;
+
+    /** Page cache per connection, in KiB. */
+    public final int cacheSizeKb;
+
+    /**
+     * @param name          short name for logs
+     * @param wal           use the WAL journal
+     * @param synchronous   synchronous level
+     * @param busyTimeoutMs lock wait (ms)
+     * @param cacheSizeKb   page cache per connection (KiB)
+     */
+    public DurabilityProfile(String name, boolean wal, Sync synchronous, int busyTimeoutMs, int cacheSizeKb) {
+        this.name = name;
+        this.wal = wal;
+        this.synchronous = synchronous;
+        this.busyTimeoutMs = busyTimeoutMs;
+        this.cacheSizeKb = cacheSizeKb;
+    }
+
+    /**
+     * @param name safe, balanced or fast (any case)
+     * @return the profile
+     * @throws IllegalArgumentException for other names
+     */
+    public static DurabilityProfile named(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "safe": return SAFE;
+            case "balanced": return BALANCED;
+            case "fast": return FAST;
+            default: throw new IllegalArgumentException("Unknown durability profile: " + name + " (use safe, balanced or fast).");
+        }
+    }
+
+    /** @return the profile named by -Dgym.durability, or SAFE */
+    public static DurabilityProfile fromSystemProperty() {
+        String name = System.getProperty("gym.durability");
+        return name == null ? SAFE : named(name);
+    }
+
+    /**
+     * Sets the pragmas on a newly opened connection.
+     * The journal mode is only set on the writer (it needs a write lock
+     * and is stored in the file, so readers pick it up).
+     * @param conn     the connection
+     * @param readOnly true for a reader connection
+     * @throws SQLException if a pragma fails
+     */
+    void apply(Connection conn, boolean readOnly) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            if (!readOnly && wal) st.execute("PRAGMA journal_mode = WAL");
+            st.execute("PRAGMA synchronous = " + synchronous);
+            st.execute("PRAGMA cache_size = " + (-cacheSizeKb));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + (wal ? "WAL" : "journal unchanged") + ", synchronous " + synchronous
+                + ", busy timeout " + busyTimeoutMs + " ms, cache " + cacheSizeKb + " KiB)";
+    }
+}
@@ -0,0 +1,59 @@
+package gym;
+
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * Set of every id in the workouts table, kept in memory so
+ * existsId() is a bit test instead of a database query.
+ *
+ * Ids are normally small positive numbers, so they are stored as bits
+ * (about 125 KB per million ids). Negative ids, which the form allows,
+ * go in a small normal set.
+ */
+public class IdBitmap {
+
+    private final BitSet bits = new BitSet();
+    private final HashSet<Integer> negatives = new HashSet<>();
+    private int count;
+
+    /**
+     * @param id the id to check
+     * @return true if the id is in the set
+     */
+    public synchronized boolean contains(int id) {
+        return id >= 0 ? bits.get(id) : negatives.contains(id);
+    }
+
+    /**
+     * @param id the id to add
+     */
+    public synchronized void add(int id) {
+        if (contains(id)) return;
+        if (id >= 0) bits.set(id);
+        else negatives.add(id);
+        count++;
+    }
+
+    /**
+     * @param id the id to remove
+     */
+    public synchronized void remove(int id) {
+        if (!contains(id)) return;
+        if (id >= 0) bits.clear(id);
+        else negatives.remove(id);
+        count--;
+    }
+
+    /** Empties the set. */
+    public synchronized void clear() {
+        bits.clear();
+        negatives.clear();
+        count = 0;
+    }
+
+    /** @return number of ids in the set */
+    public synchronized int size() {
+        return count;
+    }
+}
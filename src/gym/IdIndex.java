@@ -0,0 +1,168 @@
+package gym;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory index from session id to record number, used by LogStore.
+ *
+ * The map part is a primitive int hash table with linear probing (like
+ * SessionCache, but it grows instead of evicting). Next to it the ids are
+ * kept in a sorted array, so paging in id order is a binary search.
+ * New ids are almost always bigger than the last one, so adding one is
+ * normally just an append.
+ */
+public class IdIndex {
+
+    /** Marks an empty slot; record 0 is the file header so it is never used. */
+    private static final int EMPTY = 0;
+
+    private int mask = 15;
+    private int[] keys = new int[16];
+    private int[] recs = new int[16];
+    private int size;
+
+    private int[] sorted = new int[16];
+
+    /**
+     * @param id the session id
+     * @return the record number, or -1 if the id is not in the index
+     */
+    public int get(int id) {
+        for (int i = slot(id); recs[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == id) return recs[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an id or points it at a newer record.
+     * @param id  the session id
+     * @param rec the record number (at least 1)
+     * @return the record it replaced, or -1 if the id is new
+     */
+    public int put(int id, int rec) {
+        int i = slot(id);
+        for (; recs[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                int old = recs[i];
+                recs[i] = rec;
+                return old;
+            }
+        }
+        keys[i] = id;
+        recs[i] = rec;
+        size++;
+        insertSorted(id);
+        if (size * 2 > mask) grow();
+        return -1;
+    }
+
+    /**
+     * @param id the session id
+     * @return the record the id pointed at, or -1 if it was not in the index
+     */
+    public int remove(int id) {
+        int i = slot(id);
+        for (; recs[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                int old = recs[i];
+                removeAt(i);
+                size--;
+                int pos = Arrays.binarySearch(sorted, 0, size + 1, id);
+                System.arraycopy(sorted, pos + 1, sorted, pos, size - pos);
+                return old;
+            }
+        }
+        return -1;
+    }
+
+    /** @return number of ids */
+    public int size() {
+        return size;
+    }
+
+    /** Removes every id. */
+    public void clear() {
+        Arrays.fill(recs, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @param offset position in id order
+     * @return the id at that position
+     */
+    public int idAt(int offset) {
+        return sorted[offset];
+    }
+
+    /**
+     * @param afterId an id (need not be in the index)
+     * @return position in id order of the first id bigger than afterId
+     */
+    public int positionAfter(long afterId) {
+        if (afterId < Integer.MIN_VALUE) return 0;
+        if (afterId >= Integer.MAX_VALUE) return size;
+        int pos = Arrays.binarySearch(sorted, 0, size, (int) afterId);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * Calls the action with the record number of every id (in no particular order).
+     * @param action gets each record number
+     */
+    public void forEachRecord(IntConsumer action) {
+        for (int i = 0; i <= mask; i++) {
+            if (recs[i] != EMPTY) action.accept(recs[i]);
+        }
+    }
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void insertSorted(int id) {
+        int n = size - 1;
+        if (n == sorted.length) sorted = Arrays.copyOf(sorted, n * 2);
+        if (n == 0 || sorted[n - 1] < id) {
+            sorted[n] = id;
+            return;
+        }
+        int pos = -Arrays.binarySearch(sorted, 0, n, id) - 1;
+        System.arraycopy(sorted, pos, sorted, pos + 1, n - pos);
+        sorted[pos] = id;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldRecs = recs;
+        mask = mask * 2 + 1;
+        keys = new int[mask + 1];
+        recs = new int[mask + 1];
+        for (int j = 0; j < oldRecs.length; j++) {
+            if (oldRecs[j] == EMPTY) continue;
+            int i = slot(oldKeys[j]);
+            while (recs[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            recs[i] = oldRecs[j];
+        }
+    }
+
+    // removes slot i and shifts later entries back so lookups still find them
+    private void removeAt(int i) {
+        recs[i] = EMPTY;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (recs[j] == EMPTY) return;
+            int home = slot(keys[j]);
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (stays) continue;
+            keys[i] = keys[j];
+            recs[i] = recs[j];
+            recs[j] = EMPTY;
+            i = j;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package gym;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Very small JSON reader and writer for the API server.
+ *
+ * Objects become LinkedHashMap, arrays ArrayList, numbers Long (no
+ * fraction or exponent) or Double, and true/false/null the Java values.
+ * Writing accepts the same types plus WorkoutSession, SessionRecord,
+ * RollingStats and other Numbers.
+ */
+public final class Json {
+
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses one JSON value.
+     * @param text the JSON text
+     * @return the value (see the class comment for the types)
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    public static Object parse(String text) {
+        Json p = new Json(text);
+        p.skipSpace();
+        Object v = p.value();
+        p.skipSpace();
+        if (p.pos != text.length()) throw p.error("Unexpected text after the value");
+        return v;
+    }
+
+    /**
+     * Parses a JSON object.
+     * @param text the JSON text
+     * @return the object's fields
+     * @throws IllegalArgumentException if the text is not a JSON object
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object v = parse(text);
+        if (!(v instanceof Map)) throw new IllegalArgumentException("Expected a JSON object.");
+        return (Map<String, Object>) v;
+    }
+
+    /**
+     * @param value the value to write
+     * @return the value as JSON text
+     */
+    public static String write(Object value) {
+        StringBuilder sb = new StringBuilder(64);
+        write(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a value as JSON.
+     * @param sb    where to append
+     * @param value the value to write
+     */
+    public static void write(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            string(sb, (String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) sb.append("null");
+            else if (d == Math.rint(d) && Math.abs(d) < 1e15) sb.append((long) d);
+            else sb.append(d);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Map) {
+            sb.append('{');
+            Iterator<? extends Map.Entry<?, ?>> it = ((Map<?, ?>) value).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<?, ?> e = it.next();
+                string(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                write(sb, e.getValue());
+                if (it.hasNext()) sb.append(',');
+            }
+            sb.append('}');
+        } else if (value instanceof Iterable) {
+            sb.append('[');
+            Iterator<?> it = ((Iterable<?>) value).iterator();
+            while (it.hasNext()) {
+                write(sb, it.next());
+                if (it.hasNext()) sb.append(',');
+            }
+            sb.append(']');
+        } else if (value instanceof WorkoutSession) {
+            write(sb, fields((WorkoutSession) value));
+        } else if (value instanceof SessionRecord) {
+            write(sb, fields(((SessionRecord) value).toSession()));
+        } else if (value instanceof RollingStats) {
+            RollingStats r = (RollingStats) value;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("days", r.days);
+            m.put("bestE1RM", r.bestE1RM);
+            m.put("volume", r.volume);
+            m.put("sets", r.sets);
+            write(sb, m);
+        } else {
+            string(sb, value.toString());
+        }
+    }
+
+    /**
+     * @param s a session
+     * @return its fields, named like the CSV header
+     */
+    public static Map<String, Object> fields(WorkoutSession s) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", s.id);
+        m.put("date", s.date);
+        m.put("exerciseName", s.exerciseName);
+        m.put("muscleGroup", s.muscleGroup);
+        m.put("sets", s.sets);
+        m.put("reps", s.reps);
+        m.put("weightLbs", s.weightLbs);
+        m.put("durationMin", s.durationMin);
+        m.put("rpe", s.rpe);
+        m.put("notes", s.notes);
+        if (s.version > 0) m.put("version", s.version);
+        return m;
+    }
+
+    private static void string(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    // ---- parser ----
+
+    private Object value() {
+        if (pos >= text.length()) throw error("Unexpected end of JSON");
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return number();
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        pos++;
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+            return m;
+        }
+        while (true) {
+            skipSpace();
+            if (peek() != '"') throw error("Expected a field name");
+            String key = string();
+            skipSpace();
+            expect(':');
+            skipSpace();
+            m.put(key, value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return m;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipSpace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            skipSpace();
+            list.add(value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return list;
+            }
+        }
+    }
+
+    private String string() {
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) throw error("Unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length()) throw error("Unterminated string");
+            char e = text.charAt(pos++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) throw error("Bad \\u escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Bad \\u escape");
+                    }
+                    pos += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+    }
+
+    private Object number() {
+        int start = pos;
+        boolean whole = true;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') whole = false;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) break;
+            pos++;
+        }
+        String n = text.substring(start, pos);
+        try {
+            return whole ? (Object) Long.parseLong(n) : (Object) Double.parseDouble(n);
+        } catch (NumberFormatException e) {
+            throw error("Bad number " + n);
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) throw error("Unexpected text");
+        pos += word.length();
+        return value;
+    }
+
+    private char peek() {
+        if (pos >= text.length()) throw error("Unexpected end of JSON");
+        return text.charAt(pos);
+    }
+
+    private void expect(char c) {
+        if (peek() != c) throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg + " at position " + pos + ".");
+    }
+}
@@ -0,0 +1,68 @@
+package gym;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (like HdrHistogram,
+ * at about 12% precision). Each power of two is split into 8 buckets,
+ * so recording is one array increment and percentiles stay accurate
+ * from nanoseconds to minutes with a fixed, small amount of memory.
+ */
+public class LatencyHistogram {
+
+    /** Sub-buckets per power of two (2^3 = 8). */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records one value.
+     * @param nanos elapsed time in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /**
+     * Returns the value below which the given fraction of recorded values fall.
+     * @param fraction e.g. 0.99 for p99
+     * @return the value in nanoseconds (0 if nothing was recorded)
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        long[] snap = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snap[i] = counts.get(i);
+            total += snap[i];
+        }
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= target) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /** Clears all counts. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    private static int bucket(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int m = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (m - SUB_BITS)) & (SUB_COUNT - 1);
+        return SUB_COUNT + (m - SUB_BITS) * SUB_COUNT + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int m = (bucket - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+        int sub = (bucket - SUB_COUNT) % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << (m - SUB_BITS)) - 1;
+    }
+}
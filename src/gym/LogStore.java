@@ -0,0 +1,629 @@
+package gym;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Stores workout sessions in a memory-mapped, append-only log file
+ * instead of SQLite (used for paths ending in ".wlog").
+ *
+ * Every change is one fixed-size record added to the end of the file:
+ * a new or edited session is written again in full, and a delete writes a
+ * small "tombstone" record. An in-memory index points each id at its latest
+ * record, so reads never search the file. Adding a session is a copy into
+ * mapped memory, with no SQL parsing, journal or index pages to update.
+ *
+ * Each record has a CRC. When the file is opened it is read from the
+ * start; the first record with a bad CRC (a write cut off by a crash) and
+ * everything after it is wiped, so a crash can only lose the last writes.
+ * Writes are in the OS page cache as soon as add() returns, so they
+ * survive the program crashing; use setSyncWrites(true) to also flush
+ * each one to disk (much slower, like SQLite's default).
+ *
+ * When old versions and tombstones outnumber the live records the file is
+ * compacted: the live records are copied to a new file which then replaces
+ * the old one in a single rename.
+ */
+public class LogStore implements WorkoutStore {
+
+    /** File name ending that selects this store in the GUI. */
+    public static final String EXTENSION = ".wlog";
+
+    /** Size of every record (and of the header) in bytes. */
+    static final int RECORD_SIZE = 256;
+
+    /** Records per mapped segment (16 MB). */
+    static final int SEGMENT_RECORDS = 1 << 16;
+
+    /** Compaction only starts once there are at least this many dead records. */
+    static final int COMPACT_MIN_DEAD = 10_000;
+
+    private static final long MAGIC = 0x47574C4F47000001L; // "GWLOG", version 1
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    // record layout
+    private static final int TYPE = 0;
+    private static final int CRC = 4;
+    private static final int BODY = 8; // CRC covers the type byte and everything from here on
+    private static final int SEQ = 8;
+    private static final int ID = 16;
+    private static final int DAY = 20;
+    private static final int SETS = 24;
+    private static final int REPS = 28;
+    private static final int DURATION = 32;
+    private static final int RPE = 36;
+    private static final int WEIGHT = 40;
+    private static final int EXERCISE = 48;
+    private static final int MUSCLE = 112;
+    private static final int NOTES = 144;
+
+    // text field sizes (one length byte, then UTF-8)
+    private static final int EXERCISE_BYTES = MUSCLE - EXERCISE;
+    private static final int MUSCLE_BYTES = NOTES - MUSCLE;
+    private static final int NOTES_BYTES = RECORD_SIZE - NOTES;
+
+    private Path path;
+    private FileChannel channel;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+
+    /** Latest record of every live id. */
+    private final IdIndex index = new IdIndex();
+
+    /** Next free record number (record 0 is the header). */
+    private int end;
+
+    /** Records that are old versions or tombstones. */
+    private int dead;
+
+    /** Sequence number of the last record written. */
+    private long seq;
+
+    private boolean syncWrites;
+
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    private final List<Consumer<SessionChange>> listeners = new CopyOnWriteArrayList<>();
+
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final OpStats openStats = metrics.op("connect");
+    private final OpStats listAllStats = metrics.op("listAll");
+    private final OpStats pageStats = metrics.op("listAfter");
+    private final OpStats addStats = metrics.op("add");
+    private final OpStats findStats = metrics.op("findById");
+    private final OpStats updateStats = metrics.op("updateSession");
+    private final OpStats deleteStats = metrics.op("deleteById");
+    private final OpStats bestStats = metrics.op("bestE1RMInLast7Days");
+    private final OpStats compactStats = metrics.op("compact");
+    private final OpStats searchStats = metrics.op("search");
+
+    /**
+     * @param path a file path
+     * @return true if the GUI should open this path with a LogStore
+     */
+    public static boolean isLogPath(String path) {
+        return path.trim().toLowerCase().endsWith(EXTENSION);
+    }
+
+    @Override
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void addChangeListener(Consumer<SessionChange> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<SessionChange> listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(SessionChange c) {
+        for (Consumer<SessionChange> l : listeners) {
+            try {
+                l.accept(c);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Flush every write to disk before it returns (off by default).
+     * @param on true to call force() after each write
+     */
+    public synchronized void setSyncWrites(boolean on) {
+        syncWrites = on;
+    }
+
+    /**
+     * Opens or creates a log file and rebuilds the index from it.
+     * A damaged tail left by a crash is wiped.
+     * @param path the .wlog file
+     * @throws IllegalArgumentException if the file cannot be opened or is not a log file
+     */
+    @Override
+    public synchronized void connect(String path) {
+        long t0 = System.nanoTime();
+        close();
+        try {
+            Path p = Path.of(path.trim());
+            // a compaction that never finished; the original file is still complete
+            Files.deleteIfExists(compactPath(p));
+            this.path = p;
+            open();
+            openStats.success(t0, end, 0);
+        } catch (IOException | RuntimeException e) {
+            openStats.failure(t0, e);
+            close();
+            throw new IllegalArgumentException("Could not open log file: " + path + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        int count = (int) ((size + (long) SEGMENT_RECORDS * RECORD_SIZE - 1) / ((long) SEGMENT_RECORDS * RECORD_SIZE));
+        for (int i = 0; i < Math.max(1, count); i++) mapSegment(i);
+
+        ByteBuffer header = segments.get(0);
+        if (size == 0 || header.getLong(0) == 0) {
+            header.putLong(0, MAGIC);
+            header.putInt(8, RECORD_SIZE);
+        } else if (header.getLong(0) != MAGIC || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("not a workout log file");
+        }
+        recover();
+    }
+
+    // reads every record to rebuild the index; stops at the first empty or damaged one
+    private void recover() {
+        index.clear();
+        dead = 0;
+        seq = 0;
+        int capacity = segments.size() * SEGMENT_RECORDS;
+        int r = 1;
+        for (; r < capacity; r++) {
+            ByteBuffer b = segment(r);
+            int at = offset(r);
+            byte type = b.get(at + TYPE);
+            if (type == 0) break;
+            if (b.getInt(at + CRC) != checksum(b, at)) {
+                System.err.println("Warning: " + path + " has a damaged record at " + r + "; dropping it and the rest of the log.");
+                wipeFrom(r, capacity);
+                break;
+            }
+            seq = b.getLong(at + SEQ);
+            int id = b.getInt(at + ID);
+            if (type == PUT) {
+                if (index.put(id, r) >= 0) dead++;
+            } else {
+                if (index.remove(id) >= 0) dead++;
+                dead++;
+            }
+        }
+        end = r;
+    }
+
+    private void wipeFrom(int r, int capacity) {
+        for (; r < capacity; r++) {
+            ByteBuffer b = segment(r);
+            int at = offset(r);
+            if (b.get(at + TYPE) == 0) return;
+            for (int i = 0; i < RECORD_SIZE; i += 8) b.putLong(at + i, 0);
+        }
+    }
+
+    /** Flushes and closes the file (does nothing if none is open). */
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            for (MappedByteBuffer m : segments) m.force();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        unmapAll();
+        channel = null;
+        index.clear();
+        end = 0;
+    }
+
+    @Override
+    public synchronized ArrayList<WorkoutSession> listAll() {
+        long t0 = System.nanoTime();
+        ArrayList<WorkoutSession> list = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) list.add(read(index.get(index.idAt(i))));
+        listAllStats.success(t0, list.size(), 0);
+        return list;
+    }
+
+    @Override
+    public synchronized int countAll() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized ArrayList<WorkoutSession> listAfter(long afterId, int limit) {
+        long t0 = System.nanoTime();
+        ArrayList<WorkoutSession> list = new ArrayList<>(limit);
+        int last = Math.min(index.size(), index.positionAfter(afterId) + limit);
+        for (int i = index.positionAfter(afterId); i < last; i++) list.add(read(index.get(index.idAt(i))));
+        pageStats.success(t0, list.size(), 0);
+        return list;
+    }
+
+    /**
+     * Checks the live records in id order until the limit is reached.
+     * With another sort order every record is checked, then the matches
+     * are sorted and cut to the limit.
+     */
+    @Override
+    public synchronized ArrayList<SessionRecord> search(SessionQuery q) {
+        long t0 = System.nanoTime();
+        ArrayList<SessionRecord> list = new ArrayList<>();
+        int limit = q.getLimit() == 0 ? Integer.MAX_VALUE : q.getLimit();
+        boolean idOrder = q.isDefaultOrder();
+        for (int i = 0; i < index.size() && (!idOrder || list.size() < limit); i++) {
+            SessionRecord r = SessionRecord.of(read(index.get(index.idAt(i))));
+            if (q.matches(r)) list.add(r);
+        }
+        if (!idOrder) {
+            list.sort(q.recordOrder());
+            if (list.size() > limit) list.subList(limit, list.size()).clear();
+        }
+        searchStats.success(t0, list.size(), 0);
+        return list;
+    }
+
+    @Override
+    public synchronized int countBefore(int id) {
+        return index.positionAfter((long) id - 1);
+    }
+
+    @Override
+    public synchronized Integer idAtOffset(int offset) {
+        return offset >= 0 && offset < index.size() ? index.idAt(offset) : null;
+    }
+
+    @Override
+    public synchronized WorkoutSession findById(int id) {
+        long t0 = System.nanoTime();
+        int r = index.get(id);
+        WorkoutSession s = r < 0 ? null : read(r);
+        findStats.success(t0, s == null ? 0 : 1, 0);
+        return s;
+    }
+
+    @Override
+    public synchronized boolean existsId(int id) {
+        return index.get(id) >= 0;
+    }
+
+    /**
+     * Appends a new session.
+     * @param s the session; its text must fit the record (exercise 63,
+     *          muscle 31 and notes 111 bytes of UTF-8)
+     * @return false if the id already exists or the session does not fit
+     */
+    @Override
+    public synchronized boolean add(WorkoutSession s) {
+        long t0 = System.nanoTime();
+        try {
+            if (index.get(s.id) >= 0) throw new IllegalArgumentException("ID already exists: " + s.id);
+            index.put(s.id, append(PUT, s));
+            addStats.success(t0, 0, 1);
+            fire(SessionChange.inserted(s));
+            return true;
+        } catch (Exception e) {
+            addStats.failure(t0, e);
+            return false;
+        }
+    }
+
+    /**
+     * Appends a new version of a session; the old record becomes dead.
+     * Updating an id that does not exist does nothing (like SQL UPDATE)
+     * and returns false.
+     */
+    @Override
+    public synchronized boolean updateSession(WorkoutSession s) {
+        long t0 = System.nanoTime();
+        try {
+            int n = 0;
+            if (index.get(s.id) >= 0) {
+                index.put(s.id, append(PUT, s));
+                dead++;
+                n = 1;
+            }
+            updateStats.success(t0, 0, n);
+            if (n == 0) return false;
+            fire(SessionChange.updated(s));
+            maybeCompact();
+            return true;
+        } catch (Exception e) {
+            updateStats.failure(t0, e);
+            return false;
+        }
+    }
+
+    /** Appends a tombstone for the id (if it exists; false if not). */
+    @Override
+    public synchronized boolean deleteById(int id) {
+        long t0 = System.nanoTime();
+        try {
+            int n = 0;
+            if (index.get(id) >= 0) {
+                WorkoutSession gone = new WorkoutSession();
+                gone.id = id;
+                append(DELETE, gone);
+                index.remove(id);
+                dead += 2;
+                n = 1;
+            }
+            deleteStats.success(t0, 0, n);
+            if (n == 0) return false;
+            fire(SessionChange.deleted(id));
+            maybeCompact();
+            return true;
+        } catch (Exception e) {
+            deleteStats.failure(t0, e);
+            return false;
+        }
+    }
+
+    /**
+     * Scans the live records of the exercise (the name is compared as
+     * bytes, so only matching records are decoded).
+     */
+    @Override
+    public synchronized double bestE1RMInLast7Days(String exercise, String date) {
+        long t0 = System.nanoTime();
+        Integer day = SessionService.epochDay(date);
+        if (day == null) {
+            bestStats.failure(t0, new IllegalArgumentException("Not a date: " + date));
+            return 0;
+        }
+        byte[] name = exercise.getBytes(StandardCharsets.UTF_8);
+        int from = day - 7;
+        double[] best = {0};
+        index.forEachRecord(r -> {
+            ByteBuffer b = segment(r);
+            int at = offset(r);
+            if (b.getInt(at + DAY) < from || !textEquals(b, at + EXERCISE, name)) return;
+            double est = b.getDouble(at + WEIGHT) * (1 + b.getInt(at + REPS) / 30.0);
+            if (est > best[0]) best[0] = est;
+        });
+        bestStats.success(t0, index.size(), 0);
+        return best[0];
+    }
+
+    /**
+     * Rewrites the file with only the live records, in id order.
+     * The new file is written next to the old one, flushed, and then
+     * renamed over it, so a crash leaves one complete file or the other.
+     * If the rename fails the old file is opened again and kept.
+     * @throws IllegalStateException if the new file cannot be written or
+     *         put in place
+     */
+    public synchronized void compact() {
+        long t0 = System.nanoTime();
+        Path tmp = compactPath(path);
+        int live = index.size();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(RECORD_SIZE * 256);
+            buf.put(segments.get(0).duplicate().limit(RECORD_SIZE));
+            for (int i = 0; i < live; i++) {
+                if (!buf.hasRemaining()) writeFully(out, buf);
+                int r = index.get(index.idAt(i));
+                int at = offset(r);
+                buf.put(segment(r).duplicate().limit(at + RECORD_SIZE).position(at));
+            }
+            writeFully(out, buf);
+            out.force(true);
+        } catch (IOException e) {
+            compactStats.failure(t0, e);
+            deleteQuietly(tmp);
+            throw new IllegalStateException("Could not compact " + path + ": " + e.getMessage());
+        }
+
+        // Windows cannot replace a mapped file, so the old one is let go before the
+        // rename; if the rename fails it is still complete and is opened again
+        try {
+            channel.close();
+            unmapAll();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            compactStats.failure(t0, e);
+            deleteQuietly(tmp);
+            reopen();
+            throw new IllegalStateException("Could not replace " + path + " with its compacted copy: " + e.getMessage());
+        }
+        reopen();
+        compactStats.success(t0, live, live);
+    }
+
+    // maps the file at path again after compact() let it go
+    private void reopen() {
+        try {
+            open();
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not reopen " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignore) {
+            // removed by the next connect()
+        }
+    }
+
+    /** @return records in the file that are old versions or tombstones */
+    public synchronized int deadRecords() {
+        return dead;
+    }
+
+    // after a write that is already in the log, so a failed compaction only logs a warning
+    private void maybeCompact() {
+        if (dead < COMPACT_MIN_DEAD || dead <= index.size()) return;
+        try {
+            compact();
+        } catch (IllegalStateException e) {
+            System.err.println("Warning: " + e.getMessage());
+        }
+    }
+
+    // writes one record at the end of the log and returns its number
+    private int append(byte type, WorkoutSession s) throws IOException {
+        if (channel == null) throw new IllegalStateException("No log file is open.");
+        ByteBuffer rec = ByteBuffer.wrap(scratch);
+        java.util.Arrays.fill(scratch, (byte) 0);
+        rec.putLong(SEQ, seq + 1);
+        rec.putInt(ID, s.id);
+        if (type == PUT) {
+            Integer day = SessionService.epochDay(s.date == null ? "" : s.date);
+            if (day == null) throw new IllegalArgumentException("Not a date: " + s.date);
+            rec.putInt(DAY, day);
+            rec.putInt(SETS, s.sets);
+            rec.putInt(REPS, s.reps);
+            rec.putInt(DURATION, s.durationMin);
+            rec.putInt(RPE, s.rpe);
+            rec.putDouble(WEIGHT, s.weightLbs);
+            putText(rec, EXERCISE, EXERCISE_BYTES, s.exerciseName, "Exercise");
+            putText(rec, MUSCLE, MUSCLE_BYTES, s.muscleGroup, "Muscle");
+            putText(rec, NOTES, NOTES_BYTES, s.notes, "Notes");
+        }
+
+        if (end == segments.size() * SEGMENT_RECORDS) mapSegment(segments.size());
+        int r = end;
+        MappedByteBuffer b = segment(r);
+        int at = offset(r);
+        // body and CRC first, type byte last: a record is only seen once it is complete
+        b.put(at + BODY, scratch, BODY, RECORD_SIZE - BODY);
+        crc.reset();
+        crc.update(type);
+        crc.update(scratch, BODY, RECORD_SIZE - BODY);
+        b.putInt(at + CRC, (int) crc.getValue());
+        b.put(at + TYPE, type);
+        if (syncWrites) b.force(at, RECORD_SIZE);
+
+        seq++;
+        end++;
+        return r;
+    }
+
+    private WorkoutSession read(int r) {
+        ByteBuffer b = segment(r);
+        int at = offset(r);
+        WorkoutSession s = new WorkoutSession();
+        s.id = b.getInt(at + ID);
+        s.date = LocalDate.ofEpochDay(b.getInt(at + DAY)).toString();
+        s.sets = b.getInt(at + SETS);
+        s.reps = b.getInt(at + REPS);
+        s.durationMin = b.getInt(at + DURATION);
+        s.rpe = b.getInt(at + RPE);
+        s.weightLbs = b.getDouble(at + WEIGHT);
+        s.exerciseName = getText(b, at + EXERCISE);
+        s.muscleGroup = getText(b, at + MUSCLE);
+        s.notes = getText(b, at + NOTES);
+        return s;
+    }
+
+    private int checksum(ByteBuffer b, int at) {
+        b.get(at + BODY, scratch, BODY, RECORD_SIZE - BODY);
+        crc.reset();
+        crc.update(b.get(at + TYPE));
+        crc.update(scratch, BODY, RECORD_SIZE - BODY);
+        return (int) crc.getValue();
+    }
+
+    // length byte (0 = null, n + 1 = n bytes) then the UTF-8 bytes
+    private static void putText(ByteBuffer rec, int at, int size, String text, String label) {
+        if (text == null) return;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > size - 1)
+            throw new IllegalArgumentException(label + " is too long (max " + (size - 1) + " bytes).");
+        rec.put(at, (byte) (bytes.length + 1));
+        rec.put(at + 1, bytes);
+    }
+
+    private static String getText(ByteBuffer b, int at) {
+        int len = (b.get(at) & 0xFF) - 1;
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        b.get(at + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean textEquals(ByteBuffer b, int at, byte[] text) {
+        if ((b.get(at) & 0xFF) != text.length + 1) return false;
+        for (int i = 0; i < text.length; i++) {
+            if (b.get(at + 1 + i) != text[i]) return false;
+        }
+        return true;
+    }
+
+    private MappedByteBuffer segment(int r) {
+        return segments.get(r / SEGMENT_RECORDS);
+    }
+
+    private static int offset(int r) {
+        return (r % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    // mapping past the end of the file grows it (the new part reads as zeros)
+    private void mapSegment(int i) throws IOException {
+        long bytes = (long) SEGMENT_RECORDS * RECORD_SIZE;
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, i * bytes, bytes));
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+
+    private static Path compactPath(Path p) {
+        return p.resolveSibling(p.getFileName() + ".compact");
+    }
+
+    // Windows cannot replace a file that is still mapped, and Java only unmaps on GC,
+    // so release the mappings right away when the JDK allows it
+    private void unmapAll() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Method clean = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Object unsafe = f.get(null);
+            for (MappedByteBuffer m : segments) clean.invoke(unsafe, m);
+        } catch (ReflectiveOperationException | RuntimeException ignore) {
+            // left for the garbage collector
+        }
+        segments.clear();
+    }
+}
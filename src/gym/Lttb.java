@@ -0,0 +1,75 @@
+package gym;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling: picks the points of a
+ * line that keep its shape, so a few thousand points can be drawn as a
+ * few hundred without losing peaks and dips (a plain "every n-th point"
+ * misses most of them).
+ *
+ * The first and last points are kept. The rest are split into equal
+ * buckets, and from each bucket the point that makes the biggest
+ * triangle with the point kept before it and the average of the next
+ * bucket is kept. One pass, O(n).
+ */
+public final class Lttb {
+
+    private Lttb() {}
+
+    /**
+     * @param x         x values, ascending
+     * @param y         y values
+     * @param from      first index to use
+     * @param to        one past the last index to use
+     * @param threshold number of points wanted (at least 3)
+     * @return indexes of the points to keep, ascending; every index when
+     *         there are no more than threshold points
+     */
+    public static int[] downsample(double[] x, double[] y, int from, int to, int threshold) {
+        int n = to - from;
+        if (n <= threshold || threshold < 3) {
+            int[] all = new int[Math.max(0, n)];
+            for (int i = 0; i < all.length; i++) all[i] = from + i;
+            return all;
+        }
+
+        int[] out = new int[threshold];
+        double bucket = (double) (n - 2) / (threshold - 2);
+        int a = from;
+        out[0] = a;
+        for (int b = 0; b < threshold - 2; b++) {
+            // average of the next bucket (the last point for the last bucket)
+            int nextStart = from + 1 + (int) ((b + 1) * bucket);
+            int nextEnd = Math.min(from + 1 + (int) ((b + 2) * bucket), to);
+            if (b == threshold - 3) {
+                nextStart = to - 1;
+                nextEnd = to;
+            }
+            double avgX = 0, avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            int count = nextEnd - nextStart;
+            avgX /= count;
+            avgY /= count;
+
+            // the point of this bucket with the biggest triangle
+            int start = from + 1 + (int) (b * bucket);
+            int end = from + 1 + (int) ((b + 1) * bucket);
+            double ax = x[a], ay = y[a];
+            double bestArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            out[b + 1] = best;
+            a = best;
+        }
+        out[threshold - 1] = to - 1;
+        return out;
+    }
+}
@@ -6,9 +6,18 @@ package gym;
 // This handles the program window, input fields, buttons, and table display.
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.prefs.Preferences;
 
 /**
  * Main GUI class that lets the user work with workout sessions.
@@ -17,16 +26,38 @@ import java.util.ArrayList;
  */
 public class MainGUI extends JFrame {
 
-    private final SessionService service = new SessionService();
+    private static final long serialVersionUID = 1L;
 
-    // column setup for the table
-    private final String[] cols = {"ID","Date","Exercise","Muscle","Sets","Reps","Weight","Duration","RPE","Notes"};
-    private final DefaultTableModel model = new DefaultTableModel(cols, 0);
+    // the last file that was opened, reopened at the next start
+    private static final Preferences PREFS = Preferences.userNodeForPackage(MainGUI.class);
+    private static final String LAST_DB = "lastDb";
+
+    // the two storage backends: SQLite for .db files, the append-only log for .wlog files
+    private final SessionService sqlStore = new SessionService();
+    private final LogStore logStore = new LogStore();
+
+    // several .db files at once, typed as "a.db;b.db"
+    private final MultiSessionService multiStore = new MultiSessionService();
+
+    // all database calls go through the async service so the window never freezes
+    private final AsyncSessionService service = new AsyncSessionService(sqlStore);
+
+    // personal records per exercise, so a new PR can be shown right when it is added
+    private final PrEngine prEngine = new PrEngine();
+
+    // table model that loads rows page by page while scrolling
+    private final PagedTableModel model = new PagedTableModel(service);
     private final JTable table = new JTable(model);
 
     // input fields
     private final JTextField idTxt = new JTextField();
     private final JLabel     idStatus = new JLabel(" ");
+    // the selected row's page was still loading when it was clicked
+    private boolean fillWhenLoaded;
+
+    // the row the form was loaded from and its version then (0 = not known yet)
+    private int formId = -1;
+    private long formVersion;
     private final JTextField dateTxt = new JTextField();
     private final JTextField exTxt = new JTextField();
     private final JTextField musTxt = new JTextField();
@@ -37,9 +68,31 @@ public class MainGUI extends JFrame {
     private final JTextField rpeTxt = new JTextField();
     private final JTextField notesTxt = new JTextField();
 
+    // search bar above the table: words, exercises, muscles, date, RPE and weight ranges, sort order
+    private final JTextField searchTxt = new JTextField();
+    private final JTextField exercisesTxt = new JTextField(14);
+    private final JTextField musclesTxt = new JTextField(10);
+    private final JTextField fromTxt = new JTextField(8);
+    private final JTextField toTxt = new JTextField(8);
+    private final JTextField minRpeTxt = new JTextField(2);
+    private final JTextField maxRpeTxt = new JTextField(2);
+    private final JTextField minWtTxt = new JTextField(4);
+    private final JTextField maxWtTxt = new JTextField(4);
+    private final JComboBox<SessionQuery.Sort> sortBox = new JComboBox<>(SessionQuery.Sort.values());
+    private final JCheckBox descBox = new JCheckBox("Desc");
+    private final JLabel searchStatus = new JLabel(" ");
+    private final JTextField[] searchFields = {searchTxt, exercisesTxt, musclesTxt, fromTxt, toTxt,
+            minRpeTxt, maxRpeTxt, minWtTxt, maxWtTxt};
+
+    // runs the search once typing has paused, not on every key
+    private final Timer searchTimer = new Timer(150, e -> runSearch());
+
     // DB connection field
     private final JTextField dbPathTxt = new JTextField();
 
+    // shown while database work is running
+    private final JProgressBar busyBar = new JProgressBar();
+
     // main buttons
     private final JButton addBtn    = new JButton("Add");
     private final JButton updateBtn = new JButton("Update");
@@ -48,6 +101,9 @@ public class MainGUI extends JFrame {
     private final JButton clearBtn  = new JButton("Clear");
     private final JButton exitBtn   = new JButton("Exit");
     private final JButton customBtn = new JButton("Custom: 1RM + Volume");
+    private final JButton importBtn = new JButton("Import CSV");
+    private final JButton trendBtn  = new JButton("Trend Chart");
+    private final JButton loadBtn   = new JButton("Load Report");
 
     /**
      * Builds the full GUI window.
@@ -78,10 +134,12 @@ public class MainGUI extends JFrame {
         form.add(row("Notes:", notesTxt));
         form.add(Box.createVerticalStrut(6));
 
-        JPanel btns = new JPanel(new GridLayout(3, 2, 8, 8));
+        JPanel btns = new JPanel(new GridLayout(5, 2, 8, 8));
         btns.add(addBtn);    btns.add(updateBtn);
         btns.add(deleteBtn); btns.add(showBtn);
-        btns.add(clearBtn);  btns.add(exitBtn);
+        btns.add(importBtn); btns.add(clearBtn);
+        btns.add(trendBtn);  btns.add(loadBtn);
+        btns.add(exitBtn);
 
         form.add(btns);
         form.add(Box.createVerticalStrut(6));
@@ -94,7 +152,35 @@ public class MainGUI extends JFrame {
         table.setDefaultEditor(Object.class, null);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
+        JPanel filters = new JPanel(new GridLayout(2, 1));
+        JPanel which = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        which.add(new JLabel("Exercises:")); which.add(exercisesTxt);
+        which.add(new JLabel("Muscles:"));   which.add(musclesTxt);
+        which.add(new JLabel("Sort:"));      which.add(sortBox); which.add(descBox);
+        JPanel ranges = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        ranges.add(new JLabel("From:"));   ranges.add(fromTxt);
+        ranges.add(new JLabel("To:"));     ranges.add(toTxt);
+        ranges.add(new JLabel("RPE:"));    ranges.add(minRpeTxt);
+        ranges.add(new JLabel("-"));       ranges.add(maxRpeTxt);
+        ranges.add(new JLabel("Weight:")); ranges.add(minWtTxt);
+        ranges.add(new JLabel("-"));       ranges.add(maxWtTxt);
+        ranges.add(searchStatus);
+        filters.add(which);
+        filters.add(ranges);
+        JPanel searchBar = new JPanel(new BorderLayout(8,4));
+        searchBar.add(new JLabel("Search:"), BorderLayout.WEST);
+        searchBar.add(searchTxt, BorderLayout.CENTER);
+        searchBar.add(filters, BorderLayout.SOUTH);
+        searchTxt.setToolTipText("Words from the exercise, muscle or notes; the start of a word is enough");
+        exercisesTxt.setToolTipText("Exact exercise names, comma separated");
+        musclesTxt.setToolTipText("Exact muscle groups, comma separated");
+        fromTxt.setToolTipText("yyyy-mm-dd");
+        toTxt.setToolTipText("yyyy-mm-dd");
+        minWtTxt.setToolTipText("lbs");
+        maxWtTxt.setToolTipText("lbs");
+
         JPanel right = new JPanel(new BorderLayout(8,8));
+        right.add(searchBar, BorderLayout.NORTH);
         right.add(new JScrollPane(table), BorderLayout.CENTER);
         right.add(customBtn, BorderLayout.SOUTH);
 
@@ -103,7 +189,10 @@ public class MainGUI extends JFrame {
         JButton connectBtn = new JButton("Connect DB");
         bottom.add(new JLabel("DB file path (.db):"), BorderLayout.WEST);
         bottom.add(dbPathTxt, BorderLayout.CENTER);
-        bottom.add(connectBtn, BorderLayout.EAST);
+        JPanel connectBox = new JPanel(new BorderLayout(8,0));
+        connectBox.add(busyBar, BorderLayout.WEST);
+        connectBox.add(connectBtn, BorderLayout.EAST);
+        bottom.add(connectBox, BorderLayout.EAST);
 
         add(form, BorderLayout.WEST);
         add(right, BorderLayout.CENTER);
@@ -119,8 +208,37 @@ public class MainGUI extends JFrame {
         // buttons disabled until DB is connected
         setDbButtonsEnabled(false);
 
+        // busy indicator
+        busyBar.setIndeterminate(true);
+        busyBar.setVisible(false);
+        busyBar.setPreferredSize(new Dimension(90, 16));
+        service.setBusyListener(busy -> {
+            busyBar.setVisible(busy);
+            busyBar.getParent().revalidate();
+        });
+
+        // writes (ours and, every half second, other programs') update just the rows they touch
+        sqlStore.addChangeListener(model::apply);
+        logStore.addChangeListener(model::apply);
+        multiStore.addChangeListener(model::apply);
+        sqlStore.setWatchInterval(500);
+        sqlStore.addChangeListener(c -> {
+            prEngine.apply(c);
+            if (c.type() == SessionChange.Type.RELOAD) loadPrs();
+        });
+
+        // timings for every DB call, visible in JConsole; -Dgym.metrics.log=file also logs them
+        ServiceMetrics metrics = sqlStore.getMetrics();
+        metrics.registerMBeans("gui");
+        logStore.getMetrics().registerMBeans("gui-log");
+        String metricsLog = System.getProperty("gym.metrics.log");
+        if (metricsLog != null) metrics.startLogDump(Path.of(metricsLog), 10, 10_000_000);
+
         // button listeners
-        exitBtn.addActionListener(e -> System.exit(0));
+        exitBtn.addActionListener(e -> {
+            service.close();
+            System.exit(0);
+        });
 
         clearBtn.addActionListener(e -> {
             idTxt.setText(""); dateTxt.setText(""); exTxt.setText(""); musTxt.setText("");
@@ -129,32 +247,91 @@ public class MainGUI extends JFrame {
             table.clearSelection();
         });
 
-        showBtn.addActionListener(e -> refreshTable());
+        showBtn.addActionListener(e -> {
+            clearSearch();
+            model.setFilter(null);
+        });
         connectBtn.addActionListener(e -> onConnectDb());
         addBtn.addActionListener(e -> onAdd());
         deleteBtn.addActionListener(e -> onDelete());
         updateBtn.addActionListener(e -> onUpdate());
         customBtn.addActionListener(e -> onCustom());
+        importBtn.addActionListener(e -> onImport());
+        trendBtn.addActionListener(e -> onTrend());
+        loadBtn.addActionListener(e -> onLoadReport());
+
+        // live search: every edit restarts the timer
+        searchTimer.setRepeats(false);
+        DocumentListener typed = new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { searchTimer.restart(); }
+        };
+        for (JTextField tf : searchFields) {
+            tf.getDocument().addDocumentListener(typed);
+        }
+        sortBox.addActionListener(e -> searchTimer.restart());
+        descBox.addActionListener(e -> searchTimer.restart());
 
         // fill input fields when clicking table rows
         table.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) fillFormFromSelection();
         });
+        // ...or when the page of a row clicked while loading comes in
+        model.addTableModelListener(e -> {
+            int row = table.getSelectedRow();
+            if (fillWhenLoaded && row >= e.getFirstRow() && row <= e.getLastRow()) fillFormFromSelection();
+        });
+
+        reopenLastDb();
+    }
+
+    /**
+     * Opens the file from the last run, if it still exists. For a .db
+     * file its saved copy (see StartupSnapshot) is shown right away,
+     * while the database itself is opened in the background.
+     */
+    private void reopenLastDb() {
+        String path = PREFS.get(LAST_DB, "");
+        if (path.isEmpty()) return;
+        for (String p : path.split(";")) {
+            if (!p.isBlank() && !Files.isRegularFile(Path.of(p.trim()))) return;
+        }
+        dbPathTxt.setText(path);
+        if (!MultiSessionService.isMultiPath(path) && !LogStore.isLogPath(path)) {
+            StartupSnapshot snap = StartupSnapshot.openIfPresent(StartupSnapshot.fileFor(path));
+            if (snap != null) {
+                model.showSnapshot(snap);
+                searchStatus.setText("Saved copy; opening the database...");
+            }
+        }
+        connect(path, false);
     }
 
     /**
      * Enables or disables the main DB buttons based on connection status.
+     * Import and the load report need SQLite, and the trend chart is not
+     * there for the log store, so those stay off for the other stores.
      */
     private void setDbButtonsEnabled(boolean on) {
+        WorkoutStore store = service.blocking();
         addBtn.setEnabled(on);
         updateBtn.setEnabled(on);
         deleteBtn.setEnabled(on);
         showBtn.setEnabled(on);
         customBtn.setEnabled(on);
+        importBtn.setEnabled(on && store == sqlStore);
+        trendBtn.setEnabled(on && store != logStore);
+        loadBtn.setEnabled(on && store == sqlStore);
+        for (JTextField tf : searchFields) tf.setEnabled(on);
+        sortBox.setEnabled(on);
+        descBox.setEnabled(on);
     }
 
     /**
-     * Connects to the SQLite file typed by the user.
+     * Connects to the file typed by the user: a .wlog path opens the
+     * append-only log store, several paths separated by ';' are opened
+     * together, and anything else is a SQLite database.
      */
     private void onConnectDb() {
         String path = dbPathTxt.getText().trim();
@@ -162,15 +339,27 @@ public class MainGUI extends JFrame {
             JOptionPane.showMessageDialog(this, "Enter a .db file path first.");
             return;
         }
+        connect(path, true);
+    }
 
-        try {
-            service.connect(path);
+    /**
+     * Opens a file in the background and shows its rows.
+     * @param path     one or more files (see onConnectDb())
+     * @param announce true to say so in a message box when done
+     */
+    private void connect(String path, boolean announce) {
+        if (MultiSessionService.isMultiPath(path)) service.use(multiStore);
+        else service.use(LogStore.isLogPath(path) ? logStore : sqlStore);
+        whenDone(service.connect(path), rows -> {
+            // per-file timings exist once the files are open
+            if (service.blocking() == multiStore) multiStore.getMetrics().registerMBeans("gui-multi");
             setDbButtonsEnabled(true);
-            refreshTable();
-            JOptionPane.showMessageDialog(this, "Connected to database.");
-        } catch (IllegalArgumentException ex) {
-            JOptionPane.showMessageDialog(this, ex.getMessage(), "DB problem", JOptionPane.WARNING_MESSAGE);
-        }
+            model.reset(rows);
+            runSearch();
+            loadPrs();
+            PREFS.put(LAST_DB, path);
+            if (announce) JOptionPane.showMessageDialog(this, "Connected to database.");
+        });
     }
 
     /**
@@ -186,11 +375,6 @@ public class MainGUI extends JFrame {
             return;
         }
 
-        if (service.existsId(id)) {
-            JOptionPane.showMessageDialog(this, "That ID is already used. Pick a different ID.");
-            return;
-        }
-
         try {
             s = readFormUsingId(id);
         } catch (IllegalArgumentException ex) {
@@ -198,13 +382,23 @@ public class MainGUI extends JFrame {
             return;
         }
 
-        boolean ok = service.add(s);
-        if (!ok) {
-            JOptionPane.showMessageDialog(this, "Add failed. Check the values.");
-            return;
-        }
-        refreshTable();
-        JOptionPane.showMessageDialog(this, "Added.");
+        whenDone(service.existsId(id), exists -> {
+            if (exists) {
+                JOptionPane.showMessageDialog(this, "That ID is already used. Pick a different ID.");
+                return;
+            }
+            // checked against the bests as of its date, before it is stored
+            List<PrEngine.Pr> prs = prEngine.check(SessionRecord.of(s));
+            whenDone(service.add(s), ok -> {
+                if (!ok) {
+                    JOptionPane.showMessageDialog(this, "Add failed. Check the values.");
+                    return;
+                }
+                StringBuilder msg = new StringBuilder("Added.");
+                for (PrEngine.Pr pr : prs) msg.append("\nNew PR! ").append(pr);
+                JOptionPane.showMessageDialog(this, msg.toString());
+            });
+        });
     }
 
     /**
@@ -216,17 +410,35 @@ public class MainGUI extends JFrame {
             JOptionPane.showMessageDialog(this, "Select a row to delete.");
             return;
         }
-        int id = (int) model.getValueAt(row, 0);
+        if (!rowLoaded(row)) return;
+        int id = model.getRow(row).id();
 
         int ok = JOptionPane.showConfirmDialog(this, "Delete record " + id + "?", "Confirm", JOptionPane.YES_NO_OPTION);
         if (ok != JOptionPane.YES_OPTION) return;
 
-        if (!service.deleteById(id)) {
-            JOptionPane.showMessageDialog(this, "Delete failed.");
-            return;
-        }
-        refreshTable();
-        JOptionPane.showMessageDialog(this, "Deleted.");
+        deleteAt(id, id == formId ? formVersion : 0);
+    }
+
+    // deletes if the row still has this version; explains a conflict
+    private void deleteAt(int id, long version) {
+        whenDone(service.deleteById(id, version), deleted -> {
+            if (deleted) {
+                JOptionPane.showMessageDialog(this, "Deleted.");
+                return;
+            }
+            whenDone(service.findById(id), now -> {
+                if (now == null) {
+                    JOptionPane.showMessageDialog(this, "Record " + id + " was already deleted (maybe on another computer).");
+                } else if (version > 0 && now.version != version) {
+                    int choice = JOptionPane.showConfirmDialog(this,
+                            "Record " + id + " was changed on another computer since you loaded it.\nDelete it anyway?",
+                            "Changed elsewhere", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                    if (choice == JOptionPane.YES_OPTION) deleteAt(id, now.version);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Delete failed.");
+                }
+            });
+        });
     }
 
     /**
@@ -247,11 +459,6 @@ public class MainGUI extends JFrame {
             return;
         }
 
-        if (!service.existsId(id)) {
-            JOptionPane.showMessageDialog(this, "That ID does not exist.");
-            return;
-        }
-
         WorkoutSession s;
         try {
             s = readFormUsingId(id);
@@ -260,13 +467,47 @@ public class MainGUI extends JFrame {
             return;
         }
 
-        boolean ok = service.updateSession(s);
-        if (!ok) {
-            JOptionPane.showMessageDialog(this, "Update failed. Check the values.");
-            return;
-        }
-        refreshTable();
-        JOptionPane.showMessageDialog(this, "Updated.");
+        // only check the version of the row the form was loaded from
+        s.version = id == formId ? formVersion : 0;
+        whenDone(service.existsId(id), exists -> {
+            if (!exists) {
+                JOptionPane.showMessageDialog(this, "That ID does not exist.");
+                return;
+            }
+            updateAt(s);
+        });
+    }
+
+    // saves s if its row still has s.version; explains a conflict
+    private void updateAt(WorkoutSession s) {
+        long version = s.version;
+        whenDone(service.updateSession(s), ok -> {
+            if (ok) {
+                if (s.id == formId) formVersion = s.version;
+                JOptionPane.showMessageDialog(this, "Updated.");
+                return;
+            }
+            whenDone(service.findById(s.id), now -> {
+                if (now == null) {
+                    JOptionPane.showMessageDialog(this, "Record " + s.id + " was deleted on another computer.");
+                } else if (version > 0 && now.version != version) {
+                    Object[] options = {"Overwrite", "Load theirs", "Cancel"};
+                    int choice = JOptionPane.showOptionDialog(this,
+                            "Record " + s.id + " was changed on another computer since you loaded it.\n"
+                                    + "Overwrite it with your values, or load their version?",
+                            "Changed elsewhere", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE,
+                            null, options, options[2]);
+                    if (choice == 0) {
+                        s.version = now.version;
+                        updateAt(s);
+                    } else if (choice == 1) {
+                        fillForm(now);
+                    }
+                } else {
+                    JOptionPane.showMessageDialog(this, "Update failed. Check the values.");
+                }
+            });
+        });
     }
 
     /**
@@ -278,6 +519,7 @@ public class MainGUI extends JFrame {
             JOptionPane.showMessageDialog(this, "Select a row in the table first.");
             return;
         }
+        if (!rowLoaded(row)) return;
 
         String date = String.valueOf(model.getValueAt(row, 1));
         String exercise = String.valueOf(model.getValueAt(row, 2));
@@ -286,13 +528,186 @@ public class MainGUI extends JFrame {
         double weight = toDoubleSafe(model.getValueAt(row, 6));
 
         double volume = sets * reps * weight;
-        double best = service.bestE1RMInLast7Days(exercise, date);
+        whenDone(service.rollingStats(exercise, date, 7, 28, 90), windows -> {
+            StringBuilder msg = new StringBuilder("Exercise: " + exercise +
+                    "\nDate used: " + date +
+                    "\nVolume (sets×reps×weight): " + round1(volume) + " lbs" +
+                    "\nBest est. 1RM (last 7 days): " + round1(windows[0].bestE1RM) + " lbs");
+            for (RollingStats w : windows) {
+                msg.append("\nLast ").append(w.days).append(" days: best 1RM ").append(round1(w.bestE1RM))
+                        .append(" lbs, volume ").append(round1(w.volume)).append(" lbs, ")
+                        .append(w.sets).append(" sets");
+            }
+            List<PrEngine.Pr> timeline = prEngine.e1rmTimeline(exercise);
+            if (!timeline.isEmpty()) {
+                PrEngine.Pr top = timeline.get(timeline.size() - 1);
+                msg.append("\nAll-time best est. 1RM: ").append(round1(top.value())).append(" lbs on ")
+                        .append(top.date()).append(" (").append(timeline.size()).append(" PRs so far)");
+            }
+            JOptionPane.showMessageDialog(this, msg.toString());
+        });
+    }
 
-        String msg = "Exercise: " + exercise +
-                "\nDate used: " + date +
-                "\nVolume (sets×reps×weight): " + round1(volume) + " lbs" +
-                "\nBest est. 1RM (last 7 days): " + round1(best) + " lbs";
-        JOptionPane.showMessageDialog(this, msg);
+    /**
+     * Opens a chart of e1RM and weekly volume over the whole history of
+     * one exercise (the selected row's, if any). Picking another
+     * exercise in the box loads its history in the background.
+     */
+    private void onTrend() {
+        int row = table.getSelectedRow();
+        // a row whose page is still loading counts as no selection
+        String selected = row == -1 || model.getRow(row) == null ? null : String.valueOf(model.getValueAt(row, 2));
+
+        JDialog dialog = new JDialog(this, "Trend Chart", false);
+        TrendChartPanel chart = new TrendChartPanel();
+        JComboBox<String> exercises = new JComboBox<>();
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 4));
+        top.add(new JLabel("Exercise:"));
+        top.add(exercises);
+        top.add(new JLabel("Wheel to zoom, drag to move, double-click to see everything."));
+        dialog.setLayout(new BorderLayout());
+        dialog.add(top, BorderLayout.NORTH);
+        dialog.add(chart, BorderLayout.CENTER);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+
+        exercises.addActionListener(e -> {
+            Object ex = exercises.getSelectedItem();
+            if (ex == null) return;
+            chart.setMessage("Loading " + ex + "...");
+            whenDone(service.trend(ex.toString()), chart::setSeries);
+        });
+        chart.setMessage("Loading...");
+        whenDone(service.trendExercises(), names -> {
+            for (String n : names) exercises.addItem(n);
+            if (selected != null && names.contains(selected)) exercises.setSelectedItem(selected);
+            if (names.isEmpty()) chart.setMessage("No sessions yet.");
+        });
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Opens the training-load report: per week or month and muscle group,
+     * sessions, sets, volume, average RPE, minutes, load (minutes × RPE)
+     * and the acute:chronic ratio, with a button to save it as CSV.
+     */
+    private void onLoadReport() {
+        JDialog dialog = new JDialog(this, "Training Load", false);
+        JComboBox<TrainingLoadReport.Period> period = new JComboBox<>(TrainingLoadReport.Period.values());
+        JButton export = new JButton("Export CSV...");
+        JLabel status = new JLabel("Loading...");
+        String[] cols = {"Period", "Muscle", "Sessions", "Sets", "Volume", "Avg RPE", "Minutes", "Load", "ACWR"};
+        DefaultTableModel rows = new DefaultTableModel(cols, 0);
+        JTable grid = new JTable(rows);
+        grid.setDefaultEditor(Object.class, null);
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 4));
+        top.add(new JLabel("Per:"));
+        top.add(period);
+        top.add(export);
+        top.add(status);
+        dialog.setLayout(new BorderLayout());
+        dialog.add(top, BorderLayout.NORTH);
+        dialog.add(new JScrollPane(grid), BorderLayout.CENTER);
+        dialog.setSize(820, 520);
+        dialog.setLocationRelativeTo(this);
+
+        TrainingLoadReport[] shown = new TrainingLoadReport[1];
+        export.setEnabled(false);
+        Runnable load = () -> {
+            long t0 = System.nanoTime();
+            status.setText("Loading...");
+            export.setEnabled(false);
+            whenDone(service.trainingLoad((TrainingLoadReport.Period) period.getSelectedItem()), report -> {
+                shown[0] = report;
+                rows.setRowCount(0);
+                for (TrainingLoadReport.Row r : report.rows) {
+                    rows.addRow(new Object[]{r.date(), r.muscle(), r.sessions(), r.sets(), Math.round(r.volume()),
+                            String.format("%.2f", r.avgRpe()), r.minutes(), Math.round(r.load()),
+                            r.acwr() == 0 ? "" : String.format("%.2f", r.acwr())});
+                }
+                status.setText(report.sessions + " sessions (" + (System.nanoTime() - t0) / 1_000_000 + " ms)");
+                export.setEnabled(!report.rows.isEmpty());
+            });
+        };
+        period.addActionListener(e -> load.run());
+        export.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser(new File("data"));
+            chooser.setSelectedFile(new File("training-load-" + shown[0].period.name().toLowerCase() + ".csv"));
+            if (chooser.showSaveDialog(dialog) != JFileChooser.APPROVE_OPTION) return;
+            try {
+                shown[0].writeCsv(chooser.getSelectedFile().toPath());
+                status.setText("Saved " + chooser.getSelectedFile().getName());
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(dialog, "Could not save: " + ex.getMessage(), "Export", JOptionPane.WARNING_MESSAGE);
+            }
+        });
+        load.run();
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Recomputes the personal records in the background (SQLite only;
+     * other stores get no PR messages). The rows come from the saved
+     * copy, which is brought up to date first, so the next start shows
+     * the current rows; the full table is only read if that fails.
+     */
+    private void loadPrs() {
+        if (service.blocking() != sqlStore) {
+            prEngine.clear();
+            return;
+        }
+        service.submitLatest("prs", () -> {
+            prEngine.load(() -> {
+                StartupSnapshot snap = StartupSnapshot.sync(sqlStore);
+                return snap != null ? snap.toColumnar() : sqlStore.loadSnapshot();
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Bulk-loads a CSV file picked by the user.
+     * Runs in the background with a progress bar; skipped rows are
+     * written to a "rejects" file next to the CSV.
+     */
+    private void onImport() {
+        JFileChooser chooser = new JFileChooser(new File("data"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        Path file = chooser.getSelectedFile().toPath();
+        Path rejects = file.resolveSibling(file.getFileName() + ".rejects.csv");
+
+        ProgressMonitor monitor = new ProgressMonitor(this, "Importing " + file.getFileName(), "", 0, 1000);
+        monitor.setMillisToDecideToPopup(200);
+        importBtn.setEnabled(false);
+
+        new SwingWorker<CsvImporter.Result, Void>() {
+            @Override
+            protected CsvImporter.Result doInBackground() throws Exception {
+                return service.sqlite().importCsv(file, rejects, (rows, bytes, total) -> SwingUtilities.invokeLater(() -> {
+                    monitor.setProgress(total == 0 ? 1000 : (int) (bytes * 1000 / total));
+                    monitor.setNote(rows + " rows read");
+                }));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                importBtn.setEnabled(service.blocking() == sqlStore);
+                try {
+                    CsvImporter.Result r = get();
+                    refreshTable();
+                    StringBuilder msg = new StringBuilder(r.toString());
+                    for (int i = 0; i < Math.min(10, r.rejects.size()); i++)
+                        msg.append("\n  ").append(r.rejects.get(i));
+                    if (r.rejected > 0) msg.append("\nAll skipped rows: ").append(rejects);
+                    JOptionPane.showMessageDialog(MainGUI.this, msg.toString());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                    JOptionPane.showMessageDialog(MainGUI.this, "Import failed: " + cause.getMessage(),
+                            "Problem", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
     /**
@@ -300,11 +715,19 @@ public class MainGUI extends JFrame {
      */
     private void fillFormFromSelection() {
         int row = table.getSelectedRow();
+        fillWhenLoaded = false;
         if (row == -1) {
             idStatus.setText(" ");
             return;
         }
-        idTxt.setText(String.valueOf(model.getValueAt(row, 0)));
+        SessionRecord r = model.getRow(row);
+        if (r == null) {
+            // the page is on its way; the model listener calls this again
+            fillWhenLoaded = true;
+            idStatus.setText("loading row...");
+            return;
+        }
+        idTxt.setText(String.valueOf(r.id()));
         dateTxt.setText(String.valueOf(model.getValueAt(row, 1)));
         exTxt.setText(String.valueOf(model.getValueAt(row, 2)));
         musTxt.setText(String.valueOf(model.getValueAt(row, 3)));
@@ -316,59 +739,128 @@ public class MainGUI extends JFrame {
         Object notes = model.getValueAt(row, 9);
         notesTxt.setText(notes == null ? "" : String.valueOf(notes));
         idStatus.setText("row selected");
+
+        // the table page may be older than the row; load the row itself for its version
+        int id = r.id();
+        formId = id;
+        formVersion = 0;
+        whenDone(service.findById(id), s -> {
+            if (s != null && formId == id) fillForm(s);
+        });
+    }
+
+    /**
+     * Loads one record into the input fields and remembers its version,
+     * so Update and Delete can tell if someone else changed it meanwhile.
+     */
+    private void fillForm(WorkoutSession s) {
+        idTxt.setText(String.valueOf(s.id));
+        dateTxt.setText(s.date);
+        exTxt.setText(s.exerciseName);
+        musTxt.setText(s.muscleGroup);
+        setsTxt.setText(String.valueOf(s.sets));
+        repsTxt.setText(String.valueOf(s.reps));
+        wtTxt.setText(String.valueOf(s.weightLbs));
+        durTxt.setText(String.valueOf(s.durationMin));
+        rpeTxt.setText(String.valueOf(s.rpe));
+        notesTxt.setText(s.notes == null ? "" : s.notes);
+        formId = s.id;
+        formVersion = s.version;
+    }
+
+    /**
+     * The table only holds the pages it has loaded; a row on another page
+     * is empty until its page comes in (asking for it starts the load).
+     * @return true if the row can be read, false (after saying so) if not
+     */
+    private boolean rowLoaded(int row) {
+        if (model.getRow(row) != null) return true;
+        JOptionPane.showMessageDialog(this, "That row is still loading. Try again in a moment.");
+        return false;
     }
 
     /**
      * Reads all form values and builds a WorkoutSession object.
      */
     private WorkoutSession readFormUsingId(int id) {
-        WorkoutSession s = new WorkoutSession();
-        s.id = id;
-
-        String d = dateTxt.getText().trim();
-        if (!d.matches("\\d{4}-\\d{2}-\\d{2}"))
-            throw new IllegalArgumentException("Please enter a date (e.g., 2025-10-27).");
-        s.date = d;
-
-        s.exerciseName = mustText(exTxt.getText(), "Exercise");
-        s.muscleGroup  = mustText(musTxt.getText(), "Muscle");
-        s.sets         = parseIntNice(setsTxt.getText(), "Sets");
-        s.reps         = parseIntNice(repsTxt.getText(), "Reps");
-        s.weightLbs    = parseDoubleNice(wtTxt.getText(), "Weight");
-        s.durationMin  = parseIntNice(durTxt.getText(), "Duration");
-        s.rpe          = parseIntNice(rpeTxt.getText(), "RPE");
-        if (s.rpe < 1 || s.rpe > 10) throw new IllegalArgumentException("RPE must be between 1 and 10.");
-        s.notes        = notesTxt.getText().trim();
-        return s;
+        return SessionValidator.build(id, dateTxt.getText(), exTxt.getText(), musTxt.getText(),
+                setsTxt.getText(), repsTxt.getText(), wtTxt.getText(),
+                durTxt.getText(), rpeTxt.getText(), notesTxt.getText());
     }
 
     /**
-     * Refreshes the table with the latest data from the DB.
+     * Shows the rows matching the search bar, or every row when it is
+     * empty and sorted by id. The filters run in the database.
+     * Typos in the dates, RPE or weights are shown next to the fields.
      */
-    private void refreshTable() {
-        ArrayList<WorkoutSession> rows = service.listAll();
-        model.setRowCount(0);
-        for (WorkoutSession s : rows) {
-            model.addRow(new Object[]{
-                    s.id, s.date, s.exerciseName, s.muscleGroup,
-                    s.sets, s.reps, s.weightLbs, s.durationMin, s.rpe, s.notes
-            });
+    private void runSearch() {
+        SessionQuery q;
+        try {
+            q = new SessionQuery().text(searchTxt.getText())
+                    .exercises(names(exercisesTxt.getText()))
+                    .muscles(names(musclesTxt.getText()))
+                    .dateRange(fromTxt.getText().trim(), toTxt.getText().trim())
+                    .rpeRange(optionalInt(minRpeTxt.getText(), "RPE"), optionalInt(maxRpeTxt.getText(), "RPE"))
+                    .weightRange(optionalDouble(minWtTxt.getText(), "Weight"), optionalDouble(maxWtTxt.getText(), "Weight"))
+                    .orderBy((SessionQuery.Sort) sortBox.getSelectedItem(), descBox.isSelected());
+        } catch (IllegalArgumentException ex) {
+            searchStatus.setText(ex.getMessage());
+            return;
         }
+        if (q.isEmpty() && q.isDefaultOrder()) {
+            searchStatus.setText(" ");
+            if (model.isFiltered()) model.setFilter(null);
+            return;
+        }
+        long t0 = System.nanoTime();
+        whenDone(model.setFilter(q), n -> {
+            String found = n >= PagedTableModel.MAX_MATCHES ? "first " + n + " matches" : n + " matches";
+            searchStatus.setText(found + " (" + (System.nanoTime() - t0) / 1_000_000 + " ms)");
+        });
+    }
+
+    /** Empties the search bar without running a search. */
+    private void clearSearch() {
+        for (JTextField tf : searchFields) tf.setText("");
+        sortBox.setSelectedItem(SessionQuery.Sort.ID);
+        descBox.setSelected(false);
+        searchTimer.stop();
+        searchStatus.setText(" ");
+    }
+
+    /**
+     * Refreshes the table with the latest data from the DB.
+     * Only the row count is read here; rows are loaded as they are shown.
+     * A newer refresh cancels one that has not finished yet.
+     * @return finishes with the new row count
+     */
+    private CompletableFuture<Integer> refreshTable() {
+        return model.reload();
+    }
+
+    /**
+     * Runs code on the Swing thread when background work finishes,
+     * or shows the error if it failed.
+     */
+    private <T> void whenDone(CompletableFuture<T> f, Consumer<T> ok) {
+        AsyncSessionService.onEdt(f, ok, err ->
+                JOptionPane.showMessageDialog(this, String.valueOf(err.getMessage()), "DB problem", JOptionPane.WARNING_MESSAGE));
     }
 
     // basic parsing helpers
-    private int parseIntNice(String s, String label) {
-        try { return Integer.parseInt(s.trim()); }
-        catch (Exception e) { throw new IllegalArgumentException(label + " must be a whole number."); }
-    }
-    private double parseDoubleNice(String s, String label) {
-        try { return Double.parseDouble(s.trim()); }
-        catch (Exception e) { throw new IllegalArgumentException(label + " must be a number."); }
-    }
-    private String mustText(String s, String label) {
-        String t = s.trim();
-        if (t.isEmpty()) throw new IllegalArgumentException("Please enter " + label.toLowerCase() + ".");
-        return t;
+    private Integer optionalInt(String s, String label) {
+        return s.isBlank() ? null : SessionValidator.parseIntNice(s, label);
+    }
+    private Double optionalDouble(String s, String label) {
+        return s.isBlank() ? null : SessionValidator.parseDoubleNice(s, label);
+    }
+    // "Bench Press, Squat" -> [Bench Press, Squat]
+    private List<String> names(String s) {
+        List<String> out = new ArrayList<>();
+        for (String n : s.split(",")) {
+            if (!n.isBlank()) out.add(n.trim());
+        }
+        return out;
     }
     private int toIntSafe(Object o) {
         try { return Integer.parseInt(String.valueOf(o)); } catch (Exception e) { return 0; }
@@ -0,0 +1,408 @@
+package gym;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Several database files (one per coach or location) used as one.
+ *
+ * Each file gets its own SessionService. Every read is sent to all of
+ * them at once on a fork-join pool and the answers are combined: lists
+ * are merged in id order (each file already returns its rows sorted, so
+ * this is a k-way merge), counts are added up and bests take the max.
+ * The time each file took is kept per operation in getMetrics(), under
+ * names like "listAfter[east.db]", so a slow location shows up.
+ *
+ * New sessions go to the first file. Updates and deletes go to the file(s)
+ * that have the id. Ids are expected to be unique across the files.
+ */
+public class MultiSessionService implements WorkoutStore {
+
+    /** Separates the file paths in a multi-file path, e.g. "east.db;west.db". */
+    public static final String SEPARATOR = ";";
+
+    private final ForkJoinPool pool;
+
+    /** The open files, in the order they were given. */
+    private volatile List<Source> sources = List.of();
+
+    private final List<Consumer<SessionChange>> listeners = new CopyOnWriteArrayList<>();
+    private final ServiceMetrics metrics = new ServiceMetrics();
+
+    /** Uses one worker per CPU core. */
+    public MultiSessionService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism max files queried at the same time
+     */
+    public MultiSessionService(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @param path the text typed as database path
+     * @return true if it names more than one file
+     */
+    public static boolean isMultiPath(String path) {
+        return path.contains(SEPARATOR);
+    }
+
+    /** One attached file. */
+    private static class Source {
+        final String path;
+        final String name;
+        final SessionService service = new SessionService();
+
+        Source(String path) {
+            this.path = path;
+            Path p = Path.of(path);
+            name = p.getFileName() == null ? path : p.getFileName().toString();
+        }
+    }
+
+    /**
+     * Opens every file in the path (separated by ';') in parallel.
+     * @param path for example "east.db;west.db"
+     * @throws IllegalArgumentException if a file cannot be opened (none are kept open then)
+     */
+    @Override
+    public void connect(String path) {
+        close();
+        List<Source> list = new ArrayList<>();
+        for (String p : path.split(SEPARATOR)) {
+            if (!p.isBlank()) list.add(new Source(p.trim()));
+        }
+        if (list.isEmpty()) throw new IllegalArgumentException("Database path is empty.");
+        for (Source s : list) {
+            for (Consumer<SessionChange> l : listeners) s.service.addChangeListener(l);
+        }
+        try {
+            fanOut(list, "connect", s -> {
+                s.service.connect(s.path);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            for (Source s : list) s.service.close();
+            throw e;
+        }
+        sources = List.copyOf(list);
+    }
+
+    @Override
+    public void close() {
+        for (Source s : sources) s.service.close();
+        sources = List.of();
+    }
+
+    /** @return names of the attached files, in order */
+    public List<String> sourceNames() {
+        List<String> names = new ArrayList<>();
+        for (Source s : sources) names.add(s.name);
+        return names;
+    }
+
+    @Override
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void addChangeListener(Consumer<SessionChange> listener) {
+        listeners.add(listener);
+        for (Source s : sources) s.service.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<SessionChange> listener) {
+        listeners.remove(listener);
+        for (Source s : sources) s.service.removeChangeListener(listener);
+    }
+
+    /**
+     * Turns on watching every file for writes by other programs.
+     * @param ms poll interval (0 to stop)
+     * @see SessionService#setWatchInterval(long)
+     */
+    public void setWatchInterval(long ms) {
+        for (Source s : sources) s.service.setWatchInterval(ms);
+    }
+
+    // ---- reads: ask every file, then combine ----
+
+    @Override
+    public ArrayList<WorkoutSession> listAll() {
+        return merge(fanOut("listAll", s -> s.service.listAll()), w -> w.id, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs a query on every file and merges the rows in id order.
+     * @param q what to read (the same query is used for every file)
+     * @return the matching rows from all files
+     * @throws SQLException if a file fails
+     */
+    public ArrayList<WorkoutSession> list(SessionQuery q) throws SQLException {
+        try {
+            return merge(fanOut("query", s -> {
+                ArrayList<WorkoutSession> rows = new ArrayList<>();
+                try {
+                    s.service.forEach(q, rows::add);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                return rows;
+            }), w -> w.id, Integer.MAX_VALUE);
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw e;
+        }
+    }
+
+    @Override
+    public int countAll() {
+        int total = 0;
+        for (int n : fanOut("countAll", s -> s.service.countAll())) total += n;
+        return total;
+    }
+
+    @Override
+    public int countBefore(int id) {
+        int total = 0;
+        for (int n : fanOut("countBefore", s -> s.service.countBefore(id))) total += n;
+        return total;
+    }
+
+    /** Each file returns its first `limit` rows after the id; the merge keeps the first `limit` overall. */
+    @Override
+    public ArrayList<WorkoutSession> listAfter(long afterId, int limit) {
+        return merge(fanOut("listAfter", s -> s.service.listAfter(afterId, limit)), w -> w.id, limit);
+    }
+
+    @Override
+    public ArrayList<SessionRecord> listRecordsAfter(long afterId, int limit) {
+        return merge(fanOut("listAfter", s -> s.service.listRecordsAfter(afterId, limit)), SessionRecord::id, limit);
+    }
+
+    /** Each file returns its first matches in the query's order; the merge keeps the first `limit` overall. */
+    @Override
+    public ArrayList<SessionRecord> search(SessionQuery q) {
+        int limit = q.getLimit() == 0 ? Integer.MAX_VALUE : q.getLimit();
+        return merge(fanOut("search", s -> s.service.search(q)), q.recordOrder(), limit);
+    }
+
+    /**
+     * Binary search on the id for the smallest id with `offset` smaller ids
+     * in all files together (each step is one id-only count per file).
+     */
+    @Override
+    public Integer idAtOffset(int offset) {
+        if (offset < 0 || offset >= countAll()) return null;
+        long lo = Integer.MIN_VALUE;
+        long hi = Integer.MAX_VALUE;
+        while (lo < hi) {
+            long mid = (lo + hi + 1) >> 1;
+            if (countBefore((int) mid) <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        return (int) lo;
+    }
+
+    @Override
+    public WorkoutSession findById(int id) {
+        for (WorkoutSession s : fanOut("findById", s -> s.service.findById(id))) {
+            if (s != null) return s;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean existsId(int id) {
+        for (boolean b : fanOut("existsId", s -> s.service.existsId(id))) {
+            if (b) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public double bestE1RMInLast7Days(String exercise, String date) {
+        double best = 0;
+        for (double b : fanOut("bestE1RMInLast7Days", s -> s.service.bestE1RMInLast7Days(exercise, date)))
+            best = Math.max(best, b);
+        return best;
+    }
+
+    /**
+     * Rolling totals over all files: best of the bests, sums of volume and sets.
+     * @see SessionService#rollingStats(String, String, int...)
+     */
+    public RollingStats[] rollingStats(String exercise, String date, int... windows) {
+        RollingStats[] out = new RollingStats[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            out[i] = new RollingStats();
+            out[i].days = windows[i];
+        }
+        for (RollingStats[] part : fanOut("rollingStats", s -> s.service.rollingStats(exercise, date, windows))) {
+            for (int i = 0; i < out.length; i++) {
+                out[i].bestE1RM = Math.max(out[i].bestE1RM, part[i].bestE1RM);
+                out[i].volume += part[i].volume;
+                out[i].sets += part[i].sets;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Trend over all files: best e1RM per day, volume summed per week.
+     * @see SessionService#trend(String)
+     */
+    public TrendSeries trend(String exercise) {
+        return TrendSeries.merge(exercise, fanOut("trend", s -> s.service.trend(exercise)));
+    }
+
+    /**
+     * @return exercise names with sessions in any file, sorted
+     * @see SessionService#trendExercises()
+     */
+    public List<String> trendExercises() {
+        TreeSet<String> names = new TreeSet<>();
+        for (List<String> part : fanOut("trendExercises", s -> s.service.trendExercises())) names.addAll(part);
+        return new ArrayList<>(names);
+    }
+
+    // ---- writes: routed to one file ----
+
+    /** Adds to the first file, unless the id is already used in any file. */
+    @Override
+    public boolean add(WorkoutSession s) {
+        if (existsId(s.id)) return false;
+        return first().service.add(s);
+    }
+
+    /** Updates the session in every file that has its id (false if none has). */
+    @Override
+    public boolean updateSession(WorkoutSession s) {
+        boolean found = false;
+        boolean ok = true;
+        for (Source src : sources) {
+            if (!src.service.existsId(s.id)) continue;
+            found = true;
+            ok &= src.service.updateSession(s);
+        }
+        return found && ok;
+    }
+
+    /** Deletes the id from every file that has it. */
+    @Override
+    public boolean deleteById(int id) {
+        return deleteById(id, 0);
+    }
+
+    /** Deletes the id from every file that has it, if the version matches there (false if none has). */
+    @Override
+    public boolean deleteById(int id, long version) {
+        boolean found = false;
+        boolean ok = true;
+        for (Source src : sources) {
+            if (!src.service.existsId(id)) continue;
+            found = true;
+            ok &= src.service.deleteById(id, version);
+        }
+        return found && ok;
+    }
+
+    private Source first() {
+        List<Source> list = sources;
+        if (list.isEmpty()) throw new IllegalStateException("No database is connected.");
+        return list.get(0);
+    }
+
+    // ---- helpers ----
+
+    private <T> List<T> fanOut(String op, Function<Source, T> call) {
+        return fanOut(sources, op, call);
+    }
+
+    // runs the call for every source on the pool and returns the answers in source order;
+    // waits for all of them even when one fails, so none is still running when the caller cleans up
+    private <T> List<T> fanOut(List<Source> list, String op, Function<Source, T> call) {
+        long t0 = System.nanoTime();
+        OpStats total = metrics.op(op);
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(list.size());
+        for (Source s : list) {
+            OpStats stats = metrics.op(op + "[" + s.name + "]");
+            tasks.add(pool.submit(() -> {
+                long t1 = System.nanoTime();
+                try {
+                    T result = call.apply(s);
+                    stats.success(t1, 0, 0);
+                    return result;
+                } catch (RuntimeException e) {
+                    stats.failure(t1, e);
+                    throw e;
+                }
+            }));
+        }
+        for (ForkJoinTask<T> t : tasks) t.quietlyJoin();
+        List<T> out = new ArrayList<>(list.size());
+        try {
+            for (ForkJoinTask<T> t : tasks) out.add(t.join());
+            total.success(t0, 0, 0);
+        } catch (RuntimeException e) {
+            total.failure(t0, e);
+            throw e;
+        }
+        return out;
+    }
+
+    /**
+     * Merges lists that are each sorted by id into one sorted list.
+     * @param lists the sorted lists
+     * @param id    gets the id of an element
+     * @param limit max elements to return
+     * @return the first `limit` elements of all lists, in id order
+     */
+    static <T> ArrayList<T> merge(List<? extends List<T>> lists, ToIntFunction<T> id, int limit) {
+        return merge(lists, Comparator.comparingInt(id), limit);
+    }
+
+    /**
+     * Merges lists that are each sorted by the same order into one sorted list.
+     * @param lists lists, each sorted by order
+     * @param order the order of every list
+     * @param limit max rows returned
+     * @return the first rows of all lists, in order
+     */
+    static <T> ArrayList<T> merge(List<? extends List<T>> lists, Comparator<? super T> order, int limit) {
+        int total = 0;
+        for (List<T> l : lists) total += l.size();
+        ArrayList<T> out = new ArrayList<>(Math.min(total, limit));
+
+        // heap of {list index, position}; ties go to the earlier list
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, lists.size()), (a, b) -> {
+            int c = order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) heap.add(new int[]{i, 0});
+        }
+        while (!heap.isEmpty() && out.size() < limit) {
+            int[] top = heap.poll();
+            List<T> l = lists.get(top[0]);
+            out.add(l.get(top[1]));
+            if (++top[1] < l.size()) heap.add(top);
+        }
+        return out;
+    }
+}
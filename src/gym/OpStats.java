@@ -0,0 +1,111 @@
+package gym;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram for one operation
+ * (for example "listAll" or "connection.read").
+ * Recording is lock-free so it can sit on every call.
+ */
+public class OpStats implements OpStatsMBean {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private volatile Throwable lastError;
+
+    /**
+     * @param name operation name
+     */
+    public OpStats(String name) {
+        this.name = name;
+    }
+
+    /** @return operation name */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a call that worked.
+     * @param startNanos System.nanoTime() when the call started
+     * @param read       rows read
+     * @param written    rows written
+     */
+    public void success(long startNanos, long read, long written) {
+        record(startNanos);
+        if (read != 0) rowsRead.add(read);
+        if (written != 0) rowsWritten.add(written);
+    }
+
+    /**
+     * Records a call that failed, keeping the exception.
+     * @param startNanos System.nanoTime() when the call started
+     * @param error      what went wrong
+     */
+    public void failure(long startNanos, Throwable error) {
+        record(startNanos);
+        errors.increment();
+        lastError = error;
+    }
+
+    private void record(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        latency.record(nanos);
+        count.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get();
+    }
+
+    /** @return the last exception recorded, or null */
+    public Throwable lastException() {
+        return lastError;
+    }
+
+    @Override public long getCount() { return count.sum(); }
+    @Override public long getErrors() { return errors.sum(); }
+    @Override public long getRowsRead() { return rowsRead.sum(); }
+    @Override public long getRowsWritten() { return rowsWritten.sum(); }
+    @Override public double getP50Micros() { return latency.percentile(0.50) / 1000.0; }
+    @Override public double getP99Micros() { return latency.percentile(0.99) / 1000.0; }
+    @Override public double getMaxMicros() { return maxNanos.get() / 1000.0; }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public String getLastError() {
+        Throwable t = lastError;
+        return t == null ? "" : t.getClass().getSimpleName() + ": " + t.getMessage();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        count.reset();
+        errors.reset();
+        rowsRead.reset();
+        rowsWritten.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        lastError = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s count=%d errors=%d rowsRead=%d rowsWritten=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%s",
+                name, getCount(), getErrors(), getRowsRead(), getRowsWritten(),
+                getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros(),
+                lastError == null ? "" : " lastError=\"" + getLastError() + "\"");
+    }
+}
@@ -0,0 +1,38 @@
+package gym;
+
+/**
+ * JMX view of the numbers recorded for one operation.
+ * Shows up in JConsole / VisualVM under the "gym" domain.
+ */
+public interface OpStatsMBean {
+
+    /** @return calls that finished (with or without an error) */
+    long getCount();
+
+    /** @return calls that failed */
+    long getErrors();
+
+    /** @return rows read by all calls */
+    long getRowsRead();
+
+    /** @return rows inserted, updated or deleted by all calls */
+    long getRowsWritten();
+
+    /** @return average time per call in microseconds */
+    double getMeanMicros();
+
+    /** @return median time per call in microseconds */
+    double getP50Micros();
+
+    /** @return 99th percentile time per call in microseconds */
+    double getP99Micros();
+
+    /** @return slowest call in microseconds */
+    double getMaxMicros();
+
+    /** @return the last error (type and message), or an empty string */
+    String getLastError();
+
+    /** Clears all counters. */
+    void reset();
+}
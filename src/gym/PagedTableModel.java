@@ -0,0 +1,342 @@
+package gym;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Table model that only keeps the rows the user is looking at.
+ *
+ * It knows the row count, and loads rows from the database one page at a
+ * time when the table asks for them (for example while scrolling). Pages
+ * are read with keyset paging (WHERE id > ?) and the most recently used
+ * pages are kept in a small cache, so memory stays flat no matter how big
+ * the table is.
+ *
+ * Pages are loaded in the background. Until a page arrives its rows show
+ * as blank, then the table repaints them. All fields are only touched on
+ * the Swing thread.
+ *
+ * Register apply() as a store change listener and single-row changes are
+ * applied in place: an edit replaces one cached row, and an insert or
+ * delete only drops the cached pages from that row on.
+ *
+ * setFilter() switches to showing the results of a search instead (at
+ * most MAX_MATCHES rows, all in memory); any change re-runs the search.
+ *
+ * showSnapshot() shows the rows of a StartupSnapshot before the database
+ * is open; the next reset(), reload() or setFilter() goes back to the
+ * database.
+ */
+public class PagedTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Rows per page. */
+    public static final int PAGE_SIZE = 200;
+
+    /** Max pages kept in memory. */
+    public static final int MAX_CACHED_PAGES = 32;
+
+    /** Max rows shown for a search. */
+    public static final int MAX_MATCHES = 1000;
+
+    private static final String[] COLS = {"ID","Date","Exercise","Muscle","Sets","Reps","Weight","Duration","RPE","Notes"};
+
+    private final AsyncSessionService service;
+
+    /** Number of rows in the table (from the last reload). */
+    private int rowCount;
+
+    /** Cached pages, least recently used first. */
+    private final LinkedHashMap<Integer, ArrayList<SessionRecord>> pages =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<SessionRecord>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+
+    /** Pages that are being loaded right now. */
+    private final HashSet<Integer> loading = new HashSet<>();
+
+    /** Bumped on every reload so pages from before the reload are ignored. */
+    private int generation;
+
+    /** Bumped on every applied change; a page that was loading meanwhile is read again. */
+    private int edits;
+
+    /** For each page we know about, the id just before its first row (the keyset "after" value). */
+    private final HashMap<Integer, Long> pageStart = new HashMap<>();
+
+    /** The search being shown, or null when showing every row. */
+    private SessionQuery filter;
+
+    /** Rows found by the search (only used while a filter is set). */
+    private ArrayList<SessionRecord> matches = new ArrayList<>();
+
+    /** True while a re-run of the search is waiting to start. */
+    private boolean refilterQueued;
+
+    /** Saved copy shown until the database is open, or null. */
+    private StartupSnapshot snapshot;
+
+    /**
+     * @param service where the rows come from
+     */
+    public PagedTableModel(AsyncSessionService service) {
+        this.service = service;
+    }
+
+    /**
+     * Re-reads the row count in the background and drops every cached page.
+     * Rows are loaded again when the table asks for them.
+     * While a filter is set, the search is run again instead.
+     * @return finishes (on a worker thread) with the new row count
+     */
+    public CompletableFuture<Integer> reload() {
+        if (filter != null) return setFilter(filter);
+        CompletableFuture<Integer> count = service.countAll();
+        AsyncSessionService.onEdt(count, rows -> {
+            if (filter == null) reset(rows);
+        }, err -> err.printStackTrace());
+        return count;
+    }
+
+    /**
+     * Drops every cached page (and any filter) and shows a new row count.
+     * @param rows number of rows in the table
+     */
+    public void reset(int rows) {
+        generation++;
+        filter = null;
+        snapshot = null;
+        matches = new ArrayList<>();
+        rowCount = rows;
+        pages.clear();
+        pageStart.clear();
+        loading.clear();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Shows only the rows a search finds, or every row again.
+     * The search runs in the background; a newer call wins.
+     * @param q the filters (its limit is set to MAX_MATCHES), or null to show every row
+     * @return finishes (on a worker thread) with the number of rows found
+     */
+    public CompletableFuture<Integer> setFilter(SessionQuery q) {
+        if (q == null) {
+            filter = null;
+            return reload();
+        }
+        snapshot = null;
+        filter = q.limit(MAX_MATCHES);
+        CompletableFuture<ArrayList<SessionRecord>> f = service.search(q);
+        AsyncSessionService.onEdt(f, rows -> {
+            if (filter != q) return;
+            generation++;
+            matches = rows;
+            rowCount = rows.size();
+            pages.clear();
+            pageStart.clear();
+            loading.clear();
+            fireTableDataChanged();
+        }, err -> err.printStackTrace());
+        return f.thenApply(ArrayList::size);
+    }
+
+    /**
+     * Shows the rows of a saved copy (read straight from the mapped file)
+     * until the database is open.
+     * @param snap the copy
+     */
+    public void showSnapshot(StartupSnapshot snap) {
+        reset(snap.size());
+        snapshot = snap;
+        fireTableDataChanged();
+    }
+
+    /** @return true while a saved copy is shown instead of the database */
+    public boolean isShowingSnapshot() {
+        return snapshot != null;
+    }
+
+    /** @return true while search results are shown */
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
+    /**
+     * Applies one change from the store. Safe to call from any thread.
+     * @param c the change
+     */
+    public void apply(SessionChange c) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> apply(c));
+            return;
+        }
+        if (filter != null) {
+            // a burst of changes runs the search once, after the last of them
+            if (!refilterQueued) {
+                refilterQueued = true;
+                SwingUtilities.invokeLater(() -> {
+                    refilterQueued = false;
+                    if (filter != null) setFilter(filter);
+                });
+            }
+            return;
+        }
+        // the saved copy is replaced by the database as soon as it is open
+        if (snapshot != null) return;
+        switch (c.type()) {
+            case RELOAD:
+                reload();
+                break;
+            case UPDATE:
+                edits++;
+                replaceRow(c.row());
+                break;
+            default:
+                // the row's position decides which pages move
+                int gen = generation;
+                CompletableFuture<Integer> pos = service.countBefore(c.id());
+                AsyncSessionService.onEdt(pos, row -> {
+                    if (gen == generation && filter == null) shiftRows(row, c.type() == SessionChange.Type.INSERT);
+                }, err -> reload());
+        }
+    }
+
+    // swaps in new values for a row if its page is cached
+    private void replaceRow(SessionRecord r) {
+        for (Map.Entry<Integer, ArrayList<SessionRecord>> e : pages.entrySet()) {
+            ArrayList<SessionRecord> page = e.getValue();
+            if (page.isEmpty() || r.id() < page.get(0).id() || r.id() > page.get(page.size() - 1).id()) continue;
+            for (int i = 0; i < page.size(); i++) {
+                if (page.get(i).id() != r.id()) continue;
+                page.set(i, r);
+                int row = e.getKey() * PAGE_SIZE + i;
+                fireTableRowsUpdated(row, row);
+                return;
+            }
+        }
+    }
+
+    // one row added or removed at a position: pages from there on are re-read when shown
+    private void shiftRows(int row, boolean inserted) {
+        int p = row / PAGE_SIZE;
+        edits++;
+        pages.keySet().removeIf(k -> k >= p);
+        pageStart.keySet().removeIf(k -> k > p);
+        if (inserted) {
+            rowCount++;
+            fireTableRowsInserted(row, row);
+        } else if (row < rowCount) {
+            rowCount--;
+            fireTableRowsDeleted(row, row);
+        }
+    }
+
+    /** Empties the table without touching the database. */
+    public void clear() {
+        reset(0);
+    }
+
+    /**
+     * Returns the session shown on a row if its page is loaded.
+     * If not, the page is requested and null is returned for now.
+     * @param row table row
+     * @return the session, or null if it is not loaded (yet)
+     */
+    public SessionRecord getRow(int row) {
+        if (row < 0 || row >= rowCount) return null;
+        if (filter != null) return row < matches.size() ? matches.get(row) : null;
+        if (snapshot != null) return snapshot.record(row);
+        int p = row / PAGE_SIZE;
+        ArrayList<SessionRecord> page = pages.get(p);
+        if (page == null) {
+            requestPage(p);
+            return null;
+        }
+        int i = row % PAGE_SIZE;
+        return i < page.size() ? page.get(i) : null;
+    }
+
+    // starts loading a page in the background (once)
+    private void requestPage(int p) {
+        if (!loading.add(p)) return;
+        int gen = generation;
+        int edit = edits;
+        Long known = p == 0 ? Long.valueOf(Long.MIN_VALUE) : pageStart.get(p);
+        WorkoutStore db = service.blocking();
+
+        CompletableFuture<Object[]> f = service.submit(() -> {
+            long after;
+            if (known != null) {
+                after = known;
+            } else {
+                // jumping to a page we have not seen: find its start with an id-only query
+                Integer id = db.idAtOffset(p * PAGE_SIZE - 1);
+                after = id == null ? Long.MAX_VALUE : id;
+            }
+            return new Object[]{after, db.listRecordsAfter(after, PAGE_SIZE)};
+        });
+        AsyncSessionService.onEdt(f, res -> {
+            if (gen != generation) return;
+            loading.remove(p);
+            int first = p * PAGE_SIZE;
+            int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+            if (edit == edits) {
+                @SuppressWarnings("unchecked")
+                ArrayList<SessionRecord> page = (ArrayList<SessionRecord>) res[1];
+                pageStart.put(p, (Long) res[0]);
+                pages.put(p, page);
+                if (page.size() == PAGE_SIZE)
+                    pageStart.put(p + 1, (long) page.get(PAGE_SIZE - 1).id());
+            }
+            // repainting asks for the page again if it was thrown away
+            if (last >= first) fireTableRowsUpdated(first, last);
+        }, err -> {
+            if (gen == generation) loading.remove(p);
+            err.printStackTrace();
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLS.length;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return COLS[col];
+    }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+        SessionRecord s = getRow(row);
+        if (s == null) return null;
+        switch (col) {
+            case 0: return s.id();
+            case 1: return s.date();
+            case 2: return s.exerciseName();
+            case 3: return s.muscleGroup();
+            case 4: return s.sets();
+            case 5: return s.reps();
+            case 6: return s.weightLbs();
+            case 7: return s.durationMin();
+            case 8: return s.rpe();
+            default: return s.notes();
+        }
+    }
+}
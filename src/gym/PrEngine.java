@@ -0,0 +1,474 @@
+package gym;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Personal records for every exercise, computed once and then kept up to
+ * date as sessions are added.
+ *
+ * load() splits a ColumnarSnapshot by exercise, sorts each exercise's
+ * rows by date and walks them once, in parallel across exercises. The
+ * walk finds every e1RM record (a new best Epley estimate), every rep-max
+ * record (a new best weight for a rep count) and the rolling best e1RM
+ * over the last 7, 28 and 90 days for each training day.
+ *
+ * After that, apply() (a store change listener) keeps the records
+ * current: a session dated after the exercise's last one is checked
+ * against the running bests in O(1); a back-dated, edited or deleted
+ * session re-walks just its exercise. check() answers "would this
+ * session be a PR?" with two binary searches, without touching history.
+ */
+public class PrEngine {
+
+    /** Highest rep count with its own rep-max record. */
+    public static final int MAX_REPS = 20;
+
+    /** Windows (in days) of the rolling bests. */
+    public static final int[] ROLLING_WINDOWS = {7, 28, 90};
+
+    /** What kind of record. */
+    public enum Kind { E1RM, REP_MAX }
+
+    /**
+     * One personal record.
+     *
+     * @param kind     E1RM or REP_MAX
+     * @param exercise code in SessionCatalog.EXERCISES
+     * @param reps     the rep count (REP_MAX only, 0 for E1RM)
+     * @param epochDay day the record was set
+     * @param id       the session that set it
+     * @param value    the new best (estimated 1RM or weight, in lbs)
+     * @param previous the best before it (0 for the first session)
+     */
+    public record Pr(Kind kind, int exercise, int reps, int epochDay, int id, double value, double previous) {
+
+        /** @return the exercise name */
+        public String exerciseName() {
+            return SessionCatalog.EXERCISES.name(exercise);
+        }
+
+        /** @return the date as yyyy-mm-dd */
+        public String date() {
+            return LocalDate.ofEpochDay(epochDay).toString();
+        }
+
+        @Override
+        public String toString() {
+            String what = kind == Kind.E1RM ? "est. 1RM" : reps + "-rep max";
+            String was = previous == 0 ? "first one" : "was " + String.format("%.1f", previous);
+            return exerciseName() + " " + what + ": " + String.format("%.1f", value) + " lbs (" + was + ")";
+        }
+    }
+
+    /**
+     * Best e1RM over a window of days, for each day the exercise was trained.
+     */
+    public static class Rolling {
+
+        /** Days with at least one session, in order. */
+        public int[] days;
+
+        /** best[w][i]: best e1RM in the ROLLING_WINDOWS[w] days ending on days[i]. */
+        public double[][] best;
+    }
+
+    /** Rows of one exercise in (day, id) order, plus what the walk found. */
+    private static final class Lift {
+        final int exercise;
+        int n;
+        int[] days = new int[8];
+        int[] ids = new int[8];
+        int[] reps = new int[8];
+        double[] weight = new double[8];
+
+        ArrayList<Pr> e1rm = new ArrayList<>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayList<Pr>[] repMax = new ArrayList[MAX_REPS + 1];
+        Rolling rolling;
+
+        Lift(int exercise) {
+            this.exercise = exercise;
+        }
+
+        double best() {
+            return e1rm.isEmpty() ? 0 : e1rm.get(e1rm.size() - 1).value();
+        }
+
+        double bestAtReps(int r) {
+            ArrayList<Pr> list = repMax[r];
+            return list == null || list.isEmpty() ? 0 : list.get(list.size() - 1).value();
+        }
+
+        void ensureCapacity(int size) {
+            if (size <= days.length) return;
+            int c = Math.max(size, days.length + (days.length >> 1));
+            days = Arrays.copyOf(days, c);
+            ids = Arrays.copyOf(ids, c);
+            reps = Arrays.copyOf(reps, c);
+            weight = Arrays.copyOf(weight, c);
+        }
+
+        // true if (day, id) sorts after every row already here
+        boolean isLast(int day, int id) {
+            return n == 0 || days[n - 1] < day || (days[n - 1] == day && ids[n - 1] < id);
+        }
+
+        void insert(int day, int id, int r, double w) {
+            ensureCapacity(n + 1);
+            int at = n;
+            while (at > 0 && (days[at - 1] > day || (days[at - 1] == day && ids[at - 1] > id))) at--;
+            System.arraycopy(days, at, days, at + 1, n - at);
+            System.arraycopy(ids, at, ids, at + 1, n - at);
+            System.arraycopy(reps, at, reps, at + 1, n - at);
+            System.arraycopy(weight, at, weight, at + 1, n - at);
+            days[at] = day;
+            ids[at] = id;
+            reps[at] = r;
+            weight[at] = w;
+            n++;
+        }
+
+        boolean remove(int id) {
+            for (int i = 0; i < n; i++) {
+                if (ids[i] != id) continue;
+                System.arraycopy(days, i + 1, days, i, n - i - 1);
+                System.arraycopy(ids, i + 1, ids, i, n - i - 1);
+                System.arraycopy(reps, i + 1, reps, i, n - i - 1);
+                System.arraycopy(weight, i + 1, weight, i, n - i - 1);
+                n--;
+                return true;
+            }
+            return false;
+        }
+
+        // sorts rows that were added in id order by (day, id)
+        void sortByDay() {
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) keys[i] = ((long) days[i] << 32) | i;
+            Arrays.sort(keys);
+            int[] d = new int[n], id = new int[n], r = new int[n];
+            double[] w = new double[n];
+            for (int i = 0; i < n; i++) {
+                int from = (int) keys[i];
+                d[i] = days[from];
+                id[i] = ids[from];
+                r[i] = reps[from];
+                w[i] = weight[from];
+            }
+            days = d;
+            ids = id;
+            reps = r;
+            weight = w;
+        }
+
+        /** The single pass: records and rolling bests from the sorted rows. */
+        void walk() {
+            e1rm = new ArrayList<>();
+            Arrays.fill(repMax, null);
+            double best = 0;
+            double[] repBest = new double[MAX_REPS + 1];
+
+            int windows = ROLLING_WINDOWS.length;
+            int[][] queue = new int[windows][n];   // rows with falling e1RM, per window
+            int[] head = new int[windows], tail = new int[windows];
+            double[] est = new double[n];
+            int[] rollDays = new int[n];
+            double[][] rollBest = new double[windows][n];
+            int dayCount = 0;
+
+            for (int i = 0; i < n; i++) {
+                double e = weight[i] * (1 + reps[i] / 30.0);
+                est[i] = e;
+                if (e > best) {
+                    e1rm.add(new Pr(Kind.E1RM, exercise, 0, days[i], ids[i], e, best));
+                    best = e;
+                }
+                int r = reps[i];
+                if (r >= 1 && r <= MAX_REPS && weight[i] > repBest[r]) {
+                    if (repMax[r] == null) repMax[r] = new ArrayList<>();
+                    repMax[r].add(new Pr(Kind.REP_MAX, exercise, r, days[i], ids[i], weight[i], repBest[r]));
+                    repBest[r] = weight[i];
+                }
+
+                for (int w = 0; w < windows; w++) {
+                    int[] q = queue[w];
+                    while (tail[w] > head[w] && est[q[tail[w] - 1]] <= e) tail[w]--;
+                    q[tail[w]++] = i;
+                }
+                if (i + 1 < n && days[i + 1] == days[i]) continue;
+
+                // last row of its day: the front of each queue is that window's best
+                rollDays[dayCount] = days[i];
+                for (int w = 0; w < windows; w++) {
+                    int first = days[i] - ROLLING_WINDOWS[w] + 1;
+                    int[] q = queue[w];
+                    while (days[q[head[w]]] < first) head[w]++;
+                    rollBest[w][dayCount] = est[q[head[w]]];
+                }
+                dayCount++;
+            }
+
+            rolling = new Rolling();
+            rolling.days = Arrays.copyOf(rollDays, dayCount);
+            rolling.best = new double[windows][];
+            for (int w = 0; w < windows; w++) rolling.best[w] = Arrays.copyOf(rollBest[w], dayCount);
+        }
+    }
+
+    /** Per exercise code; null for exercises without sessions. */
+    private Lift[] lifts = new Lift[0];
+
+    /** Session id → exercise code + 1 (IdIndex cannot hold 0). */
+    private final IdIndex exerciseOf = new IdIndex();
+
+    /** False until load() has run (and after a RELOAD change). */
+    private boolean loaded;
+
+    /** Changes that arrived while load() was reading; replayed after it. */
+    private List<SessionChange> pending;
+
+    /**
+     * Computes everything from scratch. Changes made while the snapshot
+     * is read are applied afterwards, so none are lost.
+     * @param source reads the snapshot (for example SessionService::loadSnapshot)
+     */
+    public void load(Supplier<ColumnarSnapshot> source) {
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        ColumnarSnapshot snap;
+        Lift[] built;
+        try {
+            snap = source.get();
+            built = build(snap);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            lifts = built;
+            exerciseOf.clear();
+            // the snapshot is in id order, so each put is an append to the index
+            for (int i = 0; i < snap.size(); i++) exerciseOf.put(snap.id(i), snap.exerciseCode(i) + 1);
+            loaded = true;
+            List<SessionChange> replay = pending;
+            pending = null;
+            for (SessionChange c : replay) apply(c);
+        }
+    }
+
+    // split by exercise (rows stay in id order), then sort and walk each one on its own core
+    private static Lift[] build(ColumnarSnapshot snap) {
+        int[] counts = new int[snap.exercises.size()];
+        for (int i = 0; i < snap.size(); i++) counts[snap.exerciseCode(i)]++;
+        Lift[] built = new Lift[counts.length];
+        for (int e = 0; e < counts.length; e++) {
+            if (counts[e] == 0) continue;
+            built[e] = new Lift(e);
+            built[e].ensureCapacity(counts[e]);
+        }
+        for (int i = 0; i < snap.size(); i++) {
+            Lift l = built[snap.exerciseCode(i)];
+            int k = l.n++;
+            l.days[k] = snap.epochDay(i);
+            l.ids[k] = snap.id(i);
+            l.reps[k] = snap.reps(i);
+            l.weight[k] = snap.weight(i);
+        }
+        IntStream.range(0, built.length).parallel().forEach(e -> {
+            if (built[e] == null) return;
+            built[e].sortByDay();
+            built[e].walk();
+        });
+        return built;
+    }
+
+    /** Forgets everything (until the next load()). */
+    public synchronized void clear() {
+        lifts = new Lift[0];
+        exerciseOf.clear();
+        loaded = false;
+    }
+
+    /** @return true once load() has finished and no RELOAD came after it */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Applies one store change; register it with addChangeListener().
+     * A RELOAD marks the records out of date until the next load().
+     * @param c the change
+     */
+    public synchronized void apply(SessionChange c) {
+        if (pending != null) pending.add(c);
+        if (!loaded) return;
+        switch (c.type()) {
+            case RELOAD:
+                loaded = false;
+                break;
+            case DELETE:
+                remove(c.id());
+                break;
+            default:
+                // an insert we already have (seen during load) counts as an update
+                remove(c.id());
+                if (c.row() != null) add(c.row());
+        }
+    }
+
+    /**
+     * Adds a session and returns the records it sets.
+     * @param r the new session
+     * @return its records (empty if none, or if it has no valid date)
+     */
+    public synchronized List<Pr> add(SessionRecord r) {
+        if (r.epochDay() == SessionRecord.NO_DAY) return List.of();
+        Lift l = lift(r.exercise());
+        exerciseOf.put(r.id(), r.exercise() + 1);
+        if (!l.isLast(r.epochDay(), r.id())) {
+            // back-dated: later records may no longer be records
+            l.insert(r.epochDay(), r.id(), r.reps(), r.weightLbs());
+            l.walk();
+            return setBy(l, r.id());
+        }
+
+        l.insert(r.epochDay(), r.id(), r.reps(), r.weightLbs());
+        l.rolling = null;
+        List<Pr> found = new ArrayList<>(2);
+        double e = r.weightLbs() * (1 + r.reps() / 30.0);
+        double best = l.best();
+        if (e > best) {
+            Pr pr = new Pr(Kind.E1RM, l.exercise, 0, r.epochDay(), r.id(), e, best);
+            l.e1rm.add(pr);
+            found.add(pr);
+        }
+        int reps = r.reps();
+        if (reps >= 1 && reps <= MAX_REPS && r.weightLbs() > l.bestAtReps(reps)) {
+            Pr pr = new Pr(Kind.REP_MAX, l.exercise, reps, r.epochDay(), r.id(), r.weightLbs(), l.bestAtReps(reps));
+            if (l.repMax[reps] == null) l.repMax[reps] = new ArrayList<>();
+            l.repMax[reps].add(pr);
+            found.add(pr);
+        }
+        return found;
+    }
+
+    /**
+     * Removes a session; its exercise is walked again.
+     * @param id the session id
+     */
+    public synchronized void remove(int id) {
+        int code = exerciseOf.remove(id) - 1;
+        if (code < 0 || code >= lifts.length || lifts[code] == null) return;
+        Lift l = lifts[code];
+        if (l.remove(id)) l.walk();
+    }
+
+    /**
+     * Tells whether a session would set records, without adding it.
+     * Compares with the bests as of its date (two binary searches).
+     * @param r the session
+     * @return the records it would set (empty if none or not loaded)
+     */
+    public synchronized List<Pr> check(SessionRecord r) {
+        if (!loaded || r.epochDay() == SessionRecord.NO_DAY) return List.of();
+        List<Pr> found = new ArrayList<>(2);
+        Lift l = r.exercise() < lifts.length ? lifts[r.exercise()] : null;
+        double e = r.weightLbs() * (1 + r.reps() / 30.0);
+        double best = l == null ? 0 : bestAsOf(l.e1rm, r.epochDay());
+        if (e > best) found.add(new Pr(Kind.E1RM, r.exercise(), 0, r.epochDay(), r.id(), e, best));
+        int reps = r.reps();
+        if (reps >= 1 && reps <= MAX_REPS) {
+            double prev = l == null ? 0 : bestAsOf(l.repMax[reps], r.epochDay());
+            if (r.weightLbs() > prev)
+                found.add(new Pr(Kind.REP_MAX, r.exercise(), reps, r.epochDay(), r.id(), r.weightLbs(), prev));
+        }
+        return found;
+    }
+
+    /**
+     * @param exercise exercise name
+     * @return every e1RM record, oldest first (empty if none)
+     */
+    public synchronized List<Pr> e1rmTimeline(String exercise) {
+        Lift l = find(exercise);
+        return l == null ? List.of() : List.copyOf(l.e1rm);
+    }
+
+    /**
+     * @param exercise exercise name
+     * @param reps     rep count (1 to MAX_REPS)
+     * @return every rep-max record at that rep count, oldest first
+     */
+    public synchronized List<Pr> repMaxTimeline(String exercise, int reps) {
+        Lift l = find(exercise);
+        if (l == null || reps < 1 || reps > MAX_REPS || l.repMax[reps] == null) return List.of();
+        return List.copyOf(l.repMax[reps]);
+    }
+
+    /**
+     * @param exercise exercise name
+     * @return current best weight at each rep count, indexed by reps (0 where none)
+     */
+    public synchronized double[] repMaxes(String exercise) {
+        double[] out = new double[MAX_REPS + 1];
+        Lift l = find(exercise);
+        if (l != null) for (int r = 1; r <= MAX_REPS; r++) out[r] = l.bestAtReps(r);
+        return out;
+    }
+
+    /**
+     * @param exercise exercise name
+     * @return rolling bests for ROLLING_WINDOWS, or null if the exercise has no sessions
+     */
+    public synchronized Rolling rolling(String exercise) {
+        Lift l = find(exercise);
+        if (l == null) return null;
+        if (l.rolling == null) l.walk();
+        return l.rolling;
+    }
+
+    private Lift find(String exercise) {
+        int code = SessionCatalog.EXERCISES.codeOf(exercise);
+        return code >= 0 && code < lifts.length ? lifts[code] : null;
+    }
+
+    private Lift lift(int code) {
+        if (code >= lifts.length) lifts = Arrays.copyOf(lifts, code + 1);
+        if (lifts[code] == null) lifts[code] = new Lift(code);
+        return lifts[code];
+    }
+
+    // best value of the records set on or before a day
+    private static double bestAsOf(List<Pr> timeline, int day) {
+        if (timeline == null) return 0;
+        int lo = 0, hi = timeline.size() - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timeline.get(mid).epochDay() <= day) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? 0 : timeline.get(found).value();
+    }
+
+    private static List<Pr> setBy(Lift l, int id) {
+        List<Pr> found = new ArrayList<>(2);
+        for (Pr p : l.e1rm) if (p.id() == id) found.add(p);
+        for (ArrayList<Pr> list : l.repMax) {
+            if (list == null) continue;
+            for (Pr p : list) if (p.id() == id) found.add(p);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,26 @@
+package gym;
+
+/**
+ * Totals for one exercise over a window of days,
+ * read from the pre-computed daily_stats table.
+ */
+public class RollingStats {
+
+    /** Number of days in the window. */
+    public int days;
+
+    /** Best estimated 1RM in the window (0 if no sessions). */
+    public double bestE1RM;
+
+    /** Total volume (sets×reps×weight) in the window. */
+    public double volume;
+
+    /** Total sets in the window. */
+    public int sets;
+
+    @Override
+    public String toString() {
+        return days + " days: best e1RM " + String.format("%.1f", bestE1RM)
+                + ", volume " + String.format("%.1f", volume) + ", sets " + sets;
+    }
+}
@@ -0,0 +1,378 @@
+package gym;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings a database file up to the schema this version of the program needs.
+ *
+ * The schema version is stored in SQLite's PRAGMA user_version. Each
+ * migration runs once, in its own transaction, and bumps the version,
+ * so opening an old file upgrades it and opening a current file does nothing.
+ */
+public class SchemaMigrator {
+
+    /** SQL that turns a yyyy-mm-dd text date into days since 1970-01-01. */
+    static final String EPOCH_DAY_SQL = "CAST(julianday(%s) - 2440587.5 AS INTEGER)";
+
+    /** Index used by the exercise + date range queries. */
+    static final String EXERCISE_DAY_INDEX = "idx_workouts_exercise_day";
+
+    /** Index used by muscle group + date range queries. */
+    static final String MUSCLE_DAY_INDEX = "idx_workouts_muscle_day";
+
+    /** The columns a user edits (not epoch_day or version, which follow from them). */
+    static final String DATA_COLUMNS = "id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes";
+
+    /** Epley estimate for one row. */
+    static final String E1RM_SQL = "weight * (1 + reps / 30.0)";
+
+    /** Fills daily_stats from scratch. */
+    static final String REBUILD_DAILY_STATS_SQL =
+            "INSERT INTO daily_stats (exercise, epoch_day, best_e1rm, volume, set_count) "
+                    + "SELECT exercise, epoch_day, MAX(" + E1RM_SQL + "), SUM(sets * reps * weight), SUM(sets) "
+                    + "FROM workouts WHERE epoch_day IS NOT NULL GROUP BY exercise, epoch_day";
+
+    /** One schema step. */
+    private interface Migration {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    /** Migrations in order; the schema version is the number of steps applied. */
+    private static final Migration[] MIGRATIONS = {
+            SchemaMigrator::v1DayColumnAndIndexes,
+            SchemaMigrator::v2DailyStats,
+            SchemaMigrator::v3Catalog,
+            SchemaMigrator::v4ChangeLog,
+            SchemaMigrator::v5FullText,
+            SchemaMigrator::v6RowVersion,
+            SchemaMigrator::v7ScopedUpdateTriggers,
+    };
+
+    private SchemaMigrator() {}
+
+    /** @return the schema version this program expects */
+    public static int latestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    /**
+     * Runs every migration the database has not had yet.
+     * @param conn a writable connection
+     * @throws SQLException if a migration fails (that step is rolled back)
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        int version = userVersion(conn);
+        boolean auto = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+            for (int v = version; v < MIGRATIONS.length; v++) {
+                try {
+                    MIGRATIONS[v].apply(conn);
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("PRAGMA user_version = " + (v + 1));
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        } finally {
+            conn.setAutoCommit(auto);
+        }
+    }
+
+    /**
+     * Reads the schema version stored in the file.
+     * @param conn any connection
+     * @return the version (0 for a file this program never touched)
+     * @throws SQLException if the pragma fails
+     */
+    public static int userVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Version 1: makes sure the table exists, adds an integer day column
+     * (epoch_day) filled from the text date, and indexes for the
+     * exercise/date and muscle/date lookups.
+     */
+    private static void v1DayColumnAndIndexes(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS workouts (
+                     id INTEGER NOT NULL PRIMARY KEY,
+                     date TEXT NOT NULL,
+                     exercise TEXT NOT NULL,
+                     muscle TEXT NOT NULL,
+                     sets INTEGER NOT NULL,
+                     reps INTEGER NOT NULL,
+                     weight REAL NOT NULL,
+                     duration INTEGER NOT NULL,
+                     rpe INTEGER NOT NULL,
+                     notes TEXT
+                    )""");
+
+            if (!hasColumn(conn, "workouts", "epoch_day"))
+                st.execute("ALTER TABLE workouts ADD COLUMN epoch_day INTEGER");
+            st.execute("UPDATE workouts SET epoch_day = " + String.format(EPOCH_DAY_SQL, "date"));
+
+            // older files may have been made without id as the primary key
+            if (!idIsPrimaryKey(conn))
+                st.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_workouts_id ON workouts(id)");
+
+            st.execute("CREATE INDEX IF NOT EXISTS " + EXERCISE_DAY_INDEX + " ON workouts(exercise, epoch_day)");
+            st.execute("CREATE INDEX IF NOT EXISTS " + MUSCLE_DAY_INDEX + " ON workouts(muscle, epoch_day)");
+
+            // keep epoch_day right when other programs write to the file
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_workouts_day_insert AFTER INSERT ON workouts "
+                    + "WHEN NEW.epoch_day IS NULL BEGIN "
+                    + "UPDATE workouts SET epoch_day = " + String.format(EPOCH_DAY_SQL, "NEW.date")
+                    + " WHERE id = NEW.id; END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_workouts_day_update AFTER UPDATE OF date ON workouts "
+                    + "WHEN NEW.epoch_day IS NOT " + String.format(EPOCH_DAY_SQL, "NEW.date") + " BEGIN "
+                    + "UPDATE workouts SET epoch_day = " + String.format(EPOCH_DAY_SQL, "NEW.date")
+                    + " WHERE id = NEW.id; END");
+        }
+    }
+
+    /**
+     * Version 2: per-exercise, per-day totals (best e1RM, volume, sets) kept
+     * up to date by triggers, so every insert, update and delete changes
+     * the totals in the same transaction as the row itself.
+     */
+    private static void v2DailyStats(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS daily_stats (
+                     exercise TEXT NOT NULL,
+                     epoch_day INTEGER NOT NULL,
+                     best_e1rm REAL NOT NULL,
+                     volume REAL NOT NULL,
+                     set_count INTEGER NOT NULL,
+                     PRIMARY KEY (exercise, epoch_day)
+                    ) WITHOUT ROWID""");
+
+            // a new row can only raise the best and add to the totals
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_daily_stats_insert AFTER INSERT ON workouts "
+                    + "WHEN NEW.epoch_day IS NOT NULL BEGIN "
+                    + "INSERT INTO daily_stats (exercise, epoch_day, best_e1rm, volume, set_count) "
+                    + "VALUES (NEW.exercise, NEW.epoch_day, " + "NEW.weight * (1 + NEW.reps / 30.0)"
+                    + ", NEW.sets * NEW.reps * NEW.weight, NEW.sets) "
+                    + "ON CONFLICT (exercise, epoch_day) DO UPDATE SET "
+                    + "best_e1rm = MAX(best_e1rm, excluded.best_e1rm), "
+                    + "volume = volume + excluded.volume, "
+                    + "set_count = set_count + excluded.set_count; END");
+            // a best cannot be "un-maxed", so changed days are recounted (one index range each)
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_daily_stats_delete AFTER DELETE ON workouts BEGIN "
+                    + recountDay("OLD") + " END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_daily_stats_update AFTER UPDATE ON workouts BEGIN "
+                    + recountDay("OLD") + " " + recountDay("NEW") + " END");
+
+            st.execute("DELETE FROM daily_stats");
+            st.execute(REBUILD_DAILY_STATS_SQL);
+        }
+    }
+
+    /**
+     * Version 3: "exercises" and "muscles" lookup tables with every name used
+     * in workouts, kept complete by triggers. The program loads them into
+     * SessionCatalog when a file is opened. The workouts table keeps its
+     * text columns so the CSV import, daily_stats and other tools still work.
+     */
+    private static void v3Catalog(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS exercises (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+            st.execute("CREATE TABLE IF NOT EXISTS muscles (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+            st.execute("INSERT OR IGNORE INTO exercises (name) SELECT DISTINCT exercise FROM workouts WHERE exercise IS NOT NULL");
+            st.execute("INSERT OR IGNORE INTO muscles (name) SELECT DISTINCT muscle FROM workouts WHERE muscle IS NOT NULL");
+
+            String addNames = "INSERT OR IGNORE INTO exercises (name) SELECT NEW.exercise WHERE NEW.exercise IS NOT NULL; "
+                    + "INSERT OR IGNORE INTO muscles (name) SELECT NEW.muscle WHERE NEW.muscle IS NOT NULL;";
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_catalog_insert AFTER INSERT ON workouts BEGIN "
+                    + addNames + " END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_catalog_update AFTER UPDATE OF exercise, muscle ON workouts BEGIN "
+                    + addNames + " END");
+        }
+    }
+
+    /**
+     * Version 4: change_log, one row per inserted, updated or deleted
+     * workout ('I', 'U', 'D'), written by triggers so changes made by other
+     * programs are logged too. DataVersionWatcher reads it to find out which
+     * rows changed. AUTOINCREMENT keeps seqs from being reused after the
+     * log is trimmed.
+     */
+    private static void v4ChangeLog(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS change_log (
+                     seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                     row_id INTEGER NOT NULL,
+                     op TEXT NOT NULL
+                    )""");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_change_log_insert AFTER INSERT ON workouts BEGIN "
+                    + "INSERT INTO change_log (row_id, op) VALUES (NEW.id, 'I'); END");
+            // changing the id itself is logged as a delete of the old id and an insert of the new one
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_change_log_update AFTER UPDATE ON workouts BEGIN "
+                    + "INSERT INTO change_log (row_id, op) SELECT OLD.id, 'D' WHERE OLD.id IS NOT NEW.id; "
+                    + "INSERT INTO change_log (row_id, op) "
+                    + "VALUES (NEW.id, CASE WHEN OLD.id IS NEW.id THEN 'U' ELSE 'I' END); END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_change_log_delete AFTER DELETE ON workouts BEGIN "
+                    + "INSERT INTO change_log (row_id, op) VALUES (OLD.id, 'D'); END");
+        }
+    }
+
+    /**
+     * Version 5: workouts_fts, an FTS5 full-text index over exercise, muscle
+     * and notes for the search box. It is an external-content table (the
+     * text is only stored in workouts) kept in step by triggers, with
+     * extra prefix indexes so short as-you-type prefixes stay fast.
+     */
+    private static void v5FullText(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE VIRTUAL TABLE IF NOT EXISTS workouts_fts USING fts5("
+                    + "exercise, muscle, notes, content='workouts', content_rowid='id', prefix='2 3')");
+            String add = "INSERT INTO workouts_fts (rowid, exercise, muscle, notes) "
+                    + "VALUES (NEW.id, NEW.exercise, NEW.muscle, NEW.notes);";
+            // an external-content index needs the old values to remove a row
+            String remove = "INSERT INTO workouts_fts (workouts_fts, rowid, exercise, muscle, notes) "
+                    + "VALUES ('delete', OLD.id, OLD.exercise, OLD.muscle, OLD.notes);";
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_fts_insert AFTER INSERT ON workouts BEGIN " + add + " END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_fts_delete AFTER DELETE ON workouts BEGIN " + remove + " END");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_fts_update AFTER UPDATE OF id, exercise, muscle, notes ON workouts BEGIN "
+                    + remove + " " + add + " END");
+            st.execute("INSERT INTO workouts_fts (workouts_fts) VALUES ('rebuild')");
+        }
+    }
+
+    /**
+     * Version 6: a version number per row, for optimistic concurrency.
+     * SessionService's updates and deletes name the version they read and
+     * only go through if it still matches; an update adds one itself.
+     * Adding a column with a default does not rewrite the table, so this
+     * is quick on big files. (The trigger for other programs is in v7.)
+     */
+    private static void v6RowVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            if (!hasColumn(conn, "workouts", "version"))
+                st.execute("ALTER TABLE workouts ADD COLUMN version INTEGER NOT NULL DEFAULT 1");
+        }
+    }
+
+    /**
+     * Version 7: update triggers that only fire for the columns they
+     * depend on. The version and epoch_day triggers fix their own row with
+     * a second UPDATE; before this, that UPDATE fired the change_log and
+     * daily_stats triggers again, so one edit by another program logged
+     * two to four changes and recounted its day as often, and a date
+     * change bumped the version twice. Now:
+     *   change_log logs edits to DATA_COLUMNS (not the derived epoch_day and version);
+     *   daily_stats recounts when a column it sums changes (epoch_day included);
+     *   the version goes up once for an edit to DATA_COLUMNS that left it alone.
+     */
+    private static void v7ScopedUpdateTriggers(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TRIGGER IF EXISTS trg_change_log_update");
+            st.execute("DROP TRIGGER IF EXISTS trg_daily_stats_update");
+            st.execute("DROP TRIGGER IF EXISTS trg_workouts_version");
+            st.execute("CREATE TRIGGER trg_change_log_update AFTER UPDATE OF " + DATA_COLUMNS + " ON workouts BEGIN "
+                    + "INSERT INTO change_log (row_id, op) SELECT OLD.id, 'D' WHERE OLD.id IS NOT NEW.id; "
+                    + "INSERT INTO change_log (row_id, op) "
+                    + "VALUES (NEW.id, CASE WHEN OLD.id IS NEW.id THEN 'U' ELSE 'I' END); END");
+            st.execute("CREATE TRIGGER trg_daily_stats_update AFTER UPDATE OF exercise, epoch_day, sets, reps, weight ON workouts BEGIN "
+                    + recountDay("OLD") + " " + recountDay("NEW") + " END");
+            st.execute("CREATE TRIGGER trg_workouts_version AFTER UPDATE OF " + DATA_COLUMNS + " ON workouts "
+                    + "WHEN NEW.version IS OLD.version BEGIN "
+                    + "UPDATE workouts SET version = OLD.version + 1 WHERE id = NEW.id; END");
+        }
+    }
+
+    // trigger body that recomputes one exercise/day from the raw rows
+    private static String recountDay(String row) {
+        String key = "exercise = " + row + ".exercise AND epoch_day = " + row + ".epoch_day";
+        return "DELETE FROM daily_stats WHERE " + key + "; "
+                + "INSERT INTO daily_stats (exercise, epoch_day, best_e1rm, volume, set_count) "
+                + "SELECT exercise, epoch_day, MAX(" + E1RM_SQL + "), SUM(sets * reps * weight), SUM(sets) "
+                + "FROM workouts WHERE " + key + " GROUP BY exercise, epoch_day;";
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+            return false;
+        }
+    }
+
+    private static boolean idIsPrimaryKey(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(workouts)")) {
+            while (rs.next()) {
+                if ("id".equalsIgnoreCase(rs.getString("name"))) return rs.getInt("pk") == 1;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN on a statement and returns the plan lines.
+     * @param conn   any connection
+     * @param sql    the query (with ? placeholders)
+     * @param params values for the placeholders
+     * @return one "detail" line per plan step
+     * @throws SQLException if the query does not compile
+     */
+    public static List<String> explain(Connection conn, String sql, Object... params) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Checks that the service's hot queries use the indexes instead of
+     * scanning the whole table. QueryPlanTest runs this against a freshly
+     * migrated database.
+     * @param conn any connection
+     * @return a list of problems (empty when every query uses its index)
+     * @throws SQLException if a query does not compile
+     */
+    public static List<String> verifyQueryPlans(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        expectInPlan(conn, problems, SessionService.BEST_E1RM_SQL, "PRIMARY KEY", "Bench Press", 0);
+        expectInPlan(conn, problems, SessionService.ROLLING_SQL, "PRIMARY KEY", "Bench Press", 0, 0);
+        expectInPlan(conn, problems, "SELECT id FROM workouts WHERE exercise = ? AND epoch_day = ?",
+                EXERCISE_DAY_INDEX, "Bench Press", 0);
+        expectInPlan(conn, problems, SessionService.EXISTS_SQL, "PRIMARY KEY", 1);
+        expectInPlan(conn, problems, SessionService.DELETE_SQL, "PRIMARY KEY", 1, 0);
+        return problems;
+    }
+
+    private static void expectInPlan(Connection conn, List<String> problems, String sql,
+                                     String expected, Object... params) throws SQLException {
+        List<String> plan = explain(conn, sql, params);
+        boolean found = false;
+        for (String step : plan) {
+            // an index on id counts the same as the rowid primary key
+            if (step.contains(expected) || (expected.equals("PRIMARY KEY") && step.contains("idx_workouts_id")))
+                found = true;
+        }
+        if (!found) problems.add("Query does not use " + expected + ": " + sql.trim() + " -> " + plan);
+    }
+}
@@ -0,0 +1,115 @@
+package gym;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * All the OpStats for one SessionService. They can be published as
+ * JMX MBeans and/or written to a log file every few seconds.
+ */
+public class ServiceMetrics {
+
+    private final Map<String, OpStats> ops = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Returns the stats for an operation, creating them on first use.
+     * @param name operation name
+     * @return the stats
+     */
+    public OpStats op(String name) {
+        return ops.computeIfAbsent(name, OpStats::new);
+    }
+
+    /** @return every operation seen so far */
+    public Map<String, OpStats> all() {
+        return ops;
+    }
+
+    /**
+     * Publishes every known operation as an MBean named
+     * gym:type=SessionService,instance=&lt;instance&gt;,op=&lt;op&gt;.
+     * @param instance name that tells services apart (e.g. "gui")
+     * @param opNames  operations to publish (created if not seen yet)
+     */
+    public void registerMBeans(String instance, String... opNames) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String n : opNames) op(n);
+        for (OpStats s : ops.values()) {
+            try {
+                ObjectName on = new ObjectName("gym:type=SessionService,instance="
+                        + ObjectName.quote(instance) + ",op=" + ObjectName.quote(s.getName()));
+                if (!server.isRegistered(on)) server.registerMBean(s, on);
+            } catch (Exception e) {
+                System.err.println("Could not register MBean for " + s.getName() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Writes one line per operation to a log file every period.
+     * When the file gets bigger than maxBytes it is renamed to file.1
+     * (replacing the old one) and a new file is started.
+     * @param file          log file
+     * @param periodSeconds how often to write
+     * @param maxBytes      size that triggers a roll-over
+     */
+    public synchronized void startLogDump(Path file, long periodSeconds, long maxBytes) {
+        stopLogDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                dump(file, maxBytes);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics: " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Stops the periodic log dump. */
+    public synchronized void stopLogDump() {
+        if (dumper != null) dumper.shutdownNow();
+        dumper = null;
+    }
+
+    private void dump(Path file, long maxBytes) throws IOException {
+        if (Files.exists(file) && Files.size(file) > maxBytes) {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        String now = LocalDateTime.now().toString();
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (OpStats s : ops.values()) {
+                w.write(now);
+                w.write(' ');
+                w.write(s.toString());
+                w.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (OpStats s : ops.values()) sb.append(s).append('\n');
+        return sb.toString();
+    }
+}
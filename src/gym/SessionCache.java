@@ -0,0 +1,214 @@
+package gym;
+
+/**
+ * Size-limited cache of workout sessions keyed by id.
+ *
+ * Uses a primitive int hash table (no Integer boxing) with linear probing.
+ * When the cache is full, an entry is evicted with the CLOCK policy:
+ * entries that were read since the hand last passed get a second chance.
+ * Hit, miss and eviction counts are kept so the size can be tuned.
+ *
+ * Writes go through put() and remove(), which also bump a stamp for the
+ * id. A read from the database fills the cache with putIfAbsent(), which
+ * only stores the row if no write touched that id since the read began,
+ * so a slow read cannot put back a row that was just changed or deleted.
+ */
+public class SessionCache {
+
+    // ids share stamps by hash; a shared stamp only costs a skipped fill
+    private static final int STAMP_STRIPES = 256;
+
+    private final int capacity;
+    private final int mask;
+    private final int[] keys;
+    private final WorkoutSession[] vals;
+    private final boolean[] referenced;
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private int size;
+    private int hand;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity max number of sessions kept
+     */
+    public SessionCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be at least 1.");
+        this.capacity = capacity;
+        // table at most half full keeps probe chains short
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        mask = tableSize - 1;
+        keys = new int[tableSize];
+        vals = new WorkoutSession[tableSize];
+        referenced = new boolean[tableSize];
+    }
+
+    /**
+     * Looks up a session.
+     * @param id the session id
+     * @return the cached session, or null on a miss
+     */
+    public synchronized WorkoutSession get(int id) {
+        int i = find(id);
+        if (i < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        referenced[i] = true;
+        return vals[i];
+    }
+
+    /**
+     * Adds or replaces a session, evicting one if the cache is full.
+     * @param s the session (stored as is; callers pass a copy)
+     */
+    public synchronized void put(WorkoutSession s) {
+        stamps[stripe(s.id)]++;
+        store(s);
+    }
+
+    /**
+     * Stamp to take before reading a session from the database.
+     * @param id the session id
+     * @return a value to pass to putIfAbsent()
+     */
+    public synchronized long stamp(int id) {
+        return stamps[stripe(id)];
+    }
+
+    /**
+     * Stores a session read from the database, unless the id is already
+     * cached or was written (put or removed) since stamp was taken.
+     * @param s     the session (stored as is; callers pass a copy)
+     * @param stamp the value stamp() gave before the read
+     * @return true if it was stored
+     */
+    public synchronized boolean putIfAbsent(WorkoutSession s, long stamp) {
+        if (stamps[stripe(s.id)] != stamp || find(s.id) >= 0) return false;
+        store(s);
+        return true;
+    }
+
+    private void store(WorkoutSession s) {
+        int i = find(s.id);
+        if (i >= 0) {
+            vals[i] = s;
+            referenced[i] = true;
+            return;
+        }
+        if (size >= capacity) evictOne();
+        i = slot(s.id);
+        while (vals[i] != null) i = (i + 1) & mask;
+        keys[i] = s.id;
+        vals[i] = s;
+        referenced[i] = false;
+        size++;
+    }
+
+    /**
+     * Drops a session from the cache.
+     * @param id the session id
+     */
+    public synchronized void remove(int id) {
+        stamps[stripe(id)]++;
+        int i = find(id);
+        if (i >= 0) removeAt(i);
+    }
+
+    /** Drops everything (counters are kept). */
+    public synchronized void clear() {
+        java.util.Arrays.fill(vals, null);
+        java.util.Arrays.fill(referenced, false);
+        for (int i = 0; i < stamps.length; i++) stamps[i]++;
+        size = 0;
+    }
+
+    /** @return number of cached sessions */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** @return max number of cached sessions */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** @return lookups that found the session */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /** @return lookups that did not find the session */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /** @return sessions dropped to make room */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return "size " + size + "/" + capacity + ", hits " + hits + ", misses " + misses
+                + ", evictions " + evictions
+                + (total == 0 ? "" : String.format(", hit rate %.1f%%", hits * 100.0 / total));
+    }
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int stripe(int id) {
+        int h = id * 0x85EBCA6B;
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private int find(int id) {
+        for (int i = slot(id); vals[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == id) return i;
+        }
+        return -1;
+    }
+
+    // CLOCK: skip (and clear) recently used entries, evict the first one that was not
+    private void evictOne() {
+        while (true) {
+            hand = (hand + 1) & mask;
+            if (vals[hand] == null) continue;
+            if (referenced[hand]) {
+                referenced[hand] = false;
+            } else {
+                removeAt(hand);
+                evictions++;
+                return;
+            }
+        }
+    }
+
+    // removes slot i and shifts later entries back so lookups still find them
+    private void removeAt(int i) {
+        vals[i] = null;
+        referenced[i] = false;
+        size--;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (vals[j] == null) return;
+            int home = slot(keys[j]);
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (stays) continue;
+            keys[i] = keys[j];
+            vals[i] = vals[j];
+            referenced[i] = referenced[j];
+            vals[j] = null;
+            referenced[j] = false;
+            i = j;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package gym;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The exercise and muscle group names, shared by the whole program.
+ *
+ * Every distinct name gets one int code for as long as the program runs,
+ * so SessionRecord and ColumnarSnapshot only store the code and two
+ * sessions of the same exercise compare with ==. The codes only live in
+ * memory; the database keeps the names in its own "exercises" and
+ * "muscles" lookup tables (see SchemaMigrator version 3), which are read
+ * here when a file is opened.
+ */
+public final class SessionCatalog {
+
+    /** Exercise names and their codes. */
+    public static final StringDictionary EXERCISES = new StringDictionary();
+
+    /** Muscle group names and their codes. */
+    public static final StringDictionary MUSCLES = new StringDictionary();
+
+    private SessionCatalog() {}
+
+    /**
+     * Adds every name from the database lookup tables to the catalog.
+     * @param conn any connection to a migrated database
+     * @throws SQLException if the tables cannot be read
+     */
+    public static void load(Connection conn) throws SQLException {
+        load(conn, "SELECT name FROM exercises ORDER BY id", EXERCISES);
+        load(conn, "SELECT name FROM muscles ORDER BY id", MUSCLES);
+    }
+
+    private static void load(Connection conn, String sql, StringDictionary dict) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) dict.code(rs.getString(1));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package gym;
+
+/**
+ * One change to the stored sessions, sent to change listeners after the
+ * write has been committed.
+ *
+ * @param type     what happened
+ * @param id       the session id (0 for RELOAD)
+ * @param row      the new values for INSERT and UPDATE, null otherwise
+ * @param external true if another program (or connection) made the change
+ */
+public record SessionChange(Type type, int id, SessionRecord row, boolean external) {
+
+    /** Kinds of change. */
+    public enum Type {
+        /** A new session. */
+        INSERT,
+        /** New values for an existing session. */
+        UPDATE,
+        /** A session was removed. */
+        DELETE,
+        /** Too much changed to list row by row (for example an import); re-read everything. */
+        RELOAD
+    }
+
+    static SessionChange inserted(WorkoutSession s) {
+        return new SessionChange(Type.INSERT, s.id, SessionRecord.of(s), false);
+    }
+
+    static SessionChange updated(WorkoutSession s) {
+        return new SessionChange(Type.UPDATE, s.id, SessionRecord.of(s), false);
+    }
+
+    static SessionChange deleted(int id) {
+        return new SessionChange(Type.DELETE, id, null, false);
+    }
+
+    static SessionChange reload(boolean external) {
+        return new SessionChange(Type.RELOAD, 0, null, external);
+    }
+}
@@ -0,0 +1,443 @@
+package gym;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes a streaming read of the workouts table: which columns to
+ * read, which rows to keep (filters run in SQL, not in Java) and how many
+ * rows the driver fetches at a time.
+ *
+ * Example:
+ * <pre>
+ * new SessionQuery().exercises(List.of("Bench Press", "Squat")).dateRange("2025-01-01", "2025-12-31")
+ *         .weightRange(135.0, null).orderBy(Sort.WEIGHT, true).limit(100)
+ *         .columns(Column.DATE, Column.REPS, Column.WEIGHT)
+ * </pre>
+ *
+ * A text filter (text("bench pr")) is answered by the workouts_fts
+ * full-text index: every typed word must start a word of the exercise,
+ * muscle group or notes. Stores without SQL use matches() and
+ * recordOrder() instead.
+ *
+ * Queries with the same filters switched on (whatever their values)
+ * share one SQL text, built once and kept in a small cache; exercise and
+ * muscle lists are padded to 1, 2, 4, 8... values for that. Since the
+ * text is the same, DBHelper's connections can reuse the prepared
+ * statement too.
+ */
+public class SessionQuery {
+
+    /** Columns that can be read. ID is always read. */
+    public enum Column {
+        ID("id"), DATE("date"), EXERCISE("exercise"), MUSCLE("muscle"), SETS("sets"),
+        REPS("reps"), WEIGHT("weight"), DURATION("duration"), RPE("rpe"), NOTES("notes");
+
+        /** Column name in the database. */
+        public final String sql;
+
+        Column(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /** Row orders. Rows that tie are in id order. */
+    public enum Sort {
+        ID("w.id"), DATE("w.epoch_day"), WEIGHT("w.weight"), RPE("w.rpe"),
+        E1RM(SchemaMigrator.E1RM_SQL.replace("weight", "w.weight").replace("reps", "w.reps"));
+
+        /** SQL expression sorted on. */
+        final String sql;
+
+        Sort(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /** Max number of different SQL texts kept. */
+    static final int MAX_SHAPES = 256;
+
+    // SQL text by query shape (see shapeKey())
+    private static final ConcurrentHashMap<String, String> SHAPES = new ConcurrentHashMap<>();
+
+    private EnumSet<Column> columns = EnumSet.allOf(Column.class);
+    private int fetchSize = 1000;
+    private List<String> exercises;
+    private List<String> muscles;
+    private Integer fromDay;
+    private Integer toDay;
+    private Long afterId;
+    private String text;
+    private Integer minRpe;
+    private Integer maxRpe;
+    private Double minWeight;
+    private Double maxWeight;
+    private Sort sort = Sort.ID;
+    private boolean descending;
+    private int limit;
+
+    /**
+     * Reads only these columns (ID is always included).
+     * Fields for other columns are left empty in the returned sessions.
+     * @param cols the columns to read
+     * @return this query
+     */
+    public SessionQuery columns(Column... cols) {
+        columns = EnumSet.of(Column.ID, cols);
+        return this;
+    }
+
+    /**
+     * @param rows rows the driver fetches per round trip
+     * @return this query
+     */
+    public SessionQuery fetchSize(int rows) {
+        fetchSize = Math.max(1, rows);
+        return this;
+    }
+
+    /**
+     * @param name only rows for this exercise
+     * @return this query
+     */
+    public SessionQuery exercise(String name) {
+        exercises = name == null ? null : List.of(name);
+        return this;
+    }
+
+    /**
+     * @param names only rows for one of these exercises (null or empty for all)
+     * @return this query
+     */
+    public SessionQuery exercises(Collection<String> names) {
+        exercises = names == null || names.isEmpty() ? null : new ArrayList<>(new TreeSet<>(names));
+        return this;
+    }
+
+    /**
+     * @param name only rows for this muscle group
+     * @return this query
+     */
+    public SessionQuery muscle(String name) {
+        muscles = name == null ? null : List.of(name);
+        return this;
+    }
+
+    /**
+     * @param names only rows for one of these muscle groups (null or empty for all)
+     * @return this query
+     */
+    public SessionQuery muscles(Collection<String> names) {
+        muscles = names == null || names.isEmpty() ? null : new ArrayList<>(new TreeSet<>(names));
+        return this;
+    }
+
+    /**
+     * Only rows between two dates (both inclusive). Either may be null.
+     * @param from first date (yyyy-mm-dd)
+     * @param to   last date (yyyy-mm-dd)
+     * @return this query
+     * @throws IllegalArgumentException if a date is not a real date
+     */
+    public SessionQuery dateRange(String from, String to) {
+        fromDay = toDay(from);
+        toDay = toDay(to);
+        return this;
+    }
+
+    /**
+     * @param id only rows with a larger id (for resuming a read)
+     * @return this query
+     */
+    public SessionQuery afterId(long id) {
+        afterId = id;
+        return this;
+    }
+
+    /**
+     * Only rows where every word typed starts a word of the exercise,
+     * muscle group or notes ("ben pr" finds "Bench Press ... new PR").
+     * Case does not matter. Blank text turns the filter off.
+     * @param words the words typed
+     * @return this query
+     */
+    public SessionQuery text(String words) {
+        text = words == null || words.isBlank() ? null : words;
+        return this;
+    }
+
+    /**
+     * Only rows with an RPE in a range (both inclusive). Either may be null.
+     * @param min lowest RPE
+     * @param max highest RPE
+     * @return this query
+     */
+    public SessionQuery rpeRange(Integer min, Integer max) {
+        minRpe = min;
+        maxRpe = max;
+        return this;
+    }
+
+    /**
+     * Only rows with a weight in a range (both inclusive). Either may be null.
+     * @param min lowest weight (lbs)
+     * @param max highest weight (lbs)
+     * @return this query
+     */
+    public SessionQuery weightRange(Double min, Double max) {
+        minWeight = min;
+        maxWeight = max;
+        return this;
+    }
+
+    /**
+     * Sets the row order (id order if never called). afterId() is still
+     * a filter on the id, so only resume id-ordered reads with it.
+     * @param by         what to sort on
+     * @param descending true for largest first
+     * @return this query
+     */
+    public SessionQuery orderBy(Sort by, boolean descending) {
+        sort = by == null ? Sort.ID : by;
+        this.descending = descending;
+        return this;
+    }
+
+    /** @return true for plain id order (smallest first) */
+    public boolean isDefaultOrder() {
+        return sort == Sort.ID && !descending;
+    }
+
+    /**
+     * The order as a comparator, for stores that cannot run SQL and for
+     * merging results from several files.
+     * @return compares rows the way ORDER BY does
+     */
+    public Comparator<SessionRecord> recordOrder() {
+        Comparator<SessionRecord> c;
+        switch (sort) {
+            case DATE: c = Comparator.comparingInt(SessionRecord::epochDay); break;
+            case WEIGHT: c = Comparator.comparingDouble(SessionRecord::weightLbs); break;
+            case RPE: c = Comparator.comparingInt(SessionRecord::rpe); break;
+            case E1RM: c = Comparator.comparingDouble(r -> r.weightLbs() * (1 + r.reps() / 30.0)); break;
+            default: c = Comparator.comparingInt(SessionRecord::id);
+        }
+        if (descending) c = c.reversed();
+        return c.thenComparingInt(SessionRecord::id);
+    }
+
+    /**
+     * @param rows max rows to read (0 for no limit)
+     * @return this query
+     */
+    public SessionQuery limit(int rows) {
+        limit = Math.max(0, rows);
+        return this;
+    }
+
+    /** @return max rows to read (0 for no limit) */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return true if no filter is set (every row matches) */
+    public boolean isEmpty() {
+        return exercises == null && muscles == null && fromDay == null && toDay == null
+                && afterId == null && text == null && minRpe == null && maxRpe == null
+                && minWeight == null && maxWeight == null;
+    }
+
+    /** @return rows fetched per round trip */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /** @return the columns that will be read, in select order */
+    public List<Column> getColumns() {
+        return new ArrayList<>(columns);
+    }
+
+    private static Integer toDay(String date) {
+        if (date == null || date.isBlank()) return null;
+        Integer d = SessionService.epochDay(date);
+        if (d == null) throw new IllegalArgumentException("Not a date: " + date);
+        return d;
+    }
+
+    /**
+     * Checks one row against the filters, for stores that cannot run SQL.
+     * Gives the same answer as the SQL filter (the columns setting and
+     * the limit are not part of it).
+     * @param r the row
+     * @return true if the query keeps it
+     */
+    public boolean matches(SessionRecord r) {
+        if (exercises != null && !exercises.contains(r.exerciseName())) return false;
+        if (muscles != null && !muscles.contains(r.muscleGroup())) return false;
+        if (fromDay != null && (r.epochDay() == SessionRecord.NO_DAY || r.epochDay() < fromDay)) return false;
+        if (toDay != null && (r.epochDay() == SessionRecord.NO_DAY || r.epochDay() > toDay)) return false;
+        if (afterId != null && r.id() <= afterId) return false;
+        if (minRpe != null && r.rpe() < minRpe) return false;
+        if (maxRpe != null && r.rpe() > maxRpe) return false;
+        if (minWeight != null && r.weightLbs() < minWeight) return false;
+        if (maxWeight != null && r.weightLbs() > maxWeight) return false;
+        if (text != null) {
+            List<String> words = words(r.exerciseName() + " " + r.muscleGroup() + " " + (r.notes() == null ? "" : r.notes()));
+            for (String prefix : words(text)) {
+                boolean found = false;
+                for (String w : words) {
+                    if (w.startsWith(prefix)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turns typed text into an FTS5 query: each word becomes a quoted
+     * prefix search and all of them must match.
+     * @param text the words typed
+     * @return e.g. "bench"* "pr"* (empty if there are no words)
+     */
+    static String matchExpression(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (String w : words(text)) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('"').append(w).append("\"*");
+        }
+        return sb.toString();
+    }
+
+    // lower-case words, split the same way as the FTS5 unicode61 tokenizer (letters and digits)
+    private static List<String> words(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) start = i;
+            if (!inWord && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Builds the SELECT statement. Values are collected in params
+     * in the same order as the ? placeholders.
+     * @param params filled with the parameter values
+     * @return the SQL
+     */
+    String toSql(List<Object> params) {
+        StringBuilder cols = new StringBuilder();
+        for (Column c : columns) {
+            if (cols.length() > 0) cols.append(", ");
+            cols.append(c.sql);
+        }
+        return toSql(params, cols.toString());
+    }
+
+    /**
+     * Builds the SELECT statement for a given column list.
+     * With a text filter the full-text index drives the query: it returns
+     * matches in id order, so the LIMIT stops it early.
+     * The text comes from the shape cache when a query of the same
+     * shape was built before; only the parameters are new.
+     * @param params filled with the parameter values
+     * @param select column names, comma separated (e.g. SessionService.RECORD_COLUMNS)
+     * @return the SQL
+     */
+    String toSql(List<Object> params, String select) {
+        String match = text == null ? "" : matchExpression(text);
+        String key = shapeKey(select, match);
+        String sql = SHAPES.get(key);
+        if (sql != null) {
+            build(null, params, select, match);
+            return sql;
+        }
+        StringBuilder sb = new StringBuilder();
+        build(sb, params, select, match);
+        sql = sb.toString();
+        if (SHAPES.size() >= MAX_SHAPES) SHAPES.clear();
+        SHAPES.put(key, sql);
+        return sql;
+    }
+
+    /** @return number of SQL texts in the shape cache */
+    static int cachedShapes() {
+        return SHAPES.size();
+    }
+
+    // which filters are on, the padded list sizes, the order and the columns: same key, same SQL
+    private String shapeKey(String select, String match) {
+        int flags = (match.isEmpty() ? 0 : 1) | (fromDay != null ? 2 : 0) | (toDay != null ? 4 : 0)
+                | (minRpe != null ? 8 : 0) | (maxRpe != null ? 16 : 0) | (minWeight != null ? 32 : 0)
+                | (maxWeight != null ? 64 : 0) | (afterId != null ? 128 : 0) | (limit > 0 ? 256 : 0)
+                | (descending ? 512 : 0);
+        return flags + "/" + padded(exercises) + "/" + padded(muscles) + "/" + sort.ordinal() + "/" + select;
+    }
+
+    // list size rounded up to a power of two (0 when the filter is off)
+    private static int padded(List<String> values) {
+        if (values == null) return 0;
+        return values.size() == 1 ? 1 : Integer.highestOneBit(values.size() - 1) << 1;
+    }
+
+    /**
+     * Adds the parameters in placeholder order and, if sql is not null,
+     * the SQL text; one method for both so they always line up.
+     */
+    private void build(StringBuilder sql, List<Object> params, String select, String match) {
+        String order = match.isEmpty() ? "w.id" : "f.rowid";
+        if (sql != null) {
+            sql.append("SELECT ");
+            String[] names = select.split(",");
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append("w.").append(names[i].trim());
+            }
+            // CROSS JOIN keeps the index outermost; with another sort order SQLite would otherwise
+            // scan workouts and run the MATCH once per row
+            sql.append(match.isEmpty() ? " FROM workouts w" : " FROM workouts_fts f CROSS JOIN workouts w ON w.id = f.rowid");
+        }
+        List<String> where = new ArrayList<>();
+        if (!match.isEmpty()) { where.add("workouts_fts MATCH ?"); params.add(match); }
+        if (exercises != null) where.add(in("w.exercise", exercises, params));
+        if (muscles != null) where.add(in("w.muscle", muscles, params));
+        if (fromDay != null) { where.add("w.epoch_day >= ?"); params.add(fromDay); }
+        if (toDay != null) { where.add("w.epoch_day <= ?"); params.add(toDay); }
+        if (minRpe != null) { where.add("w.rpe >= ?"); params.add(minRpe); }
+        if (maxRpe != null) { where.add("w.rpe <= ?"); params.add(maxRpe); }
+        if (minWeight != null) { where.add("w.weight >= ?"); params.add(minWeight); }
+        if (maxWeight != null) { where.add("w.weight <= ?"); params.add(maxWeight); }
+        if (afterId != null) { where.add(order + " > ?"); params.add(afterId); }
+        if (limit > 0) params.add(limit);
+        if (sql == null) return;
+
+        if (!where.isEmpty()) sql.append(" WHERE ").append(String.join(" AND ", where));
+        String dir = descending ? " DESC" : "";
+        if (sort == Sort.ID) sql.append(" ORDER BY ").append(order).append(dir);
+        else sql.append(" ORDER BY ").append(sort.sql).append(dir).append(", ").append(order);
+        if (limit > 0) sql.append(" LIMIT ?");
+    }
+
+    // "col IN (?, ?, ...)" padded with the last value to the shape's size
+    private static String in(String column, List<String> values, List<Object> params) {
+        int n = padded(values);
+        for (int i = 0; i < n; i++) params.add(values.get(Math.min(i, values.size() - 1)));
+        return n == 1 ? column + " = ?" : column + " IN (" + String.join(", ", Collections.nCopies(n, "?")) + ")";
+    }
+}
@@ -0,0 +1,71 @@
+package gym;
+
+import java.time.LocalDate;
+
+/**
+ * Compact, read-only form of a workout session.
+ *
+ * The exercise and muscle group are codes from SessionCatalog and the
+ * date is a day number, so a record is one small object instead of a
+ * WorkoutSession plus three or four strings. Used for the rows the
+ * table keeps in memory.
+ *
+ * @param id          session id
+ * @param epochDay    days since 1970-01-01, or NO_DAY if the stored date is not a real date
+ * @param exercise    code in SessionCatalog.EXERCISES
+ * @param muscle      code in SessionCatalog.MUSCLES
+ * @param sets        number of sets
+ * @param reps        reps per set
+ * @param weightLbs   weight in pounds
+ * @param durationMin duration in minutes
+ * @param rpe         RPE (1–10)
+ * @param notes       optional notes (may be null)
+ */
+public record SessionRecord(int id, int epochDay, int exercise, int muscle, int sets, int reps,
+                            double weightLbs, int durationMin, int rpe, String notes) {
+
+    /** epochDay value for rows whose date could not be read. */
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    /**
+     * @param s a session
+     * @return the same session as a record (new names are added to the catalog)
+     */
+    public static SessionRecord of(WorkoutSession s) {
+        Integer day = s.date == null ? null : SessionService.epochDay(s.date);
+        return new SessionRecord(s.id, day == null ? NO_DAY : day,
+                SessionCatalog.EXERCISES.code(s.exerciseName), SessionCatalog.MUSCLES.code(s.muscleGroup),
+                s.sets, s.reps, s.weightLbs, s.durationMin, s.rpe, s.notes);
+    }
+
+    /** @return the date as yyyy-mm-dd (empty if it is not a real date) */
+    public String date() {
+        return epochDay == NO_DAY ? "" : LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    /** @return the exercise name */
+    public String exerciseName() {
+        return SessionCatalog.EXERCISES.name(exercise);
+    }
+
+    /** @return the muscle group name */
+    public String muscleGroup() {
+        return SessionCatalog.MUSCLES.name(muscle);
+    }
+
+    /** @return a new WorkoutSession with the same values */
+    public WorkoutSession toSession() {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = date();
+        s.exerciseName = exerciseName();
+        s.muscleGroup = muscleGroup();
+        s.sets = sets;
+        s.reps = reps;
+        s.weightLbs = weightLbs;
+        s.durationMin = durationMin;
+        s.rpe = rpe;
+        s.notes = notes;
+        return s;
+    }
+}
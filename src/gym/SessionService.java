@@ -1,164 +1,1260 @@
 package gym;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Handles all database operations for the workout tracker.
  * This includes reading, adding, updating, deleting records,
  * and a helper method for calculating estimated 1RM values.
  */
-public class SessionService {
+public class SessionService implements WorkoutStore {
+
+    /** Insert statement shared by add() and the CSV importer. */
+    static final String INSERT_SQL = "INSERT INTO workouts (id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes, epoch_day) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Same as INSERT_SQL but rows with an existing id are skipped instead of failing. */
+    static final String INSERT_OR_IGNORE_SQL = INSERT_SQL.replaceFirst("INSERT", "INSERT OR IGNORE");
+
+    /**
+     * Replaces every column of one row, matched by id, and bumps its
+     * version; only if the version parameter is 0 or the row's version
+     * (see bindUpdate()).
+     */
+    static final String UPDATE_SQL = "UPDATE workouts SET date=?, exercise=?, muscle=?, sets=?, reps=?, weight=?, duration=?, rpe=?, notes=?, epoch_day=?, "
+            + "version=version+1 WHERE id=? AND ? IN (0, version)";
+
+    /** Best Epley estimate for one exercise since a day, from the per-day totals. */
+    static final String BEST_E1RM_SQL = """
+            SELECT MAX(best_e1rm) FROM daily_stats
+            WHERE exercise = ? AND epoch_day >= ?
+            """;
+
+    /** Totals for one exercise over a closed day range, from the per-day totals. */
+    static final String ROLLING_SQL = """
+            SELECT MAX(best_e1rm), SUM(volume), SUM(set_count) FROM daily_stats
+            WHERE exercise = ? AND epoch_day BETWEEN ? AND ?
+            """;
+
+    /** Best e1RM of every training day of one exercise, from the per-day totals. */
+    static final String TREND_DAYS_SQL = """
+            SELECT epoch_day, best_e1rm FROM daily_stats
+            WHERE exercise = ? ORDER BY epoch_day
+            """;
+
+    /** Volume of every week (starting on Monday) of one exercise, from the per-day totals. */
+    static final String TREND_WEEKS_SQL = """
+            SELECT epoch_day - ((epoch_day + 3) % 7 + 7) % 7 AS week, SUM(volume) FROM daily_stats
+            WHERE exercise = ? GROUP BY week ORDER BY week
+            """;
+
+    /** Per day and muscle group sums for the training-load report (one full scan, grouped in SQLite). */
+    static final String LOAD_DAYS_SQL = """
+            SELECT epoch_day, muscle, COUNT(*), SUM(sets), SUM(sets * reps * weight),
+                   SUM(CASE WHEN rpe > 0 THEN rpe ELSE 0 END), SUM(rpe > 0), SUM(duration), SUM(duration * rpe)
+            FROM workouts WHERE epoch_day IS NOT NULL GROUP BY epoch_day, muscle
+            """;
+
+    /** Every column of a session (and its version), in the order readRow() expects. */
+    static final String ALL_COLUMNS = "id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes, version";
+
+    /** Columns read into a SessionRecord, in the order readRecord() expects. */
+    static final String RECORD_COLUMNS = "id, epoch_day, exercise, muscle, sets, reps, weight, duration, rpe, notes";
+
+    /** Primary key lookup used by existsId. */
+    static final String EXISTS_SQL = "SELECT 1 FROM workouts WHERE id=?";
+
+    /** Primary key delete used by deleteById: id, then the version it must have (0 for any). */
+    static final String DELETE_SQL = "DELETE FROM workouts WHERE id=? AND ? IN (0, version)";
+
+    /** Times a write is tried again after SQLITE_BUSY (after the busy timeout ran out). */
+    static final int BUSY_RETRIES = 6;
+
+    /** First backoff before a retry (ms); doubles each time, up to MAX_BACKOFF_MS. */
+    static final long BASE_BACKOFF_MS = 5;
+
+    /** Longest backoff before a retry (ms). */
+    static final long MAX_BACKOFF_MS = 500;
+
+    /** Newest change_log entries kept when the log is trimmed. */
+    static final int CHANGE_LOG_KEEP = 10_000;
+
+    /** Most change_log entries kept for a startup snapshot that has not caught up. */
+    static final int CHANGE_LOG_MAX = 1_000_000;
+
+    /** Writes between two change_log trims (it is also trimmed at connect and after an import). */
+    static final int CHANGE_LOG_TRIM_EVERY = 1_000;
+
+    /** Default number of sessions kept in the cache. */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
 
     /** Helper class that manages the SQLite connection. */
     private final DBHelper db;
 
+    /** Recently used sessions by id (written through on every change). */
+    private final SessionCache cache;
+
+    /** Every id in the table, loaded at connect time. */
+    private final IdBitmap ids = new IdBitmap();
+
+    /** False until the id bitmap has been loaded for the current file. */
+    private volatile boolean idsLoaded;
+
+    /** Told about every committed change (ours and, when watching, other programs'). */
+    private final List<Consumer<SessionChange>> listeners = new CopyOnWriteArrayList<>();
+
+    /** Polls for writes by other programs (null when not watching). */
+    private volatile DataVersionWatcher watcher;
+
+    /** Poll interval for the watcher in ms (0 = do not watch). */
+    private volatile long watchIntervalMs;
+
+    /** change_log seqs written by our own single-row writes, so the watcher skips them. */
+    private final Set<Long> ownSeqs = ConcurrentHashMap.newKeySet();
+
+    /** change_log seqs written by the last import (first, last). */
+    private volatile long[] ownImport = {1, 0};
+
+    /** Seq of the file's startup snapshot; the log is kept back to it (0 = none). */
+    private volatile long snapshotSeq;
+
+    /** Writes since the change_log was last trimmed. */
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    /** Timing, row and error counts for every operation. */
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final OpStats listAllStats = metrics.op("listAll");
+    private final OpStats countStats = metrics.op("countAll");
+    private final OpStats pageStats = metrics.op("listAfter");
+    private final OpStats offsetStats = metrics.op("idAtOffset");
+    private final OpStats snapshotStats = metrics.op("loadSnapshot");
+    private final OpStats addStats = metrics.op("add");
+    private final OpStats findStats = metrics.op("findById");
+    private final OpStats importStats = metrics.op("importCsv");
+    private final OpStats updateStats = metrics.op("updateSession");
+    private final OpStats deleteStats = metrics.op("deleteById");
+    private final OpStats existsStats = metrics.op("existsId");
+    private final OpStats bestStats = metrics.op("bestE1RMInLast7Days");
+    private final OpStats rollingStatsOp = metrics.op("rollingStats");
+    private final OpStats searchStats = metrics.op("search");
+    private final OpStats writeAllStats = metrics.op("writeAll");
+    private final OpStats trendStats = metrics.op("trend");
+    private final OpStats loadStats = metrics.op("trainingLoad");
+    private final OpStats conflictStats = metrics.op("write.conflict");
+    private final OpStats retryStats = metrics.op("write.retry");
+
     /** Creates a new service with a DBHelper. */
     public SessionService() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new service with a custom cache size.
+     * @param cacheSize max sessions kept in memory for findById
+     */
+    public SessionService(int cacheSize) {
         db = new DBHelper();
+        db.setMetrics(metrics);
+        cache = new SessionCache(cacheSize);
     }
 
     /**
-     * Sets the database file path so the app can connect.
+     * Per-operation latency histograms, call/error counts (with the last
+     * exception) and rows read/written. Use registerMBeans() on the result
+     * to see them in JConsole.
+     * @return the metrics for this service
+     */
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the database file path so the app can connect, and upgrades
+     * the file to the current schema (see SchemaMigrator) if needed.
      * @param path full path to the .db file
+     * @throws IllegalArgumentException if the file cannot be opened or upgraded
      */
     public void connect(String path) {
+        stopWatching();
         db.setPath(path);
+        try (Connection conn = db.connect()) {
+            SchemaMigrator.migrate(conn);
+            SessionCatalog.load(conn);
+            snapshotSeq = StartupSnapshot.seqOf(StartupSnapshot.fileFor(path));
+            trimChangeLog(conn);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Could not upgrade database: " + e.getMessage());
+        }
+        cache.clear();
+        loadIds();
+        startWatching();
+    }
+
+    /** @return the open database file ("" before connect()) */
+    public String getPath() {
+        return db.getPath();
+    }
+
+    /**
+     * Sets how connections trade safety for speed (see DurabilityProfile).
+     * Open connections are closed; the next call opens new ones with it.
+     * @param profile the profile to use
+     */
+    public void setDurability(DurabilityProfile profile) {
+        db.setDurability(profile);
+    }
+
+    /**
+     * Turns on (or off) watching the file for writes by other programs.
+     * Their changes clear the matching cache entries and are sent to the
+     * change listeners with external = true. Takes effect right away if a
+     * file is open, otherwise at the next connect().
+     * @param ms poll interval in milliseconds (0 to stop watching)
+     */
+    public void setWatchInterval(long ms) {
+        watchIntervalMs = ms;
+        if (!db.getPath().isEmpty()) {
+            stopWatching();
+            startWatching();
+        }
+    }
+
+    @Override
+    public void addChangeListener(Consumer<SessionChange> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<SessionChange> listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(SessionChange c) {
+        for (Consumer<SessionChange> l : listeners) {
+            try {
+                l.accept(c);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void startWatching() {
+        if (watchIntervalMs <= 0 || watcher != null) return;
+        ownSeqs.clear();
+        DataVersionWatcher w = new DataVersionWatcher(db.getPath(), this::isOwnChange, new DataVersionWatcher.Listener() {
+            @Override
+            public void rowsChanged(Map<Integer, Character> ops) {
+                externalRowsChanged(ops);
+            }
+
+            @Override
+            public void everythingChanged() {
+                cache.clear();
+                loadIds();
+                fire(SessionChange.reload(true));
+            }
+        });
+        try {
+            w.start(watchIntervalMs);
+            watcher = w;
+        } catch (SQLException e) {
+            w.close();
+            System.err.println("Warning: cannot watch for outside changes: " + e.getMessage());
+        }
+    }
+
+    private synchronized void stopWatching() {
+        if (watcher == null) return;
+        watcher.close();
+        watcher = null;
+    }
+
+    private boolean isOwnChange(long seq) {
+        long[] imp = ownImport;
+        return ownSeqs.remove(seq) || (seq >= imp[0] && seq <= imp[1]);
+    }
+
+    // another program changed these ids: drop them from the cache and re-read them
+    private void externalRowsChanged(Map<Integer, Character> ops) {
+        for (Map.Entry<Integer, Character> e : ops.entrySet()) {
+            int id = e.getKey();
+            cache.remove(id);
+            WorkoutSession s = null;
+            if (e.getValue() != 'D') {
+                ids.add(id);
+                s = findById(id);
+            }
+            if (s == null) {
+                ids.remove(id);
+                fire(new SessionChange(SessionChange.Type.DELETE, id, null, true));
+            } else {
+                SessionChange.Type type = e.getValue() == 'I' ? SessionChange.Type.INSERT : SessionChange.Type.UPDATE;
+                fire(new SessionChange(type, id, SessionRecord.of(s), true));
+            }
+        }
+    }
+
+    /** JDBC work that returns a value. */
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Runs write statements. Several statements (many = true) always run as
+     * one transaction. While the watcher is on, even a single write and the
+     * change_log rows it makes are one transaction, and their seqs are
+     * remembered so the watcher does not report our own change back to us.
+     *
+     * If another program holds the file past the busy timeout (or SQLite
+     * answers SQLITE_BUSY at once, as it does when a read transaction
+     * cannot become a write), the work is rolled back and run again after
+     * a random wait that doubles each time, up to BUSY_RETRIES times. The
+     * randomness keeps writers that collided from retrying in step.
+     * @return what the work returned
+     */
+    private <T> T write(Connection conn, boolean many, SqlWork<T> work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = writeOnce(conn, many, work);
+                if (writesSinceTrim.incrementAndGet() >= CHANGE_LOG_TRIM_EVERY) {
+                    writesSinceTrim.set(0);
+                    trimQuietly(conn);
+                }
+                return result;
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= BUSY_RETRIES) throw e;
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * @param e an error from the driver
+     * @return true for SQLITE_BUSY or SQLITE_LOCKED (extended codes share the low byte)
+     */
+    static boolean isBusy(SQLException e) {
+        int code = e.getErrorCode() & 0xFF;
+        return code == 5 || code == 6;
+    }
+
+    // waits between half and all of BASE_BACKOFF_MS × 2^attempt (capped)
+    private void backoff(int attempt) throws SQLException {
+        long t0 = System.nanoTime();
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry a write.", e);
+        }
+        retryStats.success(t0, 0, 0);
+    }
+
+    private <T> T writeOnce(Connection conn, boolean many, SqlWork<T> work) throws SQLException {
+        // during an import every new seq is ours anyway (see importCsv)
+        boolean track = watcher != null && ownImport[1] != Long.MAX_VALUE;
+        if (!many && !track) return work.run();
+        conn.setAutoCommit(false);
+        long before = track ? DataVersionWatcher.maxSeq(conn) : 0;
+        T result = work.run();
+        long after = track ? DataVersionWatcher.maxSeq(conn) : 0;
+        for (long seq = before + 1; seq <= after; seq++) ownSeqs.add(seq);
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            for (long seq = before + 1; seq <= after; seq++) ownSeqs.remove(seq);
+            throw e;
+        }
+        conn.setAutoCommit(true);
+        return result;
+    }
+
+    /**
+     * Reads every id into the id bitmap (an index-only scan).
+     * If it fails, existsId() falls back to asking the database.
+     */
+    private void loadIds() {
+        idsLoaded = false;
+        synchronized (ids) {
+            ids.clear();
+            try (Connection conn = db.connectRead();
+                 PreparedStatement ps = conn.prepareStatement("SELECT id FROM workouts");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+                idsLoaded = true;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** @return the session cache (for its hit/miss/eviction counters) */
+    public SessionCache getCache() {
+        return cache;
+    }
+
+    /** @return number of ids currently known to the id bitmap */
+    public int knownIdCount() {
+        return ids.size();
+    }
+
+    /**
+     * Turns a yyyy-mm-dd date into days since 1970-01-01.
+     * @param date the date text
+     * @return the day number, or null if the date is not a real date
+     */
+    static Integer epochDay(String date) {
+        try {
+            return (int) LocalDate.parse(date.trim()).toEpochDay();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // epoch_day parameter; null lets the database trigger work it out
+    private static void setEpochDay(PreparedStatement ps, int index, String date) throws SQLException {
+        Integer day = epochDay(date);
+        if (day == null) ps.setNull(index, Types.INTEGER);
+        else ps.setInt(index, day);
+    }
+
+    /**
+     * Closes the pooled database connections.
+     * Called when the program exits.
+     */
+    public void close() {
+        stopWatching();
+        db.close();
     }
 
     /**
      * Loads all workout rows from the database.
+     * For big tables prefer stream() or forEach(), which do not keep every row in memory.
      * @return a list of all workout sessions
      */
     public ArrayList<WorkoutSession> listAll() {
+        long t0 = System.nanoTime();
         ArrayList<WorkoutSession> list = new ArrayList<>();
-        String sql = "SELECT * FROM workouts ORDER BY id";
 
-        try (Connection conn = db.connect();
+        try {
+            forEach(new SessionQuery(), list::add);
+            listAllStats.success(t0, list.size(), 0);
+        } catch (Exception e) {
+            listAllStats.failure(t0, e);
+            e.printStackTrace();
+        }
+
+        return list;
+    }
+
+    /**
+     * Streams rows over a live database cursor, so memory use stays the same
+     * however many rows there are. Filters in the query run in SQL.
+     * The stream holds a pooled connection until it is closed, so always
+     * use it in a try-with-resources block:
+     * <pre>
+     * try (Stream&lt;WorkoutSession&gt; rows = service.stream(query)) { ... }
+     * </pre>
+     * @param q what to read
+     * @return the rows in id order
+     * @throws SQLException if the query cannot be started
+     */
+    public Stream<WorkoutSession> stream(SessionQuery q) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = q.toSql(params);
+        List<SessionQuery.Column> cols = q.getColumns();
+
+        Connection conn = db.connectRead();
+        PreparedStatement ps = null;
+        ResultSet rs;
+        try {
+            ps = conn.prepareStatement(sql);
+            ps.setFetchSize(q.getFetchSize());
+            for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+            rs = ps.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            if (ps != null) ps.close();
+            conn.close();
+            throw e;
+        }
+
+        PreparedStatement stmt = ps;
+        Spliterator<WorkoutSession> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super WorkoutSession> action) {
+                try {
+                    if (!rs.next()) return false;
+                    action.accept(readColumns(rs, cols));
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Reading workouts failed: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rs.close();
+                stmt.close();
+            } catch (SQLException ignore) {
+                // the connection is handed back below either way
+            } finally {
+                try {
+                    conn.close();
+                } catch (SQLException ignore) {}
+            }
+        });
+    }
+
+    /**
+     * Calls the visitor for every row the query matches, then closes
+     * the cursor (also when the visitor throws).
+     * @param q       what to read
+     * @param visitor gets each row in id order
+     * @return number of rows visited
+     * @throws SQLException if the query fails
+     */
+    public long forEach(SessionQuery q, Consumer<WorkoutSession> visitor) throws SQLException {
+        long[] n = {0};
+        try (Stream<WorkoutSession> rows = stream(q)) {
+            rows.forEach(s -> {
+                visitor.accept(s);
+                n[0]++;
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw e;
+        }
+        return n[0];
+    }
+
+    // reads the projected columns of the current row by position
+    private static WorkoutSession readColumns(ResultSet rs, List<SessionQuery.Column> cols) throws SQLException {
+        WorkoutSession s = new WorkoutSession();
+        int i = 1;
+        for (SessionQuery.Column c : cols) {
+            switch (c) {
+                case ID: s.id = rs.getInt(i); break;
+                case DATE: s.date = rs.getString(i); break;
+                case EXERCISE: s.exerciseName = rs.getString(i); break;
+                case MUSCLE: s.muscleGroup = rs.getString(i); break;
+                case SETS: s.sets = rs.getInt(i); break;
+                case REPS: s.reps = rs.getInt(i); break;
+                case WEIGHT: s.weightLbs = rs.getDouble(i); break;
+                case DURATION: s.durationMin = rs.getInt(i); break;
+                case RPE: s.rpe = rs.getInt(i); break;
+                case NOTES: s.notes = rs.getString(i); break;
+            }
+            i++;
+        }
+        return s;
+    }
+
+    /**
+     * Calls the visitor for every row, in id order (for writing a StartupSnapshot).
+     * @param visitor gets each row
+     * @throws SQLException if the query fails
+     */
+    void forEachRecord(Consumer<SessionRecord> visitor) throws SQLException {
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement("SELECT " + RECORD_COLUMNS + " FROM workouts ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) visitor.accept(readRecord(rs));
+        }
+    }
+
+    /**
+     * Finds the rows written since a change_log seq and reads them as
+     * they are now.
+     * @param seq     a seq from changeSeq()
+     * @param maxRows give up above this many changed ids
+     * @return id → the row now, or null if it was deleted; null if the
+     *         log no longer reaches back to seq or too many rows changed
+     * @throws SQLException if a query fails
+     */
+    Map<Integer, SessionRecord> changedSince(long seq, int maxRows) throws SQLException {
+        try (Connection conn = db.connectRead()) {
+            ArrayList<Integer> changed = new ArrayList<>();
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT MIN(seq) FROM change_log")) {
+                // the entries right after seq were trimmed: the changes cannot be known
+                if (rs.next() && rs.getLong(1) > seq + 1) return null;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT DISTINCT row_id FROM change_log WHERE seq > ? LIMIT ?")) {
+                ps.setLong(1, seq);
+                ps.setInt(2, maxRows + 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) changed.add(rs.getInt(1));
+                }
+            }
+            if (changed.size() > maxRows) return null;
+
+            Map<Integer, SessionRecord> out = new HashMap<>();
+            for (int id : changed) out.put(id, null);
+            for (int from = 0; from < changed.size(); from += 500) {
+                List<Integer> part = changed.subList(from, Math.min(changed.size(), from + 500));
+                String marks = String.join(",", Collections.nCopies(part.size(), "?"));
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT " + RECORD_COLUMNS + " FROM workouts WHERE id IN (" + marks + ")")) {
+                    for (int i = 0; i < part.size(); i++) ps.setInt(i + 1, part.get(i));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            SessionRecord r = readRecord(rs);
+                            out.put(r.id(), r);
+                        }
+                    }
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Reads the whole table into a columnar snapshot for analytics.
+     * One streaming pass; only the analytics columns are read, by index.
+     * Rows without a valid date are skipped.
+     * @return the snapshot (empty if the query fails)
+     */
+    public ColumnarSnapshot loadSnapshot() {
+        long t0 = System.nanoTime();
+        ColumnarSnapshot snap = new ColumnarSnapshot(countAll());
+        String sql = "SELECT id, epoch_day, exercise, muscle, sets, reps, weight, duration, rpe "
+                + "FROM workouts WHERE epoch_day IS NOT NULL ORDER BY id";
+
+        try (Connection conn = db.connectRead();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
-                WorkoutSession s = new WorkoutSession();
-                s.id = rs.getInt("id");
-                s.date = rs.getString("date");
-                s.exerciseName = rs.getString("exercise");
-                s.muscleGroup = rs.getString("muscle");
-                s.sets = rs.getInt("sets");
-                s.reps = rs.getInt("reps");
-                s.weightLbs = rs.getDouble("weight");
-                s.durationMin = rs.getInt("duration");
-                s.rpe = rs.getInt("rpe");
-                s.notes = rs.getString("notes");
-                list.add(s);
+                snap.add(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4),
+                        rs.getInt(5), rs.getInt(6), rs.getDouble(7), rs.getInt(8), rs.getInt(9));
+            }
+            snapshotStats.success(t0, snap.size(), 0);
+
+        } catch (Exception e) {
+            snapshotStats.failure(t0, e);
+            e.printStackTrace();
+        }
+
+        snap.trim();
+        return snap;
+    }
+
+    /**
+     * Counts the workout rows.
+     * @return number of rows (0 if the query fails)
+     */
+    public int countAll() {
+        long t0 = System.nanoTime();
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM workouts");
+             ResultSet rs = ps.executeQuery()) {
+            int n = rs.next() ? rs.getInt(1) : 0;
+            countStats.success(t0, 1, 0);
+            return n;
+        } catch (Exception e) {
+            countStats.failure(t0, e);
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Loads one page of rows in id order, starting after a given id.
+     * Uses the primary key (keyset paging) so a page deep in a big table
+     * costs the same as the first page.
+     * @param afterId only rows with a larger id are returned (use Long.MIN_VALUE for the first page)
+     * @param limit   max rows to return
+     * @return the rows, in id order
+     */
+    public ArrayList<WorkoutSession> listAfter(long afterId, int limit) {
+        long t0 = System.nanoTime();
+        ArrayList<WorkoutSession> list = new ArrayList<>(limit);
+        String sql = "SELECT " + ALL_COLUMNS + " FROM workouts WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) list.add(readRow(rs));
+            }
+            pageStats.success(t0, list.size(), 0);
+
+        } catch (Exception e) {
+            pageStats.failure(t0, e);
+            e.printStackTrace();
+        }
+
+        return list;
+    }
+
+    /**
+     * Same as listAfter(), but returns compact records (interned exercise
+     * and muscle codes, day number instead of date text).
+     * @param afterId only rows with a larger id are returned (use Long.MIN_VALUE for the first page)
+     * @param limit   max rows to return
+     * @return the rows, in id order
+     */
+    @Override
+    public ArrayList<SessionRecord> listRecordsAfter(long afterId, int limit) {
+        long t0 = System.nanoTime();
+        ArrayList<SessionRecord> list = new ArrayList<>(limit);
+        String sql = "SELECT " + RECORD_COLUMNS + " FROM workouts WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) list.add(readRecord(rs));
+            }
+            pageStats.success(t0, list.size(), 0);
+
+        } catch (Exception e) {
+            pageStats.failure(t0, e);
+            e.printStackTrace();
+        }
+
+        return list;
+    }
+
+    /**
+     * Runs a filtered read (for the search box). A text filter uses the
+     * workouts_fts index, so a prefix search over millions of rows only
+     * reads the rows it returns.
+     * @param q the filters, order and limit (the columns setting is ignored)
+     * @return the matching rows, in the query's order (empty if the query fails)
+     */
+    @Override
+    public ArrayList<SessionRecord> search(SessionQuery q) {
+        long t0 = System.nanoTime();
+        ArrayList<SessionRecord> list = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        String sql = q.toSql(params, RECORD_COLUMNS);
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) list.add(readRecord(rs));
             }
+            searchStats.success(t0, list.size(), 0);
 
         } catch (Exception e) {
+            searchStats.failure(t0, e);
             e.printStackTrace();
         }
 
         return list;
     }
 
+    /**
+     * Counts the rows with a smaller id, which is the row's position in
+     * id order. Only reads the primary key.
+     * @param id a session id (need not exist)
+     * @return number of rows with a smaller id (0 if the query fails)
+     */
+    @Override
+    public int countBefore(int id) {
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM workouts WHERE id < ?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Finds the id at a position in id order (0 = smallest id).
+     * Only reads the primary key, so it is used to jump to a page
+     * without loading the rows in front of it.
+     * @param offset position of the row
+     * @return the id, or null if there is no row at that position
+     */
+    public Integer idAtOffset(int offset) {
+        long t0 = System.nanoTime();
+        String sql = "SELECT id FROM workouts ORDER BY id LIMIT 1 OFFSET ?";
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setInt(1, offset);
+            try (ResultSet rs = ps.executeQuery()) {
+                Integer id = rs.next() ? rs.getInt(1) : null;
+                offsetStats.success(t0, id == null ? 0 : 1, 0);
+                return id;
+            }
+
+        } catch (Exception e) {
+            offsetStats.failure(t0, e);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // builds a session from the current row of a SELECT ALL_COLUMNS query (by position)
+    private static WorkoutSession readRow(ResultSet rs) throws SQLException {
+        WorkoutSession s = new WorkoutSession();
+        s.id = rs.getInt(1);
+        s.date = rs.getString(2);
+        s.exerciseName = rs.getString(3);
+        s.muscleGroup = rs.getString(4);
+        s.sets = rs.getInt(5);
+        s.reps = rs.getInt(6);
+        s.weightLbs = rs.getDouble(7);
+        s.durationMin = rs.getInt(8);
+        s.rpe = rs.getInt(9);
+        s.notes = rs.getString(10);
+        s.version = rs.getLong(11);
+        return s;
+    }
+
+    // builds a record from the current row of a SELECT RECORD_COLUMNS query (by position)
+    private static SessionRecord readRecord(ResultSet rs) throws SQLException {
+        int day = rs.getInt(2);
+        if (rs.wasNull()) day = SessionRecord.NO_DAY;
+        return new SessionRecord(rs.getInt(1), day,
+                SessionCatalog.EXERCISES.code(rs.getString(3)), SessionCatalog.MUSCLES.code(rs.getString(4)),
+                rs.getInt(5), rs.getInt(6), rs.getDouble(7), rs.getInt(8), rs.getInt(9), rs.getString(10));
+    }
+
     /**
      * Adds a new workout record to the database.
      * @param s the workout session to insert
      * @return true if the insert worked, false if something failed
      */
     public boolean add(WorkoutSession s) {
-        String sql = "INSERT INTO workouts (id, date, exercise, muscle, sets, reps, weight, duration, rpe, notes) "
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
+        long t0 = System.nanoTime();
         try (Connection conn = db.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, s.id);
-            ps.setString(2, s.date);
-            ps.setString(3, s.exerciseName);
-            ps.setString(4, s.muscleGroup);
-            ps.setInt(5, s.sets);
-            ps.setInt(6, s.reps);
-            ps.setDouble(7, s.weightLbs);
-            ps.setInt(8, s.durationMin);
-            ps.setInt(9, s.rpe);
-            ps.setString(10, s.notes);
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
 
-            ps.executeUpdate();
+            bindInsert(ps, s);
+            int n = write(conn, false, ps::executeUpdate);
+            s.version = 1;
+            ids.add(s.id);
+            cache.put(s.copy());
+            addStats.success(t0, 0, n);
+            fire(SessionChange.inserted(s));
             return true;
 
         } catch (Exception e) {
+            addStats.failure(t0, e);
             return false;
         }
     }
 
+    /**
+     * Adds several sessions in one transaction (one disk sync instead of
+     * one per row). A session whose id already exists is skipped. Same
+     * as writeAll() with only adds.
+     * @param list the sessions to insert
+     * @return for each session, true if it was inserted
+     */
+    public boolean[] addBatch(List<WorkoutSession> list) {
+        List<SessionWrite> writes = new ArrayList<>(list.size());
+        for (WorkoutSession s : list) writes.add(SessionWrite.add(s));
+        return writeAll(writes);
+    }
+
+    /**
+     * Finds one session by id, from the cache when possible.
+     * @param id the session id
+     * @return a copy of the session, or null if there is no such id
+     */
+    public WorkoutSession findById(int id) {
+        long t0 = System.nanoTime();
+        WorkoutSession s = cache.get(id);
+        if (s != null || (idsLoaded && !ids.contains(id))) {
+            findStats.success(t0, 0, 0);
+            return s == null ? null : s.copy();
+        }
+
+        // a write to this id while we read makes the row stale: then it is not cached
+        long stamp = cache.stamp(id);
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement("SELECT " + ALL_COLUMNS + " FROM workouts WHERE id=?")) {
+
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                s = rs.next() ? readRow(rs) : null;
+            }
+            findStats.success(t0, s == null ? 0 : 1, 0);
+            if (s == null) return null;
+            cache.putIfAbsent(s, stamp);
+            return s.copy();
+
+        } catch (Exception e) {
+            findStats.failure(t0, e);
+            return null;
+        }
+    }
+
+    /**
+     * Fills in the parameters of INSERT_SQL for one session.
+     * @param ps the prepared insert
+     * @param s  the session to insert
+     * @throws SQLException if a value cannot be set
+     */
+    static void bindInsert(PreparedStatement ps, WorkoutSession s) throws SQLException {
+        ps.setInt(1, s.id);
+        ps.setString(2, s.date);
+        ps.setString(3, s.exerciseName);
+        ps.setString(4, s.muscleGroup);
+        ps.setInt(5, s.sets);
+        ps.setInt(6, s.reps);
+        ps.setDouble(7, s.weightLbs);
+        ps.setInt(8, s.durationMin);
+        ps.setInt(9, s.rpe);
+        ps.setString(10, s.notes);
+        setEpochDay(ps, 11, s.date);
+    }
+
+    /**
+     * Bulk-loads a CSV file (same columns as data/workouts.csv).
+     * Rows are checked with the same rules as the GUI form.
+     * @param file         the CSV file
+     * @param rejectReport file that lists every skipped row (may be null)
+     * @param progress     progress callback (may be null)
+     * @return counts of imported and rejected rows
+     * @throws IOException if the file cannot be read
+     * @throws SQLException if the database fails
+     */
+    public CsvImporter.Result importCsv(Path file, Path rejectReport, CsvImporter.Progress progress)
+            throws IOException, SQLException {
+        long t0 = System.nanoTime();
+        long firstSeq = changeSeq() + 1;
+        // writes by other programs during the import are counted as ours; the RELOAD covers them
+        ownImport = new long[]{firstSeq, Long.MAX_VALUE};
+        try {
+            CsvImporter.Result r = new CsvImporter(this::insertChunk).importFile(file, rejectReport, progress);
+            importStats.success(t0, r.rowsRead, r.imported);
+            return r;
+        } catch (IOException | SQLException | RuntimeException e) {
+            importStats.failure(t0, e);
+            throw e;
+        } finally {
+            ownImport = new long[]{firstSeq, changeSeq()};
+            try (Connection conn = db.connect()) {
+                trimChangeLog(conn);
+            } catch (SQLException | RuntimeException e) {
+                // trimmed after later writes
+            }
+            // many new ids; cheaper to reload them than to track each one
+            loadIds();
+            fire(SessionChange.reload(false));
+        }
+    }
+
+    // one import chunk as one transaction with the busy retries; the writer is
+    // taken per chunk so other writes are not locked out for the whole file
+    private int[] insertChunk(List<WorkoutSession> chunk) throws SQLException {
+        try (Connection conn = db.connect();
+             PreparedStatement ps = conn.prepareStatement(INSERT_OR_IGNORE_SQL)) {
+            return write(conn, true, () -> {
+                ps.clearBatch(); // left over from a busy attempt
+                for (WorkoutSession s : chunk) {
+                    bindInsert(ps, s);
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            });
+        }
+    }
+
+    /**
+     * Deletes the change_log entries nobody needs any more: all but the
+     * newest CHANGE_LOG_KEEP, except that the entries after the startup
+     * snapshot's seq are kept (up to CHANGE_LOG_MAX) so it can still be
+     * brought up to date by merging.
+     */
+    private void trimChangeLog(Connection conn) throws SQLException {
+        long max = DataVersionWatcher.maxSeq(conn);
+        long cut = max - CHANGE_LOG_KEEP;
+        long pin = snapshotSeq;
+        if (pin > 0 && pin < cut) cut = Math.max(pin, max - CHANGE_LOG_MAX);
+        if (cut <= 0) return;
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM change_log WHERE seq <= ?")) {
+            ps.setLong(1, cut);
+            ps.executeUpdate();
+        }
+    }
+
+    // a trim that fails (another program is writing) is tried again after the next writes
+    private void trimQuietly(Connection conn) {
+        try {
+            trimChangeLog(conn);
+        } catch (SQLException ignore) {
+            // next time
+        }
+    }
+
+    /**
+     * Keeps the change_log entries after seq, because the startup
+     * snapshot was written at it (see trimChangeLog()).
+     * @param seq the snapshot's seq
+     */
+    void keepChangesAfter(long seq) {
+        snapshotSeq = seq;
+    }
+
+    // newest change_log seq (0 if it cannot be read)
+    long changeSeq() {
+        try (Connection conn = db.connectRead()) {
+            return DataVersionWatcher.maxSeq(conn);
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
     /**
      * Updates all fields of an existing workout record.
      * Used when the user edits a row in the GUI.
+     * With s.version set, the update only goes through if the row still
+     * has that version (nobody changed it since it was read); s.version
+     * is then moved to the new version. A miss is a conflict: false is
+     * returned and counted in "write.conflict". With version 0 the row
+     * is overwritten whatever its version.
      * @param s the updated record
-     * @return true if the update worked, false if not
+     * @return true if the row was updated; false if there is no such id,
+     *         for a conflict or an error
      */
     public boolean updateSession(WorkoutSession s) {
-        String sql = "UPDATE workouts SET date=?, exercise=?, muscle=?, sets=?, reps=?, weight=?, duration=?, rpe=?, notes=? "
-                + "WHERE id=?";
+        long t0 = System.nanoTime();
 
         try (Connection conn = db.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
 
-            ps.setString(1, s.date);
-            ps.setString(2, s.exerciseName);
-            ps.setString(3, s.muscleGroup);
-            ps.setInt(4, s.sets);
-            ps.setInt(5, s.reps);
-            ps.setDouble(6, s.weightLbs);
-            ps.setInt(7, s.durationMin);
-            ps.setInt(8, s.rpe);
-            ps.setString(9, s.notes);
-            ps.setInt(10, s.id);
-
-            ps.executeUpdate();
-            return true;
+            bindUpdate(ps, s);
+            int n = write(conn, false, ps::executeUpdate);
+            afterUpdate(s, n);
+            updateStats.success(t0, 0, n);
+            if (n > 0) fire(SessionChange.updated(s));
+            return n > 0;
 
         } catch (Exception e) {
+            updateStats.failure(t0, e);
             return false;
         }
     }
 
+    // fills in the parameters of UPDATE_SQL
+    private static void bindUpdate(PreparedStatement ps, WorkoutSession s) throws SQLException {
+        ps.setString(1, s.date);
+        ps.setString(2, s.exerciseName);
+        ps.setString(3, s.muscleGroup);
+        ps.setInt(4, s.sets);
+        ps.setInt(5, s.reps);
+        ps.setDouble(6, s.weightLbs);
+        ps.setInt(7, s.durationMin);
+        ps.setInt(8, s.rpe);
+        ps.setString(9, s.notes);
+        setEpochDay(ps, 10, s.date);
+        ps.setInt(11, s.id);
+        ps.setLong(12, s.version);
+    }
+
+    // cache and version after an update that changed n rows
+    private void afterUpdate(WorkoutSession s, int n) {
+        if (n > 0 && s.version > 0) {
+            s.version++;
+            cache.put(s.copy());
+            return;
+        }
+        // an unchecked update does not know the new version; the next read gets it
+        cache.remove(s.id);
+        countConflict(s.version, n);
+    }
+
+    // a write naming the version it read that changed nothing is a conflict
+    private void countConflict(long version, int n) {
+        if (n == 0 && version > 0) conflictStats.success(System.nanoTime(), 0, 0);
+    }
+
+    /**
+     * Runs a group of adds, updates and deletes in order, as one
+     * transaction: one commit (and one disk sync) for the whole group.
+     * Each write gets the same answer it would get on its own (an add
+     * whose id exists is false). If the transaction fails, nothing from
+     * it is kept and the writes are run again one at a time, so one bad
+     * write does not fail the others.
+     * @param list the writes, in the order they should happen
+     * @return for each write, true if it worked
+     */
+    public boolean[] writeAll(List<SessionWrite> list) {
+        long t0 = System.nanoTime();
+        boolean[] ok = new boolean[list.size()];
+        if (list.isEmpty()) return ok;
+        int[] counts = new int[list.size()];
+
+        try (Connection conn = db.connect();
+             PreparedStatement insert = conn.prepareStatement(INSERT_OR_IGNORE_SQL);
+             PreparedStatement update = conn.prepareStatement(UPDATE_SQL);
+             PreparedStatement delete = conn.prepareStatement(DELETE_SQL)) {
+
+            write(conn, true, () -> {
+                for (int i = 0; i < list.size(); i++) {
+                    SessionWrite w = list.get(i);
+                    switch (w.kind()) {
+                        case ADD:
+                            bindInsert(insert, w.session());
+                            counts[i] = insert.executeUpdate();
+                            break;
+                        case UPDATE:
+                            bindUpdate(update, w.session());
+                            counts[i] = update.executeUpdate();
+                            break;
+                        default:
+                            delete.setInt(1, w.id());
+                            delete.setLong(2, w.version());
+                            counts[i] = delete.executeUpdate();
+                    }
+                }
+                return null;
+            });
+            writeAllStats.success(t0, 0, list.size());
+
+        } catch (Exception e) {
+            writeAllStats.failure(t0, e);
+            for (int i = 0; i < list.size(); i++) {
+                SessionWrite w = list.get(i);
+                switch (w.kind()) {
+                    case ADD: ok[i] = !existsId(w.id()) && add(w.session()); break;
+                    case UPDATE: ok[i] = updateSession(w.session()); break;
+                    default: ok[i] = deleteById(w.id(), w.version());
+                }
+            }
+            return ok;
+        }
+
+        // committed: update the id bitmap and cache and tell the listeners, in order
+        for (int i = 0; i < list.size(); i++) {
+            SessionWrite w = list.get(i);
+            int n = counts[i];
+            switch (w.kind()) {
+                case ADD:
+                    ok[i] = n > 0;
+                    if (n == 0) break;
+                    w.session().version = 1;
+                    ids.add(w.id());
+                    cache.put(w.session().copy());
+                    fire(SessionChange.inserted(w.session()));
+                    break;
+                case UPDATE:
+                    ok[i] = n > 0;
+                    afterUpdate(w.session(), n);
+                    if (n > 0) fire(SessionChange.updated(w.session()));
+                    break;
+                default:
+                    ok[i] = n > 0;
+                    countConflict(w.version(), n);
+                    cache.remove(w.id());
+                    if (n == 0) break;
+                    ids.remove(w.id());
+                    fire(SessionChange.deleted(w.id()));
+            }
+        }
+        return ok;
+    }
+
     /**
-     * Deletes a workout record by ID.
+     * Deletes a workout record by ID, whatever its version.
      * @param id the record to delete
-     * @return true if it deleted successfully
+     * @return true if it was deleted, false if there is no such id or on an error
      */
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM workouts WHERE id=?";
+        return deleteById(id, 0);
+    }
 
+    /**
+     * Deletes a workout record if it still has the version it was read
+     * at. A miss (changed or already deleted) is a conflict: false is
+     * returned and counted in "write.conflict".
+     * @param id      the record to delete
+     * @param version its version when it was read (0 for any)
+     * @return true if it was deleted; false if there is no such id, for
+     *         a conflict or an error
+     */
+    @Override
+    public boolean deleteById(int id, long version) {
+        long t0 = System.nanoTime();
         try (Connection conn = db.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
 
             ps.setInt(1, id);
-            ps.executeUpdate();
-            return true;
+            ps.setLong(2, version);
+            int n = write(conn, false, ps::executeUpdate);
+            cache.remove(id);
+            if (n > 0) ids.remove(id);
+            deleteStats.success(t0, 0, n);
+            if (n > 0) fire(SessionChange.deleted(id));
+            countConflict(version, n);
+            return n > 0;
 
         } catch (Exception e) {
+            deleteStats.failure(t0, e);
             return false;
         }
     }
 
     /**
      * Checks if a specific ID already exists in the database.
+     * Answered from the in-memory id bitmap once it is loaded.
      * @param id the ID to check
      * @return true if found
      */
     public boolean existsId(int id) {
-        String sql = "SELECT id FROM workouts WHERE id=?";
+        long t0 = System.nanoTime();
+        if (idsLoaded) {
+            boolean found = ids.contains(id);
+            existsStats.success(t0, 0, 0);
+            return found;
+        }
 
-        try (Connection conn = db.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(EXISTS_SQL)) {
 
             ps.setInt(1, id);
-            ResultSet rs = ps.executeQuery();
-            return rs.next();
+            try (ResultSet rs = ps.executeQuery()) {
+                boolean found = rs.next();
+                existsStats.success(t0, found ? 1 : 0, 0);
+                return found;
+            }
 
         } catch (Exception e) {
+            existsStats.failure(t0, e);
             return false;
         }
     }
@@ -171,29 +1267,199 @@ public class SessionService {
      * @return highest estimated 1RM (or 0 if none found)
      */
     public double bestE1RMInLast7Days(String exercise, String date) {
-        String sql = """
-                SELECT sets, reps, weight FROM workouts 
-                WHERE exercise = ? AND date >= date(?, '-7 day')
-                """;
+        long t0 = System.nanoTime();
+        Integer day = epochDay(date);
+        if (day == null) {
+            bestStats.failure(t0, new IllegalArgumentException("Not a date: " + date));
+            return 0;
+        }
 
-        double best = 0;
-
-        try (Connection conn = db.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(BEST_E1RM_SQL)) {
 
             ps.setString(1, exercise);
-            ps.setString(2, date);
+            ps.setInt(2, day - 7);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                double best = rs.next() ? rs.getDouble(1) : 0;
+                bestStats.success(t0, 1, 0);
+                return best;
+            }
+
+        } catch (Exception e) {
+            bestStats.failure(t0, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Reads best e1RM, volume and sets for an exercise over the given
+     * number of days ending on a date (for example 7, 28 and 90 days).
+     * Each window is a small range read over the per-day totals.
+     * @param exercise name of the lift
+     * @param date     last day of the window (yyyy-mm-dd)
+     * @param windows  window lengths in days
+     * @return one result per window, in the same order
+     */
+    public RollingStats[] rollingStats(String exercise, String date, int... windows) {
+        long t0 = System.nanoTime();
+        RollingStats[] out = new RollingStats[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            out[i] = new RollingStats();
+            out[i].days = windows[i];
+        }
+        Integer day = epochDay(date);
+        if (day == null) return out;
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(ROLLING_SQL)) {
+
+            for (RollingStats r : out) {
+                ps.setString(1, exercise);
+                ps.setInt(2, day - r.days + 1);
+                ps.setInt(3, day);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        r.bestE1RM = rs.getDouble(1);
+                        r.volume = rs.getDouble(2);
+                        r.sets = rs.getInt(3);
+                    }
+                }
+            }
+            rollingStatsOp.success(t0, out.length, 0);
+
+        } catch (Exception e) {
+            rollingStatsOp.failure(t0, e);
+            e.printStackTrace();
+        }
+        return out;
+    }
+
+    /**
+     * Reads the whole history of an exercise for the trend chart: best
+     * e1RM per training day and volume per week. Both come from the
+     * per-day totals (two index range reads), not from the raw rows.
+     * @param exercise name of the lift
+     * @return the series (empty if the exercise has no sessions or the read fails)
+     */
+    public TrendSeries trend(String exercise) {
+        long t0 = System.nanoTime();
+        try (Connection conn = db.connectRead()) {
+            double[][] days = readPairs(conn, TREND_DAYS_SQL, exercise);
+            double[][] weeks = readPairs(conn, TREND_WEEKS_SQL, exercise);
+            trendStats.success(t0, days[0].length + weeks[0].length, 0);
+            return new TrendSeries(exercise, days[0], days[1], weeks[0], weeks[1]);
+
+        } catch (Exception e) {
+            trendStats.failure(t0, e);
+            e.printStackTrace();
+            return new TrendSeries(exercise, new double[0], new double[0], new double[0], new double[0]);
+        }
+    }
 
-            ResultSet rs = ps.executeQuery();
+    /**
+     * Makes the training-load report with the totals summed in SQLite:
+     * only one line per day and muscle group comes back to Java.
+     * @param period weekly or monthly
+     * @return the report (empty if the read fails)
+     * @see TrainingLoadReport#compute(ColumnarSnapshot, TrainingLoadReport.Period)
+     */
+    public TrainingLoadReport trainingLoad(TrainingLoadReport.Period period) {
+        long t0 = System.nanoTime();
+        List<TrainingLoadReport.DaySum> days = new ArrayList<>();
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(LOAD_DAYS_SQL);
+             ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                double w = rs.getDouble("weight");
-                int r = rs.getInt("reps");
-                double est = w * (1 + r / 30.0);
-                if (est > best) best = est;
+                days.add(new TrainingLoadReport.DaySum(rs.getInt(1), SessionCatalog.MUSCLES.code(rs.getString(2)),
+                        rs.getInt(3), rs.getLong(4), rs.getDouble(5), rs.getLong(6), rs.getInt(7),
+                        rs.getLong(8), rs.getDouble(9)));
             }
+            loadStats.success(t0, days.size(), 0);
+        } catch (Exception e) {
+            loadStats.failure(t0, e);
+            e.printStackTrace();
+            days.clear();
+        }
+        return TrainingLoadReport.fromDays(days, period);
+    }
+
+    /**
+     * @return names of the exercises that have sessions, sorted
+     */
+    public List<String> trendExercises() {
+        List<String> names = new ArrayList<>();
+        try (Connection conn = db.connectRead();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT DISTINCT exercise FROM daily_stats ORDER BY exercise")) {
+            while (rs.next()) names.add(rs.getString(1));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return names;
+    }
 
-        } catch (Exception ignore) {}
+    // runs a two-column query with one text parameter into {first column, second column}
+    private static double[][] readPairs(Connection conn, String sql, String param) throws SQLException {
+        double[] a = new double[256];
+        double[] b = new double[256];
+        int n = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, param);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (n == a.length) {
+                        a = Arrays.copyOf(a, n * 2);
+                        b = Arrays.copyOf(b, n * 2);
+                    }
+                    a[n] = rs.getDouble(1);
+                    b[n++] = rs.getDouble(2);
+                }
+            }
+        }
+        return new double[][] {Arrays.copyOf(a, n), Arrays.copyOf(b, n)};
+    }
 
-        return best;
+    /**
+     * Counts days where the per-day totals do not match the raw rows
+     * (for example after another program wrote to the file with triggers off).
+     * @return number of exercise/day entries that differ (0 when consistent)
+     * @throws SQLException if the check query fails
+     */
+    public int checkDailyStats() throws SQLException {
+        // rounded so running sums and fresh sums compare equal
+        String fresh = "SELECT exercise, epoch_day, ROUND(MAX(" + SchemaMigrator.E1RM_SQL + "), 6), "
+                + "ROUND(SUM(sets * reps * weight), 6), SUM(sets) "
+                + "FROM workouts WHERE epoch_day IS NOT NULL GROUP BY exercise, epoch_day";
+        String stored = "SELECT exercise, epoch_day, ROUND(best_e1rm, 6), ROUND(volume, 6), set_count FROM daily_stats";
+        String sql = "SELECT COUNT(*) FROM ("
+                + "SELECT * FROM (" + fresh + " EXCEPT " + stored + ") "
+                + "UNION ALL SELECT * FROM (" + stored + " EXCEPT " + fresh + "))";
+
+        try (Connection conn = db.connectRead();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Throws away the per-day totals and recomputes them from the raw rows.
+     * @return number of exercise/day entries written
+     * @throws SQLException if the rebuild fails (nothing is changed)
+     */
+    public int rebuildDailyStats() throws SQLException {
+        try (Connection conn = db.connect()) {
+            conn.setAutoCommit(false);
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("DELETE FROM daily_stats");
+                int rows = st.executeUpdate(SchemaMigrator.REBUILD_DAILY_STATS_SQL);
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
     }
 }
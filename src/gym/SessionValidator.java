@@ -0,0 +1,57 @@
+package gym;
+
+/**
+ * Checks the values for one workout session and builds the object.
+ * The GUI form and the CSV importer both use these rules so a row
+ * that would be rejected on screen is also rejected on import.
+ */
+public class SessionValidator {
+
+    private SessionValidator() {}
+
+    /**
+     * Builds a WorkoutSession from raw text values.
+     * @return the checked session
+     * @throws IllegalArgumentException with a user-friendly message if a value is bad
+     */
+    public static WorkoutSession build(int id, String date, String exercise, String muscle,
+                                       String sets, String reps, String weight,
+                                       String duration, String rpe, String notes) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+
+        String d = text(date);
+        if (!d.matches("\\d{4}-\\d{2}-\\d{2}") || SessionService.epochDay(d) == null)
+            throw new IllegalArgumentException("Please enter a date (e.g., 2025-10-27).");
+        s.date = d;
+
+        s.exerciseName = mustText(exercise, "Exercise");
+        s.muscleGroup  = mustText(muscle, "Muscle");
+        s.sets         = parseIntNice(sets, "Sets");
+        s.reps         = parseIntNice(reps, "Reps");
+        s.weightLbs    = parseDoubleNice(weight, "Weight");
+        s.durationMin  = parseIntNice(duration, "Duration");
+        s.rpe          = parseIntNice(rpe, "RPE");
+        if (s.rpe < 1 || s.rpe > 10) throw new IllegalArgumentException("RPE must be between 1 and 10.");
+        s.notes        = text(notes);
+        return s;
+    }
+
+    // basic parsing helpers
+    public static int parseIntNice(String s, String label) {
+        try { return Integer.parseInt(text(s)); }
+        catch (Exception e) { throw new IllegalArgumentException(label + " must be a whole number."); }
+    }
+    public static double parseDoubleNice(String s, String label) {
+        try { return Double.parseDouble(text(s)); }
+        catch (Exception e) { throw new IllegalArgumentException(label + " must be a number."); }
+    }
+    public static String mustText(String s, String label) {
+        String t = text(s);
+        if (t.isEmpty()) throw new IllegalArgumentException("Please enter " + label.toLowerCase() + ".");
+        return t;
+    }
+    private static String text(String s) {
+        return s == null ? "" : s.trim();
+    }
+}
@@ -0,0 +1,49 @@
+package gym;
+
+/**
+ * One insert, update or delete, for running several of them in one
+ * transaction with SessionService.writeAll().
+ *
+ * @param kind    what to do
+ * @param session the session to add or update (null for DELETE)
+ * @param id      the session id
+ * @param version for a DELETE, the row version it must still have (0 for any)
+ */
+public record SessionWrite(Kind kind, WorkoutSession session, int id, long version) {
+
+    /** The three kinds of write. */
+    public enum Kind { ADD, UPDATE, DELETE }
+
+    /**
+     * @param s the new session
+     * @return an insert (skipped if the id exists)
+     */
+    public static SessionWrite add(WorkoutSession s) {
+        return new SessionWrite(Kind.ADD, s, s.id, 0);
+    }
+
+    /**
+     * @param s the session with its new values (and the version it was read at, or 0)
+     * @return an update matched by id
+     */
+    public static SessionWrite update(WorkoutSession s) {
+        return new SessionWrite(Kind.UPDATE, s, s.id, s.version);
+    }
+
+    /**
+     * @param id the session to delete
+     * @return a delete, whatever the row's version
+     */
+    public static SessionWrite delete(int id) {
+        return delete(id, 0);
+    }
+
+    /**
+     * @param id      the session to delete
+     * @param version the version it was read at (0 for any)
+     * @return a delete that only goes through if the row still has that version
+     */
+    public static SessionWrite delete(int id, long version) {
+        return new SessionWrite(Kind.DELETE, null, id, version);
+    }
+}
@@ -0,0 +1,435 @@
+package gym;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Copy of every row of a database in a file next to it ({@code <db>.snap}),
+ * laid out column by column so it can be memory-mapped and read without
+ * parsing, for showing the table right when the program starts.
+ *
+ * The file is tagged with the newest change_log seq it includes and a
+ * CRC32 of everything after the fixed header. Opening checks the CRC
+ * (one sequential pass over the mapping, far cheaper than a query) and
+ * reads the exercise/muscle names; rows are read from the mapping when
+ * asked for.
+ *
+ * sync() brings the file up to date once the database is open: nothing
+ * to do if the seq still matches, the rows changed since then (from
+ * change_log) merged into the old copy if the log still reaches back,
+ * otherwise a full re-read. The new file is written under a new name,
+ * the next generation ({@code <db>.snap.1}, {@code .snap.2}, ...), and
+ * the older ones are deleted afterwards. It is forced to disk before
+ * it gets its name, so a crash never leaves half a file, and a copy that is still mapped is never overwritten (Windows
+ * does not let a mapped file be replaced or deleted; one that cannot be
+ * deleted yet is deleted by a later sync).
+ *
+ * Layout (big-endian): "GSNP", version, rows, seq, CRC32, exercise names,
+ * muscle names (each a count, then length-prefixed UTF-8), padding to
+ * 4 bytes, then one int column each for id, epoch day, exercise, muscle,
+ * sets, reps, duration, rpe, notes start and notes length (-1 for none),
+ * then the weights as longs (double bits), then the notes as UTF-8.
+ */
+public class StartupSnapshot {
+
+    /** Added to the database path to get the snapshot file. */
+    public static final String SUFFIX = ".snap";
+
+    /** More changed rows than this are read again from scratch instead of merged. */
+    public static final int MAX_MERGE_ROWS = 100_000;
+
+    private static final byte[] MAGIC = {'G', 'S', 'N', 'P'};
+    private static final int VERSION = 2;
+    private static final int CRC_AT = 20;
+    private static final int HEADER_BYTES = 24;
+    private static final int INT_COLUMNS = 10;
+
+    private final ByteBuffer buf;
+    private final int rows;
+    private final long seq;
+    private final int[] exerciseCodes;
+    private final int[] muscleCodes;
+    private final IntBuffer ints;
+    private final int weightsAt;
+    private final int notesAt;
+
+    private StartupSnapshot(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        byte[] magic = new byte[4];
+        buf.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a snapshot file.");
+        if (buf.getInt() != VERSION) throw new IOException("Snapshot version is not supported.");
+        rows = buf.getInt();
+        seq = buf.getLong();
+        int crc = buf.getInt();
+        CRC32 check = new CRC32();
+        check.update(buf.duplicate().position(HEADER_BYTES));
+        if ((int) check.getValue() != crc) throw new IOException("Snapshot file is damaged (checksum does not match).");
+        // file-local codes → codes in the shared catalog
+        exerciseCodes = readNames(buf, SessionCatalog.EXERCISES);
+        muscleCodes = readNames(buf, SessionCatalog.MUSCLES);
+        int columnsAt = align(buf.position());
+        weightsAt = columnsAt + rows * INT_COLUMNS * Integer.BYTES;
+        notesAt = weightsAt + rows * Long.BYTES;
+        if (rows < 0 || notesAt > buf.capacity() || notesAt < columnsAt) throw new IOException("Snapshot file is cut short.");
+        ints = buf.duplicate().position(columnsAt).limit(weightsAt).slice().asIntBuffer();
+    }
+
+    /**
+     * @param dbPath a .db file
+     * @return the newest snapshot file that goes with it, or where the
+     *         first one is written if there is none
+     */
+    public static Path fileFor(String dbPath) {
+        Path base = Path.of(dbPath + SUFFIX);
+        try {
+            TreeMap<Long, Path> gens = generations(base);
+            return gens.isEmpty() ? base : gens.lastEntry().getValue();
+        } catch (IOException e) {
+            return base;
+        }
+    }
+
+    // the snapshot files next to a database by generation: <db>.snap is 0, <db>.snap.N is N
+    private static TreeMap<Long, Path> generations(Path base) throws IOException {
+        TreeMap<Long, Path> gens = new TreeMap<>();
+        Path dir = base.toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) return gens;
+        String name = base.getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, p -> p.getFileName().toString().startsWith(name))) {
+            for (Path p : files) {
+                String rest = p.getFileName().toString().substring(name.length());
+                if (rest.isEmpty()) gens.put(0L, p);
+                else if (rest.length() > 1 && rest.length() < 19 && rest.charAt(0) == '.'
+                        && rest.substring(1).chars().allMatch(Character::isDigit))
+                    gens.put(Long.parseLong(rest.substring(1)), p);
+            }
+        }
+        return gens;
+    }
+
+    /**
+     * Reads only the header of a snapshot file (no checksum check).
+     * @param file the file
+     * @return the newest change_log seq it includes, or 0 if there is
+     *         no such file or it is not a snapshot
+     */
+    public static long seqOf(Path file) {
+        if (!Files.isRegularFile(file)) return 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(CRC_AT);
+            while (head.hasRemaining()) {
+                if (ch.read(head) < 0) return 0;
+            }
+            byte[] magic = new byte[4];
+            head.flip().get(magic);
+            if (!Arrays.equals(magic, MAGIC) || head.getInt() != VERSION) return 0;
+            head.getInt(); // rows
+            return head.getLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Maps a snapshot file.
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static StartupSnapshot open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Snapshot file is too big.");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new StartupSnapshot(buf);
+        } catch (RuntimeException e) {
+            // a damaged header can point anywhere
+            throw new IOException("Snapshot file is damaged (" + e + ").", e);
+        }
+    }
+
+    /**
+     * Like open(), for callers that just go without a snapshot.
+     * @param file the file
+     * @return the snapshot, or null if there is none or it cannot be read
+     */
+    public static StartupSnapshot openIfPresent(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            return open(file);
+        } catch (IOException e) {
+            System.err.println("Ignoring " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** @return number of rows */
+    public int size() {
+        return rows;
+    }
+
+    /** @return the newest change_log seq included */
+    public long seq() {
+        return seq;
+    }
+
+    /**
+     * @param row 0 to size()-1, in id order
+     * @return the session on that row
+     */
+    public SessionRecord record(int row) {
+        int start = ints.get(8 * rows + row);
+        int len = ints.get(9 * rows + row);
+        String notes = null;
+        if (len >= 0) {
+            byte[] b = new byte[len];
+            buf.get(notesAt + start, b);
+            notes = new String(b, StandardCharsets.UTF_8);
+        }
+        return new SessionRecord(id(row), ints.get(rows + row),
+                exerciseCodes[ints.get(2 * rows + row)], muscleCodes[ints.get(3 * rows + row)],
+                ints.get(4 * rows + row), ints.get(5 * rows + row), weight(row),
+                ints.get(6 * rows + row), ints.get(7 * rows + row), notes);
+    }
+
+    private int id(int row) {
+        return ints.get(row);
+    }
+
+    private double weight(int row) {
+        return Double.longBitsToDouble(buf.getLong(weightsAt + row * Long.BYTES));
+    }
+
+    /**
+     * Copies the analytics columns into a ColumnarSnapshot (rows without
+     * a valid date are skipped, like SessionService.loadSnapshot()).
+     * @return the copy
+     */
+    public ColumnarSnapshot toColumnar() {
+        ColumnarSnapshot snap = new ColumnarSnapshot(rows);
+        for (int i = 0; i < rows; i++) {
+            int day = ints.get(rows + i);
+            if (day == SessionRecord.NO_DAY) continue;
+            snap.addCodes(id(i), day, exerciseCodes[ints.get(2 * rows + i)], muscleCodes[ints.get(3 * rows + i)],
+                    ints.get(4 * rows + i), ints.get(5 * rows + i), weight(i),
+                    ints.get(6 * rows + i), ints.get(7 * rows + i));
+        }
+        snap.trim();
+        return snap;
+    }
+
+    /**
+     * Brings the snapshot file of a connected database up to date (see
+     * the class comment) and maps it. One sync runs at a time, so two
+     * background tasks never write the same file.
+     * @param service a connected SQLite service
+     * @return the up-to-date snapshot, or null if it could not be written
+     */
+    public static synchronized StartupSnapshot sync(SessionService service) {
+        Path base = Path.of(service.getPath() + SUFFIX);
+        Path file = base;
+        try {
+            TreeMap<Long, Path> gens = generations(base);
+            // read before the rows, so a write in between is picked up by the next sync
+            long now = service.changeSeq();
+            StartupSnapshot old = gens.isEmpty() ? null : openIfPresent(gens.lastEntry().getValue());
+            if (old != null && old.seq == now && old.rows == service.countAll()) {
+                deleteAll(gens.headMap(gens.lastKey()));
+                service.keepChangesAfter(old.seq);
+                return old;
+            }
+
+            Map<Integer, SessionRecord> changed = old == null || old.seq > now ? null
+                    : service.changedSince(old.seq, MAX_MERGE_ROWS);
+            Writer w = new Writer(now);
+            if (changed != null) old.mergeInto(w, changed);
+            else service.forEachRecord(w::add);
+            if (!gens.isEmpty()) file = Path.of(base + "." + (gens.lastKey() + 1));
+            w.writeTo(file);
+            StartupSnapshot snap = open(file);
+            deleteAll(gens);
+            service.keepChangesAfter(snap.seq);
+            return snap;
+
+        } catch (IOException | SQLException e) {
+            System.err.println("Could not update " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // removes older snapshot files; one that is still mapped somewhere may refuse until a later sync
+    private static void deleteAll(Map<Long, Path> gens) {
+        for (Path p : gens.values()) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                // still in use; tried again next time
+            }
+        }
+    }
+
+    // old rows in id order, with the changed ones replaced, removed or added
+    private void mergeInto(Writer w, Map<Integer, SessionRecord> changed) {
+        TreeMap<Integer, SessionRecord> added = new TreeMap<>();
+        for (SessionRecord r : changed.values()) {
+            if (r != null) added.put(r.id(), r);
+        }
+        for (int i = 0; i < rows; i++) {
+            int id = id(i);
+            while (!added.isEmpty() && added.firstKey() < id) w.add(added.pollFirstEntry().getValue());
+            if (changed.containsKey(id)) continue;
+            w.add(record(i));
+        }
+        for (SessionRecord r : added.values()) w.add(r);
+    }
+
+    private static int[] readNames(ByteBuffer buf, StringDictionary dict) {
+        int[] codes = new int[buf.getInt()];
+        for (int i = 0; i < codes.length; i++) {
+            byte[] b = new byte[buf.getShort() & 0xFFFF];
+            buf.get(b);
+            codes[i] = dict.code(new String(b, StandardCharsets.UTF_8));
+        }
+        return codes;
+    }
+
+    private static int align(int pos) {
+        return (pos + 3) & ~3;
+    }
+
+    /** Collects rows in id order and writes them as a snapshot file. */
+    private static class Writer {
+        final long seq;
+        int size;
+        int[][] cols = new int[INT_COLUMNS][1024];
+        long[] weights = new long[1024];
+        byte[] notes = new byte[16 * 1024];
+        int notesSize;
+        final ArrayList<String> exercises = new ArrayList<>();
+        final ArrayList<String> muscles = new ArrayList<>();
+        // catalog code → file code + 1 (0 = not used yet)
+        int[] exerciseMap = new int[16];
+        int[] muscleMap = new int[16];
+
+        Writer(long seq) {
+            this.seq = seq;
+        }
+
+        void add(SessionRecord r) {
+            if (size == weights.length) {
+                for (int c = 0; c < INT_COLUMNS; c++) cols[c] = Arrays.copyOf(cols[c], size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            int start = notesSize;
+            int len = -1;
+            if (r.notes() != null) {
+                byte[] b = r.notes().getBytes(StandardCharsets.UTF_8);
+                if (notesSize + b.length > notes.length) notes = Arrays.copyOf(notes, Math.max(notes.length * 2, notesSize + b.length));
+                System.arraycopy(b, 0, notes, notesSize, b.length);
+                notesSize += b.length;
+                len = b.length;
+            }
+            exerciseMap = fileCode(exerciseMap, r.exercise(), exercises, SessionCatalog.EXERCISES);
+            muscleMap = fileCode(muscleMap, r.muscle(), muscles, SessionCatalog.MUSCLES);
+            int[] v = {r.id(), r.epochDay(), exerciseMap[r.exercise()] - 1, muscleMap[r.muscle()] - 1,
+                    r.sets(), r.reps(), r.durationMin(), r.rpe(), start, len};
+            for (int c = 0; c < INT_COLUMNS; c++) cols[c][size] = v[c];
+            weights[size] = Double.doubleToLongBits(r.weightLbs());
+            size++;
+        }
+
+        // gives a catalog code its file code the first time it is seen
+        private static int[] fileCode(int[] map, int code, ArrayList<String> names, StringDictionary dict) {
+            if (code >= map.length) map = Arrays.copyOf(map, Math.max(code + 1, map.length * 2));
+            if (map[code] == 0) {
+                names.add(dict.name(code));
+                map[code] = names.size();
+            }
+            return map;
+        }
+
+        void writeTo(Path file) throws IOException {
+            ByteBuffer head = ByteBuffer.allocate(64 * 1024);
+            head.put(MAGIC).putInt(VERSION).putInt(size).putLong(seq).putInt(0); // CRC goes in last
+            head = putNames(head, exercises);
+            head = putNames(head, muscles);
+            while (head.position() % 4 != 0) head.put((byte) 0);
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                crc.update(head.array(), HEADER_BYTES, head.position() - HEADER_BYTES);
+                writeFully(ch, head.flip());
+                ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+                for (int c = 0; c < INT_COLUMNS; c++) {
+                    for (int i = 0; i < size; i++) {
+                        if (chunk.remaining() < Integer.BYTES) flush(ch, crc, chunk);
+                        chunk.putInt(cols[c][i]);
+                    }
+                }
+                for (int i = 0; i < size; i++) {
+                    if (chunk.remaining() < Long.BYTES) flush(ch, crc, chunk);
+                    chunk.putLong(weights[i]);
+                }
+                flush(ch, crc, chunk);
+                crc.update(notes, 0, notesSize);
+                writeFully(ch, ByteBuffer.wrap(notes, 0, notesSize));
+                ch.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) crc.getValue()), CRC_AT);
+                // on disk before it gets its name, or a crash could leave a named but empty file
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private static ByteBuffer putNames(ByteBuffer head, ArrayList<String> names) {
+            head = room(head, Integer.BYTES);
+            head.putInt(names.size());
+            for (String n : names) {
+                byte[] b = n.getBytes(StandardCharsets.UTF_8);
+                head = room(head, 2 + b.length);
+                head.putShort((short) b.length).put(b);
+            }
+            return head;
+        }
+
+        private static ByteBuffer room(ByteBuffer b, int need) {
+            if (b.remaining() >= need) return b;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.position() + need));
+            bigger.put(b.array(), 0, b.position());
+            return bigger;
+        }
+
+        private static void flush(FileChannel ch, CRC32 crc, ByteBuffer chunk) throws IOException {
+            crc.update(chunk.array(), 0, chunk.position());
+            writeFully(ch, chunk.flip());
+            chunk.clear();
+        }
+
+        private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) ch.write(b);
+        }
+    }
+}
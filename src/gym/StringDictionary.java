@@ -0,0 +1,51 @@
+package gym;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Gives each distinct string a small int code (0, 1, 2, ...).
+ * Used so exercise and muscle names can be stored and compared as ints.
+ */
+public class StringDictionary {
+
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    /**
+     * Returns the code for a string, adding it if it is new.
+     * @param name the string
+     * @return its code
+     */
+    public synchronized int code(String name) {
+        Integer c = codes.get(name);
+        if (c != null) return c;
+        int next = names.size();
+        codes.put(name, next);
+        names.add(name);
+        return next;
+    }
+
+    /**
+     * Returns the code for a string without adding it.
+     * @param name the string
+     * @return its code, or -1 if it has never been seen
+     */
+    public synchronized int codeOf(String name) {
+        Integer c = codes.get(name);
+        return c == null ? -1 : c;
+    }
+
+    /**
+     * @param code a code from this dictionary
+     * @return the string for that code
+     */
+    public synchronized String name(int code) {
+        return names.get(code);
+    }
+
+    /** @return number of distinct strings */
+    public synchronized int size() {
+        return names.size();
+    }
+}
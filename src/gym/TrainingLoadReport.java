@@ -0,0 +1,360 @@
+package gym;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Training load per week (or month) and muscle group: sessions, sets,
+ * volume, average RPE, minutes, session-RPE load and the acute:chronic
+ * workload ratio. One report covers one database file.
+ *
+ * compute() makes the report from a ColumnarSnapshot in one pass. The
+ * rows are cut into chunks; each chunk adds into its own primitive
+ * arrays indexed by (period, muscle code), in parallel and without
+ * locks, and the arrays are summed at the end. SessionService's
+ * trainingLoad() gets the same totals from a SQL GROUP BY instead,
+ * which is cheaper when no snapshot is in memory.
+ *
+ * Load is session-RPE: minutes × RPE, summed over the sessions. The
+ * ratio (ACWR) is a period's load divided by the average load of the
+ * last four periods, that period included; it is 0 until there are four
+ * periods of history. Both are given per muscle group and for all
+ * muscle groups together (muscle "All").
+ */
+public class TrainingLoadReport {
+
+    /** Periods the ratio averages over (the "chronic" load). */
+    public static final int CHRONIC_PERIODS = 4;
+
+    /** Rows per chunk for the parallel pass. */
+    static final int CHUNK_ROWS = 1 << 16;
+
+    /** Name used for the rows that add up every muscle group. */
+    public static final String ALL_MUSCLES = "All";
+
+    /** Length of a report period. Weeks start on Monday. */
+    public enum Period {
+        WEEK, MONTH;
+
+        /**
+         * @param epochDay a day
+         * @return number of the period the day falls in (weeks or months since a fixed start)
+         */
+        public int index(int epochDay) {
+            if (this == WEEK) return Math.floorDiv(epochDay + 3, 7);
+            LocalDate d = LocalDate.ofEpochDay(epochDay);
+            return d.getYear() * 12 + d.getMonthValue() - 1;
+        }
+
+        /**
+         * @param index a period number from index()
+         * @return the first day of that period
+         */
+        public int start(int index) {
+            if (this == WEEK) return index * 7 - 3;
+            return (int) LocalDate.of(Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1, 1).toEpochDay();
+        }
+    }
+
+    /**
+     * One line of the report.
+     *
+     * @param startDay first day of the period
+     * @param muscle   muscle group name, or ALL_MUSCLES
+     * @param sessions number of sessions
+     * @param sets     total sets
+     * @param volume   total sets×reps×weight (lbs)
+     * @param avgRpe   average RPE of the sessions
+     * @param minutes  total duration
+     * @param load     total minutes × RPE
+     * @param acwr     load / average load of the last CHRONIC_PERIODS periods (0 if not enough history)
+     */
+    public record Row(int startDay, String muscle, int sessions, long sets, double volume,
+                      double avgRpe, long minutes, double load, double acwr) {
+
+        /** @return the period's first day as yyyy-mm-dd */
+        public String date() {
+            return LocalDate.ofEpochDay(startDay).toString();
+        }
+    }
+
+    /** Weekly or monthly. */
+    public final Period period;
+
+    /** Lines in period order; per period "All" first, then muscles by name. */
+    public final List<Row> rows;
+
+    /** Sessions the report was made from. */
+    public final long sessions;
+
+    private TrainingLoadReport(Period period, List<Row> rows, long sessions) {
+        this.period = period;
+        this.rows = Collections.unmodifiableList(rows);
+        this.sessions = sessions;
+    }
+
+    /**
+     * Makes the report from a snapshot, in parallel. Rows without a
+     * valid date are left out.
+     * @param snap   the sessions
+     * @param period weekly or monthly
+     * @return the report
+     */
+    public static TrainingLoadReport compute(ColumnarSnapshot snap, Period period) {
+        int n = snap.size();
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int d = snap.epochDay(i);
+            if (d == SessionRecord.NO_DAY) continue;
+            if (d < minDay) minDay = d;
+            if (d > maxDay) maxDay = d;
+        }
+        int muscles = snap.muscles.size();
+        if (minDay > maxDay) return new Totals(period, 0, 0, muscles).toReport();
+
+        // period of every day in the range, so months cost one array read per row
+        int first = period.index(minDay);
+        int[] periodOf = new int[maxDay - minDay + 1];
+        for (int d = minDay; d <= maxDay; d++) periodOf[d - minDay] = period.index(d) - first;
+        int periods = periodOf[periodOf.length - 1] + 1;
+        int low = minDay;
+
+        int chunks = (n + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        Totals total = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            Totals t = new Totals(period, first, periods, muscles);
+            int end = Math.min(n, (c + 1) * CHUNK_ROWS);
+            for (int i = c * CHUNK_ROWS; i < end; i++) {
+                int d = snap.epochDay(i);
+                if (d == SessionRecord.NO_DAY) continue;
+                int sets = snap.sets(i);
+                int minutes = snap.duration(i);
+                int rpe = snap.rpe(i);
+                t.add(periodOf[d - low], snap.muscleCode(i), 1, sets, sets * snap.reps(i) * snap.weight(i),
+                        rpe, rpe > 0 ? 1 : 0, minutes, (double) minutes * rpe);
+            }
+            return t;
+        }).reduce(Totals::addAll).orElseGet(() -> new Totals(period, first, periods, muscles));
+        return total.toReport();
+    }
+
+    /**
+     * Sums of one day and muscle group, as a SQL GROUP BY returns them.
+     *
+     * @param epochDay the day
+     * @param muscle   muscle code in SessionCatalog.MUSCLES
+     * @param sessions number of sessions
+     * @param sets     total sets
+     * @param volume   total sets×reps×weight
+     * @param rpeSum   total RPE of the sessions with one
+     * @param rpeCount sessions with an RPE
+     * @param minutes  total duration
+     * @param load     total minutes × RPE
+     */
+    record DaySum(int epochDay, int muscle, int sessions, long sets, double volume,
+                  long rpeSum, int rpeCount, long minutes, double load) {}
+
+    /**
+     * Makes the report from per-day sums.
+     * @param days   the sums, in any order
+     * @param period weekly or monthly
+     * @return the report
+     */
+    static TrainingLoadReport fromDays(List<DaySum> days, Period period) {
+        int muscles = SessionCatalog.MUSCLES.size();
+        if (days.isEmpty()) return new Totals(period, 0, 0, muscles).toReport();
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (DaySum d : days) {
+            minDay = Math.min(minDay, d.epochDay());
+            maxDay = Math.max(maxDay, d.epochDay());
+        }
+        int first = period.index(minDay);
+        Totals t = new Totals(period, first, period.index(maxDay) - first + 1, muscles);
+        for (DaySum d : days) {
+            t.add(period.index(d.epochDay()) - first, d.muscle(), d.sessions(), d.sets(), d.volume(),
+                    d.rpeSum(), d.rpeCount(), d.minutes(), d.load());
+        }
+        return t.toReport();
+    }
+
+    /**
+     * Writes the report as CSV (with a header line).
+     * @param file the output file (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("periodStart,muscleGroup,sessions,sets,volume,avgRpe,durationMin,load,acwr\n");
+            StringBuilder line = new StringBuilder(128);
+            for (Row r : rows) {
+                line.setLength(0);
+                line.append(r.date()).append(',');
+                Csv.appendField(line, r.muscle());
+                line.append(',').append(r.sessions()).append(',').append(r.sets()).append(',');
+                Csv.appendNumber(line, Math.round(r.volume() * 10) / 10.0);
+                line.append(',');
+                Csv.appendNumber(line, Math.round(r.avgRpe() * 100) / 100.0);
+                line.append(',').append(r.minutes()).append(',');
+                Csv.appendNumber(line, Math.round(r.load() * 10) / 10.0);
+                line.append(',');
+                Csv.appendNumber(line, Math.round(r.acwr() * 1000) / 1000.0);
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Sums per (period, muscle code), in flat primitive arrays
+     * (cell = period × muscles + muscle). Muscle codes beyond the
+     * array (added to the catalog after it was made) grow it.
+     */
+    static final class Totals {
+        final Period period;
+        final int first;
+        final int periods;
+        int muscles;
+        int[] sessions;
+        long[] sets;
+        double[] volume;
+        long[] rpeSum;
+        int[] rpeCount;
+        long[] minutes;
+        double[] load;
+
+        /**
+         * @param period  weekly or monthly
+         * @param first   index() of the first period
+         * @param periods number of periods
+         * @param muscles number of muscle codes
+         */
+        Totals(Period period, int first, int periods, int muscles) {
+            this.period = period;
+            this.first = first;
+            this.periods = periods;
+            this.muscles = Math.max(1, muscles);
+            int cells = periods * this.muscles;
+            sessions = new int[cells];
+            sets = new long[cells];
+            volume = new double[cells];
+            rpeSum = new long[cells];
+            rpeCount = new int[cells];
+            minutes = new long[cells];
+            load = new double[cells];
+        }
+
+        /** Adds one session or one group of sessions to a cell (p counts from the first period). */
+        void add(int p, int muscle, int sessionCount, long setCount, double vol,
+                 long rpeTotal, int rpeSessions, long minuteTotal, double loadTotal) {
+            if (muscle >= muscles) widen(muscle + 1);
+            int c = p * muscles + muscle;
+            sessions[c] += sessionCount;
+            sets[c] += setCount;
+            volume[c] += vol;
+            rpeSum[c] += rpeTotal;
+            rpeCount[c] += rpeSessions;
+            minutes[c] += minuteTotal;
+            load[c] += loadTotal;
+        }
+
+        /** Adds another chunk's sums (same periods) into this one. */
+        Totals addAll(Totals o) {
+            if (o.muscles > muscles) widen(o.muscles);
+            for (int p = 0; p < o.periods; p++) {
+                for (int m = 0; m < o.muscles; m++) {
+                    int c = p * o.muscles + m;
+                    if (o.sessions[c] == 0) continue;
+                    add(p, m, o.sessions[c], o.sets[c], o.volume[c], o.rpeSum[c], o.rpeCount[c], o.minutes[c], o.load[c]);
+                }
+            }
+            return this;
+        }
+
+        private void widen(int newMuscles) {
+            Totals w = new Totals(period, first, periods, newMuscles);
+            for (int p = 0; p < periods; p++) {
+                int from = p * muscles;
+                int to = p * newMuscles;
+                System.arraycopy(sessions, from, w.sessions, to, muscles);
+                System.arraycopy(sets, from, w.sets, to, muscles);
+                System.arraycopy(volume, from, w.volume, to, muscles);
+                System.arraycopy(rpeSum, from, w.rpeSum, to, muscles);
+                System.arraycopy(rpeCount, from, w.rpeCount, to, muscles);
+                System.arraycopy(minutes, from, w.minutes, to, muscles);
+                System.arraycopy(load, from, w.load, to, muscles);
+            }
+            muscles = newMuscles;
+            sessions = w.sessions;
+            sets = w.sets;
+            volume = w.volume;
+            rpeSum = w.rpeSum;
+            rpeCount = w.rpeCount;
+            minutes = w.minutes;
+            load = w.load;
+        }
+
+        /** Turns the sums into report lines, with the ratios. */
+        TrainingLoadReport toReport() {
+            StringDictionary names = SessionCatalog.MUSCLES;
+            List<Integer> order = new ArrayList<>();
+            for (int m = 0; m < muscles; m++) order.add(m);
+            order.sort((a, b) -> String.valueOf(names.name(a)).compareTo(String.valueOf(names.name(b))));
+
+            // loads per muscle in period order (last slot: every muscle), for the ratios
+            double[][] loads = new double[muscles + 1][periods];
+            for (int p = 0; p < periods; p++) {
+                for (int m = 0; m < muscles; m++) {
+                    loads[m][p] = load[p * muscles + m];
+                    loads[muscles][p] += load[p * muscles + m];
+                }
+            }
+
+            List<Row> out = new ArrayList<>();
+            long total = 0;
+            for (int p = 0; p < periods; p++) {
+                int start = period.start(first + p);
+                int s = 0;
+                long st = 0, rs = 0, mins = 0;
+                int rc = 0;
+                double vol = 0;
+                for (int m = 0; m < muscles; m++) {
+                    int c = p * muscles + m;
+                    s += sessions[c];
+                    st += sets[c];
+                    vol += volume[c];
+                    rs += rpeSum[c];
+                    rc += rpeCount[c];
+                    mins += minutes[c];
+                }
+                if (s == 0) continue;
+                total += s;
+                out.add(new Row(start, ALL_MUSCLES, s, st, vol, rc == 0 ? 0 : (double) rs / rc, mins,
+                        loads[muscles][p], ratio(loads[muscles], p)));
+                for (int m : order) {
+                    int c = p * muscles + m;
+                    if (sessions[c] == 0) continue;
+                    out.add(new Row(start, names.name(m), sessions[c], sets[c], volume[c],
+                            rpeCount[c] == 0 ? 0 : (double) rpeSum[c] / rpeCount[c], minutes[c],
+                            load[c], ratio(loads[m], p)));
+                }
+            }
+            return new TrainingLoadReport(period, out, total);
+        }
+
+        // load of period p over the average of the CHRONIC_PERIODS periods ending at p
+        private static double ratio(double[] loads, int p) {
+            if (p + 1 < CHRONIC_PERIODS) return 0;
+            double sum = 0;
+            for (int i = p - CHRONIC_PERIODS + 1; i <= p; i++) sum += loads[i];
+            return sum == 0 ? 0 : loads[p] / (sum / CHRONIC_PERIODS);
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package gym;
+
+import javax.swing.JPanel;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Chart of one exercise over its whole history: best estimated 1RM per
+ * training day on top, weekly volume below, sharing one time axis.
+ * Mouse wheel zooms around the pointer, dragging pans, double-click
+ * shows everything again.
+ *
+ * Drawing stays cheap however long the history is:
+ * - Each line is cut down with Lttb to about one point per pixel of the
+ *   whole history at the current zoom. That happens once per zoom
+ *   level; panning reuses the same points.
+ * - The plot is drawn into an off-screen image that is kept between
+ *   repaints, so hovering or an unrelated repaint only copies it.
+ * - Panning shifts the image by whole pixels and draws only the strip
+ *   that came into view. The points, the y scales and the date ticks do
+ *   not depend on where the view starts, so the strip lines up with the
+ *   pixels that were moved.
+ */
+public class TrendChartPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    // room for the y labels on the left and the dates below
+    private static final int LEFT = 64;
+    private static final int RIGHT = 16;
+    private static final int TOP = 22;
+    private static final int BOTTOM = 24;
+    private static final int GAP = 30;
+
+    /** Most zoomed in: pixels per day. */
+    private static final double MAX_PX_PER_DAY = 40;
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color GRID = new Color(232, 232, 232);
+    private static final Color AXIS_TEXT = Color.DARK_GRAY;
+    private static final Color E1RM_COLOR = new Color(200, 60, 40);
+    private static final Color VOLUME_COLOR = new Color(40, 100, 190);
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("MMM yyyy");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("d MMM yy");
+
+    /** One line at the current zoom: the points Lttb kept and a fixed y range. */
+    private static class Line {
+        final double[] x;
+        final double[] y;
+        final double yMin;
+        final double yMax;
+        final double yStep;
+
+        Line(double[] xs, double[] ys, int threshold, boolean fromZero) {
+            int[] keep = Lttb.downsample(xs, ys, 0, xs.length, threshold);
+            x = new double[keep.length];
+            y = new double[keep.length];
+            for (int i = 0; i < keep.length; i++) {
+                x[i] = xs[keep[i]];
+                y[i] = ys[keep[i]];
+            }
+            // from the whole series, so panning never changes the scale
+            double lo = Double.MAX_VALUE, hi = 0;
+            for (double v : ys) {
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            if (ys.length == 0) lo = 0;
+            if (fromZero) lo = 0;
+            // a flat line still gets a readable scale around it
+            double step = niceStep(Math.max(hi - lo, Math.max(hi * 0.2, 1)) / 4);
+            yStep = step;
+            yMin = Math.floor(lo / step) * step;
+            yMax = Math.max(yMin + step, Math.ceil(hi * 1.05 / step) * step);
+        }
+    }
+
+    private TrendSeries series;
+    private Line e1rm;
+    private Line volume;
+
+    // view: the day at the left edge is origin + scrollPx * daysPerPx; panning only
+    // changes the whole number scrollPx, so every point moves by exactly that many pixels
+    private double origin;
+    private long scrollPx;
+    private double daysPerPx;
+    private boolean fitted = true;
+
+    // the plot area (without the left/right margins), kept between repaints
+    private BufferedImage image;
+    private BufferedImage spare;
+    private boolean imageValid;
+
+    private int dragX = -1;
+    private int hoverX = -1;
+    private String message = "No data";
+
+    /** Creates an empty chart. */
+    public TrendChartPanel() {
+        setPreferredSize(new Dimension(860, 480));
+        setBackground(BACKGROUND);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragX = -1;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragX < 0) return;
+                panBy(e.getX() - dragX);
+                dragX = e.getX();
+                hoverX = e.getX();
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                hoverX = e.getX();
+                repaint();
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                hoverX = -1;
+                repaint();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) fit();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX() - LEFT, Math.pow(1.25, e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (fitted) fit();
+                else relevel();
+            }
+        });
+    }
+
+    /**
+     * Shows a new series (null or empty clears the chart) and zooms out
+     * to its whole history.
+     * @param s the series to plot
+     */
+    public void setSeries(TrendSeries s) {
+        series = s == null || s.isEmpty() ? null : s;
+        message = s == null ? "No data" : "No sessions for " + s.exercise;
+        fit();
+    }
+
+    /** Shows a message instead of the chart (for example while loading). */
+    public void setMessage(String text) {
+        series = null;
+        message = text;
+        imageValid = false;
+        repaint();
+    }
+
+    /** Zooms out to the whole history. */
+    public void fit() {
+        fitted = true;
+        int w = plotWidth();
+        if (series != null && w > 0) {
+            double span = Math.max(series.lastDay() - series.firstDay(), 7);
+            daysPerPx = span * 1.04 / w;
+            origin = series.firstDay() - span * 0.02;
+            scrollPx = 0;
+        }
+        relevel();
+    }
+
+    /**
+     * Moves the view by whole pixels (positive moves the data right).
+     * @param dx pixels
+     */
+    void panBy(int dx) {
+        if (series == null || dx == 0) return;
+        int w = plotWidth();
+        double span = series.lastDay() - series.firstDay();
+        double lo = series.firstDay() - span * 0.05;
+        double hi = series.lastDay() + span * 0.05 - w * daysPerPx;
+        double start = viewStart();
+        double wanted = start - dx * daysPerPx;
+        double clamped = hi < lo ? start : Math.max(lo, Math.min(hi, wanted));
+        dx = (int) Math.round((start - clamped) / daysPerPx);
+        if (dx == 0) return;
+        scrollPx -= dx;
+        fitted = false;
+
+        if (!imageValid || Math.abs(dx) >= w) {
+            imageValid = false;
+        } else {
+            // keep what is still visible and draw only the new strip
+            if (spare == null || spare.getWidth() != image.getWidth() || spare.getHeight() != image.getHeight()) {
+                spare = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g = spare.createGraphics();
+            g.drawImage(image, dx, 0, null);
+            if (dx > 0) render(g, 0, dx);
+            else render(g, w + dx, w);
+            g.dispose();
+            BufferedImage t = image;
+            image = spare;
+            spare = t;
+        }
+        repaint();
+    }
+
+    /**
+     * Zooms around a point of the plot.
+     * @param px     x inside the plot area
+     * @param factor more than 1 zooms out, less than 1 zooms in
+     */
+    void zoom(int px, double factor) {
+        if (series == null) return;
+        int w = plotWidth();
+        double span = Math.max(series.lastDay() - series.firstDay(), 7);
+        double maxDaysPerPx = span * 1.04 / w;
+        double next = Math.max(1 / MAX_PX_PER_DAY, Math.min(maxDaysPerPx, daysPerPx * factor));
+        if (next == daysPerPx) return;
+        if (next >= maxDaysPerPx) {
+            fit();
+            return;
+        }
+        double anchor = viewStart() + px * daysPerPx;
+        daysPerPx = next;
+        origin = anchor - px * daysPerPx;
+        scrollPx = 0;
+        fitted = false;
+        relevel();
+    }
+
+    // new zoom level: downsample again for the new number of pixels, redraw everything
+    private void relevel() {
+        if (series != null && daysPerPx > 0) {
+            double span = series.lastDay() - series.firstDay();
+            int threshold = (int) Math.max(3, Math.ceil(span / daysPerPx));
+            e1rm = new Line(series.days, series.bestE1RM, threshold, false);
+            volume = new Line(series.weeks, series.weekVolume, threshold, true);
+        }
+        imageValid = false;
+        repaint();
+    }
+
+    private double viewStart() {
+        return origin + scrollPx * daysPerPx;
+    }
+
+    private int plotWidth() {
+        return getWidth() - LEFT - RIGHT;
+    }
+
+    // heights of the two plots: e1RM gets 60%
+    private int topHeight() {
+        return (int) ((getHeight() - TOP - BOTTOM - GAP) * 0.6);
+    }
+
+    private int bottomY0() {
+        return TOP + topHeight() + GAP;
+    }
+
+    private int bottomHeight() {
+        return getHeight() - BOTTOM - bottomY0();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g0) {
+        super.paintComponent(g0);
+        Graphics2D g = (Graphics2D) g0;
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        int w = plotWidth();
+        int h = getHeight();
+        if (series == null || w <= 0 || topHeight() <= 0 || bottomHeight() <= 0) {
+            g.setColor(AXIS_TEXT);
+            FontMetrics fm = g.getFontMetrics();
+            g.drawString(message, (getWidth() - fm.stringWidth(message)) / 2, h / 2);
+            return;
+        }
+        if (image == null || image.getWidth() != w || image.getHeight() != h) {
+            image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            imageValid = false;
+        }
+        if (!imageValid) {
+            Graphics2D ig = image.createGraphics();
+            render(ig, 0, w);
+            ig.dispose();
+            imageValid = true;
+        }
+        g.drawImage(image, LEFT, 0, null);
+
+        // everything that does not move with the data is drawn on top
+        g.setColor(AXIS_TEXT);
+        g.drawString(series.exercise + " - best est. 1RM per day (lbs)", LEFT, TOP - 6);
+        g.drawString("Volume per week (lbs)", LEFT, bottomY0() - 6);
+        yLabels(g, e1rm, TOP, topHeight());
+        yLabels(g, volume, bottomY0(), bottomHeight());
+        hover(g);
+    }
+
+    // draws the plot area columns [x0, x1) of the image
+    private void render(Graphics2D g, int x0, int x1) {
+        int h = image.getHeight();
+        g.setClip(x0, 0, x1 - x0, h);
+        g.setColor(BACKGROUND);
+        g.fillRect(x0, 0, x1 - x0, h);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        yGrid(g, e1rm, TOP, topHeight(), x0, x1);
+        yGrid(g, volume, bottomY0(), bottomHeight(), x0, x1);
+        dateTicks(g, x0, x1, h);
+        line(g, e1rm, TOP, topHeight(), x0, x1, E1RM_COLOR);
+        line(g, volume, bottomY0(), bottomHeight(), x0, x1, VOLUME_COLOR);
+        g.setClip(null);
+    }
+
+    private double xOf(double day) {
+        return (day - origin) / daysPerPx - scrollPx;
+    }
+
+    private static double yOf(Line l, double v, int y0, int height) {
+        return y0 + height - (v - l.yMin) / (l.yMax - l.yMin) * height;
+    }
+
+    // the kept points inside [x0, x1), plus one on each side so lines reach the edges
+    private void line(Graphics2D g, Line l, int y0, int height, int x0, int x1, Color color) {
+        if (l.x.length == 0) return;
+        double d0 = viewStart() + x0 * daysPerPx;
+        double d1 = viewStart() + x1 * daysPerPx;
+        int from = Math.max(0, lowerBound(l.x, d0) - 1);
+        int to = Math.min(l.x.length, lowerBound(l.x, d1) + 1);
+        Path2D.Double path = new Path2D.Double();
+        for (int i = from; i < to; i++) {
+            double px = xOf(l.x[i]);
+            double py = yOf(l, l.y[i], y0, height);
+            if (i == from) path.moveTo(px, py);
+            else path.lineTo(px, py);
+        }
+        g.setColor(color);
+        g.setStroke(new BasicStroke(1.5f));
+        g.draw(path);
+        // single days are only visible as dots
+        if (to - from < 2 && to > from) {
+            g.fillOval((int) xOf(l.x[from]) - 2, (int) yOf(l, l.y[from], y0, height) - 2, 5, 5);
+        }
+    }
+
+    private void yGrid(Graphics2D g, Line l, int y0, int height, int x0, int x1) {
+        g.setColor(GRID);
+        g.setStroke(new BasicStroke(1f));
+        for (double v = l.yMin; v <= l.yMax + l.yStep / 2; v += l.yStep) {
+            int y = (int) Math.round(yOf(l, v, y0, height));
+            g.drawLine(x0, y, x1, y);
+        }
+    }
+
+    private void yLabels(Graphics2D g, Line l, int y0, int height) {
+        FontMetrics fm = g.getFontMetrics();
+        for (double v = l.yMin; v <= l.yMax + l.yStep / 2; v += l.yStep) {
+            String text = v >= 1_000_000 ? trim(v / 1_000_000) + "M"
+                    : v >= 10_000 ? trim(v / 1000) + "k" : trim(v);
+            int y = (int) Math.round(yOf(l, v, y0, height));
+            g.drawString(text, LEFT - 6 - fm.stringWidth(text), y + fm.getAscent() / 2 - 1);
+        }
+    }
+
+    // vertical lines and labels on whole days, months or years, whichever fits about every 90 px
+    private void dateTicks(Graphics2D g, int x0, int x1, int h) {
+        double daysPer90 = daysPerPx * 90;
+        FontMetrics fm = g.getFontMetrics();
+        // start early enough that a label crossing x0 is drawn too
+        LocalDate d = TrendSeries.date(viewStart() + (x0 - 90) * daysPerPx);
+        LocalDate end = TrendSeries.date(viewStart() + x1 * daysPerPx).plusDays(1);
+        int step; // days if positive, months if negative
+        DateTimeFormatter fmt;
+        if (daysPer90 <= 10) {
+            step = (int) Math.max(1, Math.ceil(daysPer90));
+            fmt = DAY;
+        } else if (daysPer90 <= 300) {
+            step = -(int) Math.min(12, Math.max(1, Math.ceil(daysPer90 / 30)));
+            fmt = MONTH;
+            d = d.withDayOfMonth(1);
+        } else {
+            step = -12 * (int) Math.max(1, Math.ceil(daysPer90 / 365));
+            fmt = DateTimeFormatter.ofPattern("yyyy");
+            d = d.withDayOfYear(1);
+        }
+        // anchored to absolute dates so strips drawn after a pan line up
+        if (step > 0) d = LocalDate.ofEpochDay(Math.floorDiv(d.toEpochDay(), step) * step);
+        else d = d.minusMonths(Math.floorMod(d.getYear() * 12L + d.getMonthValue() - 1, -step));
+
+        for (; !d.isAfter(end); d = step > 0 ? d.plusDays(step) : d.plusMonths(-step)) {
+            int x = (int) Math.round(xOf(d.toEpochDay()));
+            g.setColor(GRID);
+            g.drawLine(x, TOP, x, h - BOTTOM);
+            g.setColor(AXIS_TEXT);
+            g.drawString(d.format(fmt), x + 3, h - BOTTOM + fm.getAscent() + 4);
+        }
+    }
+
+    // crosshair and the values of the nearest training day and week
+    private void hover(Graphics2D g) {
+        int px = hoverX - LEFT;
+        if (hoverX < 0 || px < 0 || px >= plotWidth()) return;
+        double day = viewStart() + px * daysPerPx;
+        int d = nearest(series.days, day);
+        int w = nearest(series.weeks, day);
+        g.setColor(Color.GRAY);
+        g.drawLine(hoverX, TOP, hoverX, getHeight() - BOTTOM);
+        String text = TrendSeries.date(series.days[d]) + ": e1RM " + Math.round(series.bestE1RM[d])
+                + " lbs | week of " + TrendSeries.date(series.weeks[w]) + ": " + Math.round(series.weekVolume[w]) + " lbs";
+        FontMetrics fm = g.getFontMetrics();
+        int tw = fm.stringWidth(text) + 8;
+        int tx = Math.min(hoverX + 8, getWidth() - tw - 2);
+        g.setColor(new Color(255, 255, 225));
+        g.fillRect(tx, TOP + 2, tw, fm.getHeight() + 4);
+        g.setColor(AXIS_TEXT);
+        g.drawRect(tx, TOP + 2, tw, fm.getHeight() + 4);
+        g.drawString(text, tx + 4, TOP + 4 + fm.getAscent());
+    }
+
+    // first index with a[i] >= v
+    private static int lowerBound(double[] a, double v) {
+        int i = Arrays.binarySearch(a, v);
+        if (i < 0) return -i - 1;
+        while (i > 0 && a[i - 1] == v) i--;
+        return i;
+    }
+
+    private static int nearest(double[] a, double v) {
+        int i = lowerBound(a, v);
+        if (i >= a.length) return a.length - 1;
+        if (i > 0 && v - a[i - 1] < a[i] - v) return i - 1;
+        return i;
+    }
+
+    private static String trim(double v) {
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(Math.round(v * 10) / 10.0);
+    }
+
+    // 1, 2 or 5 times a power of ten, at least x
+    private static double niceStep(double x) {
+        double p = Math.pow(10, Math.floor(Math.log10(x)));
+        for (double m : new double[] {1, 2, 5, 10}) {
+            if (m * p >= x) return m * p;
+        }
+        return 10 * p;
+    }
+}
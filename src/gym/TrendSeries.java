@@ -0,0 +1,98 @@
+package gym;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The full history of one exercise for the trend chart, read from the
+ * per-day totals (daily_stats) instead of the raw rows: the best
+ * estimated 1RM of every training day and the volume of every week.
+ * Ten years of daily training is about 3,650 points whatever the number
+ * of sessions.
+ */
+public class TrendSeries {
+
+    /** Name of the lift. */
+    public final String exercise;
+
+    /** Training days (days since 1970-01-01), ascending. */
+    public final double[] days;
+
+    /** Best estimated 1RM on each of those days. */
+    public final double[] bestE1RM;
+
+    /** First day (Monday) of each week with sessions, ascending. */
+    public final double[] weeks;
+
+    /** Total volume (sets×reps×weight) of each of those weeks. */
+    public final double[] weekVolume;
+
+    /**
+     * @param exercise   name of the lift
+     * @param days       training days, ascending
+     * @param bestE1RM   best e1RM per day
+     * @param weeks      week start days, ascending
+     * @param weekVolume volume per week
+     */
+    public TrendSeries(String exercise, double[] days, double[] bestE1RM, double[] weeks, double[] weekVolume) {
+        this.exercise = exercise;
+        this.days = days;
+        this.bestE1RM = bestE1RM;
+        this.weeks = weeks;
+        this.weekVolume = weekVolume;
+    }
+
+    /** @return true if the exercise has no sessions */
+    public boolean isEmpty() {
+        return days.length == 0;
+    }
+
+    /** @return first training day (only if not empty) */
+    public double firstDay() {
+        return Math.min(days[0], weeks[0]);
+    }
+
+    /** @return last training day (only if not empty) */
+    public double lastDay() {
+        return days[days.length - 1];
+    }
+
+    /**
+     * @param epochDay days since 1970-01-01
+     * @return the date
+     */
+    public static LocalDate date(double epochDay) {
+        return LocalDate.ofEpochDay((long) Math.floor(epochDay));
+    }
+
+    /**
+     * Combines the series of one exercise from several files: the best
+     * of the bests per day, the sum of the volumes per week.
+     * @param exercise name of the lift
+     * @param parts    one series per file
+     * @return the combined series
+     */
+    public static TrendSeries merge(String exercise, List<TrendSeries> parts) {
+        TreeMap<Double, Double> best = new TreeMap<>();
+        TreeMap<Double, Double> volume = new TreeMap<>();
+        for (TrendSeries p : parts) {
+            for (int i = 0; i < p.days.length; i++) best.merge(p.days[i], p.bestE1RM[i], Math::max);
+            for (int i = 0; i < p.weeks.length; i++) volume.merge(p.weeks[i], p.weekVolume[i], Double::sum);
+        }
+        double[][] b = arrays(best);
+        double[][] v = arrays(volume);
+        return new TrendSeries(exercise, b[0], b[1], v[0], v[1]);
+    }
+
+    private static double[][] arrays(TreeMap<Double, Double> m) {
+        double[][] out = new double[2][m.size()];
+        int i = 0;
+        for (Map.Entry<Double, Double> e : m.entrySet()) {
+            out[0][i] = e.getKey();
+            out[1][i++] = e.getValue();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,239 @@
+package gym;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * Writes the whole workouts table to a file, for backups and sharing.
+ *
+ * Two formats:
+ * <ul>
+ *   <li>CSV with the same columns as data/workouts.csv (quoted where needed)</li>
+ *   <li>a compact binary format (see {@link #BINARY_MAGIC}) that
+ *       {@link BinaryWorkoutReader} reads back</li>
+ * </ul>
+ * Rows are streamed from the database and written through one reusable
+ * buffer, so exporting a big table creates very little garbage.
+ *
+ * Binary layout (all numbers big-endian):
+ * <pre>
+ * header:  "GWTB" magic, u16 version, u16 flags (0)
+ * entries: u8 tag, then
+ *   TAG_EXERCISE / TAG_MUSCLE: varint length + UTF-8 name (gets the next code, from 0)
+ *   TAG_ROW:      i32 id, i32 epoch day, varint exercise code, varint muscle code,
+ *                 zigzag sets, zigzag reps, f64 weight, zigzag duration, zigzag rpe, notes
+ *   TAG_ROW_TEXT_DATE: same as TAG_ROW but the date is a varint length + UTF-8 text
+ *   TAG_END:      i64 row count
+ * notes: varint (length + 1) + UTF-8, or 0 for null
+ * </pre>
+ */
+public class WorkoutExporter {
+
+    /** First four bytes of a binary export. */
+    public static final byte[] BINARY_MAGIC = {'G', 'W', 'T', 'B'};
+
+    /** Current binary format version. */
+    public static final int BINARY_VERSION = 1;
+
+    static final int TAG_END = 0;
+    static final int TAG_EXERCISE = 1;
+    static final int TAG_MUSCLE = 2;
+    static final int TAG_ROW = 3;
+    static final int TAG_ROW_TEXT_DATE = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Largest fixed-size part of a row, so it never has to be split across flushes. */
+    private static final int MAX_ROW_BYTES = 1 + 4 + 4 + 5 * 6 + 8;
+
+    private final SessionService service;
+
+    /**
+     * @param service where the rows come from
+     */
+    public WorkoutExporter(SessionService service) {
+        this.service = service;
+    }
+
+    /**
+     * Writes every row as CSV (with a header line).
+     * @param file the output file (replaced if it exists)
+     * @return number of rows written
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if reading the database fails
+     */
+    public long exportCsv(Path file) throws IOException, SQLException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            CharsetEncoder enc = StandardCharsets.UTF_8.newEncoder();
+            StringBuilder line = new StringBuilder(256);
+
+            line.append("id,date,exerciseName,muscleGroup,sets,reps,weightLbs,durationMin,rpe,notes\n");
+            encode(ch, buf, enc, line);
+
+            long rows = service.forEach(new SessionQuery().fetchSize(5000), s -> {
+                line.setLength(0);
+                s.appendCsv(line);
+                line.append('\n');
+                try {
+                    encode(ch, buf, enc, line);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            flush(ch, buf);
+            return rows;
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    // encodes the text into the buffer, flushing to the channel whenever it fills
+    private static void encode(FileChannel ch, ByteBuffer buf, CharsetEncoder enc, CharSequence text) throws IOException {
+        CharBuffer in = CharBuffer.wrap(text);
+        enc.reset();
+        while (true) {
+            CoderResult r = enc.encode(in, buf, true);
+            if (r.isOverflow()) {
+                flush(ch, buf);
+                continue;
+            }
+            if (r.isError()) r.throwException();
+            break;
+        }
+        while (enc.flush(buf).isOverflow()) flush(ch, buf);
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * Writes every row in the compact binary format.
+     * @param file the output file (replaced if it exists)
+     * @return number of rows written
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if reading the database fails
+     */
+    public long exportBinary(Path file) throws IOException, SQLException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BinaryWriter w = new BinaryWriter(ch);
+            w.buf.put(BINARY_MAGIC).putShort((short) BINARY_VERSION).putShort((short) 0);
+
+            long rows = service.forEach(new SessionQuery().fetchSize(5000), s -> {
+                try {
+                    w.row(s);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            w.ensure(1 + 8);
+            w.buf.put((byte) TAG_END).putLong(rows);
+            flush(ch, w.buf);
+            return rows;
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    /** Writes binary entries through one reusable buffer. */
+    private static class BinaryWriter {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final HashMap<String, Integer> exercises = new HashMap<>();
+        final HashMap<String, Integer> muscles = new HashMap<>();
+
+        BinaryWriter(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void row(WorkoutSession s) throws IOException {
+            int ex = code(exercises, s.exerciseName, TAG_EXERCISE);
+            int mus = code(muscles, s.muscleGroup, TAG_MUSCLE);
+            Integer day = s.date == null ? null : SessionService.epochDay(s.date);
+
+            ensure(MAX_ROW_BYTES);
+            buf.put((byte) (day == null ? TAG_ROW_TEXT_DATE : TAG_ROW));
+            buf.putInt(s.id);
+            if (day != null) buf.putInt(day);
+            else string(s.date == null ? "" : s.date);
+            ensure(MAX_ROW_BYTES);
+            varint(ex);
+            varint(mus);
+            varint(zigzag(s.sets));
+            varint(zigzag(s.reps));
+            buf.putDouble(s.weightLbs);
+            varint(zigzag(s.durationMin));
+            varint(zigzag(s.rpe));
+            if (s.notes == null) {
+                varint(0);
+            } else {
+                byte[] b = s.notes.getBytes(StandardCharsets.UTF_8);
+                varint(b.length + 1);
+                bytes(b);
+            }
+        }
+
+        // returns the dictionary code, writing a dictionary entry the first time a name is seen
+        int code(HashMap<String, Integer> dict, String name, int tag) throws IOException {
+            String key = name == null ? "" : name;
+            Integer c = dict.get(key);
+            if (c != null) return c;
+            c = dict.size();
+            dict.put(key, c);
+            ensure(1);
+            buf.put((byte) tag);
+            string(key);
+            return c;
+        }
+
+        void string(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(5);
+            varint(b.length);
+            bytes(b);
+        }
+
+        void bytes(byte[] b) throws IOException {
+            int off = 0;
+            while (off < b.length) {
+                if (!buf.hasRemaining()) flush(ch, buf);
+                int n = Math.min(buf.remaining(), b.length - off);
+                buf.put(b, off, n);
+                off += n;
+            }
+        }
+
+        void varint(int v) throws IOException {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush(ch, buf);
+        }
+
+        static int zigzag(int v) {
+            return (v << 1) ^ (v >> 31);
+        }
+    }
+}
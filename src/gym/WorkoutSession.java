@@ -36,13 +36,60 @@ public class WorkoutSession {
     /** Optional notes for the session. */
     public String notes;
 
+    /**
+     * Row version this copy was read at (see SchemaMigrator v6), or 0 if
+     * not known. Updates and deletes with a version only go through if
+     * the row still has it.
+     */
+    public long version;
+
+    /**
+     * Makes a field-by-field copy, so a cached session cannot be
+     * changed by code that edits the copy it was given.
+     * @return a new session with the same values
+     */
+    public WorkoutSession copy() {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = date;
+        s.exerciseName = exerciseName;
+        s.muscleGroup = muscleGroup;
+        s.sets = sets;
+        s.reps = reps;
+        s.weightLbs = weightLbs;
+        s.durationMin = durationMin;
+        s.rpe = rpe;
+        s.notes = notes;
+        s.version = version;
+        return s;
+    }
+
     /**
      * Returns the workout information as a CSV-style line.
+     * Text fields with commas or quotes are quoted, so the line can be read back.
      * @return a comma-separated string with the session data
      */
     @Override
     public String toString() {
-        return id + "," + date + "," + exerciseName + "," + muscleGroup + "," +
-                sets + "," + reps + "," + weightLbs + "," + durationMin + "," + rpe + "," + notes;
+        StringBuilder sb = new StringBuilder(64);
+        appendCsv(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the CSV line (same columns as data/workouts.csv, no newline).
+     * @param sb where to append
+     */
+    public void appendCsv(StringBuilder sb) {
+        sb.append(id).append(',');
+        Csv.appendField(sb, date);
+        sb.append(',');
+        Csv.appendField(sb, exerciseName);
+        sb.append(',');
+        Csv.appendField(sb, muscleGroup);
+        sb.append(',').append(sets).append(',').append(reps).append(',');
+        Csv.appendNumber(sb, weightLbs);
+        sb.append(',').append(durationMin).append(',').append(rpe).append(',');
+        Csv.appendField(sb, notes);
     }
 }
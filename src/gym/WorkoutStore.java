@@ -0,0 +1,139 @@
+package gym;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The storage operations the GUI needs, so the app can run on
+ * different backends. SessionService keeps the data in SQLite;
+ * LogStore keeps it in a memory-mapped append-only file.
+ *
+ * Write methods return false instead of throwing when something fails,
+ * the same way SessionService always has.
+ */
+public interface WorkoutStore {
+
+    /**
+     * Opens (or creates) the storage at a path.
+     * @param path the file to use
+     * @throws IllegalArgumentException if it cannot be opened
+     */
+    void connect(String path);
+
+    /** Releases the open file(s). */
+    void close();
+
+    /** @return every session, in id order */
+    ArrayList<WorkoutSession> listAll();
+
+    /** @return number of sessions (0 if it cannot be read) */
+    int countAll();
+
+    /**
+     * Loads one page of sessions in id order.
+     * @param afterId only sessions with a larger id (Long.MIN_VALUE for the first page)
+     * @param limit   max sessions to return
+     * @return the sessions, in id order
+     */
+    ArrayList<WorkoutSession> listAfter(long afterId, int limit);
+
+    /**
+     * Same as listAfter(), but as compact records.
+     * @param afterId only sessions with a larger id (Long.MIN_VALUE for the first page)
+     * @param limit   max sessions to return
+     * @return the sessions, in id order
+     */
+    default ArrayList<SessionRecord> listRecordsAfter(long afterId, int limit) {
+        ArrayList<WorkoutSession> page = listAfter(afterId, limit);
+        ArrayList<SessionRecord> out = new ArrayList<>(page.size());
+        for (WorkoutSession s : page) out.add(SessionRecord.of(s));
+        return out;
+    }
+
+    /**
+     * Finds the sessions a query's filters keep (text, dates, RPE, ...).
+     * @param q the filters and max rows
+     * @return the matching sessions, in id order
+     */
+    ArrayList<SessionRecord> search(SessionQuery q);
+
+    /**
+     * @param id a session id (need not exist)
+     * @return number of sessions with a smaller id (the row's position in id order)
+     */
+    int countBefore(int id);
+
+    /**
+     * @param offset position in id order (0 = smallest id)
+     * @return the id at that position, or null if there is none
+     */
+    Integer idAtOffset(int offset);
+
+    /**
+     * @param id the session id
+     * @return a copy of the session, or null if there is no such id
+     */
+    WorkoutSession findById(int id);
+
+    /**
+     * @param s the new session
+     * @return true if it was stored
+     */
+    boolean add(WorkoutSession s);
+
+    /**
+     * @param s the session with its new values (matched by id). Stores
+     *          with row versions only apply it if s.version is 0 or
+     *          still the row's version, and then move s.version on.
+     * @return true if the session was updated; false if no session has
+     *         the id, for a version conflict or an error
+     */
+    boolean updateSession(WorkoutSession s);
+
+    /**
+     * @param id the session to delete
+     * @return true if it was deleted; false if no session has the id or on an error
+     */
+    boolean deleteById(int id);
+
+    /**
+     * Deletes a session only if it still has the version it was read at.
+     * Stores without row versions ignore the version.
+     * @param id      the session to delete
+     * @param version its version when it was read (0 for any)
+     * @return true if it was deleted; false if no session has the id,
+     *         for a version conflict or an error
+     */
+    default boolean deleteById(int id, long version) {
+        return deleteById(id);
+    }
+
+    /**
+     * @param id the id to check
+     * @return true if a session has this id
+     */
+    boolean existsId(int id);
+
+    /**
+     * @param exercise name of the lift
+     * @param date     yyyy-mm-dd date to look back from
+     * @return best estimated 1RM for the lift since 7 days before the date (0 if none)
+     */
+    double bestE1RMInLast7Days(String exercise, String date);
+
+    /**
+     * Registers a listener that is told about every committed change.
+     * It is called on the thread that made the change (or on a watcher
+     * thread for changes made by other programs).
+     * @param listener gets the changes
+     */
+    void addChangeListener(Consumer<SessionChange> listener);
+
+    /**
+     * @param listener a listener given to addChangeListener()
+     */
+    void removeChangeListener(Consumer<SessionChange> listener);
+
+    /** @return timing and error counts for this store */
+    ServiceMetrics getMetrics();
+}
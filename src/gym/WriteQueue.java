@@ -0,0 +1,209 @@
+package gym;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts every write to one SessionService through a single thread.
+ *
+ * SQLite only has one writer at a time anyway; with many callers (for
+ * example API requests) they would otherwise queue on the writer
+ * connection one by one, each paying for its own commit. Here callers
+ * get a future right away, and the writer thread groups the writes:
+ * after taking the first one it keeps collecting until it has maxBatch
+ * writes or maxWaitMs has passed, then runs the whole group (adds,
+ * updates and deletes, in the order they arrived) as one transaction
+ * with SessionService.writeAll(). A burst of N writes costs one commit
+ * (one disk sync) instead of N, so throughput grows with load, and each
+ * caller still gets its own result.
+ *
+ * The wait only happens while writes are coming in together, and only
+ * until the group is as big as the last one (about the number of
+ * callers writing at once): a lone writer is not slowed down, and under
+ * load a write waits at most maxWaitMs longer than it would on its own.
+ * Set maxWaitMs to 0 to only group what is already queued.
+ */
+public class WriteQueue {
+
+    /** Default max writes waiting in the queue. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    /** Default max writes taken together. */
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    /** Default max time (ms) the first write of a group waits for others. */
+    public static final int DEFAULT_MAX_WAIT_MS = 2;
+
+    /** One queued write (null for the stop marker) and the future its caller is waiting on. */
+    private static class Op {
+        final SessionWrite write;
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        Op(SessionWrite write) {
+            this.write = write;
+        }
+    }
+
+    private static final Op STOP = new Op(null);
+
+    private final SessionService service;
+    private final BlockingQueue<Op> queue;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final Thread writer;
+    private volatile boolean closed;
+    private int lastGroup;
+
+    /** Size and time of every group of writes. */
+    private final OpStats batchStats;
+
+    /**
+     * @param service where the writes go
+     */
+    public WriteQueue(SessionService service) {
+        this(service, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, DEFAULT_MAX_WAIT_MS);
+    }
+
+    /**
+     * @param service   where the writes go
+     * @param capacity  max writes waiting; more are refused
+     * @param maxBatch  max writes in one transaction
+     * @param maxWaitMs max time the first write of a group waits for others
+     */
+    public WriteQueue(SessionService service, int capacity, int maxBatch, int maxWaitMs) {
+        if (maxBatch < 1 || maxWaitMs < 0) throw new IllegalArgumentException("maxBatch must be at least 1 and maxWaitMs at least 0.");
+        this.service = service;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.batchStats = service.getMetrics().op("writeQueue.batch");
+        writer = new Thread(this::run, "db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param s the new session
+     * @return true if it was inserted, false if the id exists or the write failed
+     */
+    public CompletableFuture<Boolean> add(WorkoutSession s) {
+        return offer(new Op(SessionWrite.add(s)));
+    }
+
+    /**
+     * @param s the session with its new values
+     * @return the result of SessionService.updateSession()
+     */
+    public CompletableFuture<Boolean> update(WorkoutSession s) {
+        return offer(new Op(SessionWrite.update(s)));
+    }
+
+    /**
+     * @param id the session to delete
+     * @return the result of SessionService.deleteById()
+     */
+    public CompletableFuture<Boolean> delete(int id) {
+        return offer(new Op(SessionWrite.delete(id)));
+    }
+
+    /**
+     * @param id      the session to delete
+     * @param version the version it was read at (0 for any)
+     * @return the result of SessionService.deleteById(int, long)
+     */
+    public CompletableFuture<Boolean> delete(int id, long version) {
+        return offer(new Op(SessionWrite.delete(id, version)));
+    }
+
+    /** @return writes waiting to run */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking new writes, waits for the queued ones to finish and
+     * stops the writer thread.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Boolean> offer(Op op) {
+        if (closed) {
+            op.done.completeExceptionally(new IllegalStateException("The write queue is closed."));
+        } else if (!queue.offer(op)) {
+            op.done.completeExceptionally(new IllegalStateException("Too many writes waiting; try again."));
+        }
+        return op.done;
+    }
+
+    private void run() {
+        List<Op> taken = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                taken.add(queue.take());
+                collect(taken);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long t0 = System.nanoTime();
+            lastGroup = taken.size();
+            boolean stop = runAll(taken);
+            batchStats.success(t0, 0, taken.size());
+            if (stop) {
+                // anything that slipped in after close() is refused
+                queue.drainTo(taken);
+                for (Op op : taken) {
+                    if (!op.done.isDone()) op.done.completeExceptionally(new IllegalStateException("The write queue is closed."));
+                }
+                return;
+            }
+            taken.clear();
+        }
+    }
+
+    // takes what is queued (up to maxBatch), then waits at most maxWaitNanos
+    // for more while the group is smaller than the last one
+    private void collect(List<Op> taken) throws InterruptedException {
+        long deadline = System.nanoTime() + (lastGroup > 1 ? maxWaitNanos : 0);
+        while (taken.size() < maxBatch && taken.get(taken.size() - 1) != STOP) {
+            if (queue.drainTo(taken, maxBatch - taken.size()) > 0) continue;
+            if (taken.size() >= lastGroup) return;
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return;
+            Op op = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (op == null) return;
+            taken.add(op);
+        }
+    }
+
+    // runs the writes before STOP as one transaction; true if STOP was reached
+    private boolean runAll(List<Op> ops) {
+        int n = ops.indexOf(STOP);
+        boolean stop = n >= 0;
+        if (!stop) n = ops.size();
+        if (n > 0) {
+            List<SessionWrite> group = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) group.add(ops.get(i).write);
+            try {
+                boolean[] ok = service.writeAll(group);
+                for (int i = 0; i < n; i++) ops.get(i).done.complete(ok[i]);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < n; i++) ops.get(i).done.completeExceptionally(e);
+            }
+        }
+        if (stop) STOP.done.complete(true);
+        return stop;
+    }
+}
@@ -0,0 +1,54 @@
+package gym;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Switching stores quickly runs the connects and closes in the order they
+ * were asked for, so the store in use at the end is the one left open.
+ */
+class AsyncSessionServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @RepeatedTest(20)
+    void quickSwitchBackLeavesTheStoreOpen() {
+        LogStore a = new LogStore();
+        LogStore b = new LogStore();
+        AsyncSessionService async = new AsyncSessionService(a);
+        try {
+            async.connect(dir.resolve("a" + LogStore.EXTENSION).toString());
+            async.use(b);
+            async.connect(dir.resolve("b" + LogStore.EXTENSION).toString());
+            async.use(a);
+            assertEquals(0, async.connect(dir.resolve("a2" + LogStore.EXTENSION).toString()).join());
+
+            assertTrue(a.add(session(1)), "the store in use must be open");
+            assertFalse(b.add(session(1)), "the store switched away from must be closed");
+        } finally {
+            async.close();
+        }
+    }
+
+    private static WorkoutSession session(int id) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = "2025-10-11";
+        s.exerciseName = "Squat";
+        s.muscleGroup = "Legs";
+        s.sets = 3;
+        s.reps = 5;
+        s.weightLbs = 225;
+        s.durationMin = 10;
+        s.rpe = 8;
+        s.notes = "";
+        return s;
+    }
+}
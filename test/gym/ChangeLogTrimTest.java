@@ -0,0 +1,98 @@
+package gym;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * change_log stays bounded while the program keeps running, but still
+ * reaches back to the startup snapshot.
+ */
+class ChangeLogTrimTest {
+
+    @TempDir
+    Path dir;
+
+    private Path db;
+    private SessionService service;
+    private int nextId = 1;
+
+    @BeforeEach
+    void connect() {
+        db = dir.resolve("trim.db");
+        service = new SessionService();
+        service.setDurability(DurabilityProfile.FAST);
+        service.connect(db.toString());
+    }
+
+    @AfterEach
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void logIsTrimmedWithoutReconnecting() throws SQLException {
+        addBatch(SessionService.CHANGE_LOG_KEEP + 5_000);
+        for (int i = 0; i < SessionService.CHANGE_LOG_TRIM_EVERY; i++) assertTrue(service.add(session(nextId++)));
+        // trimmed to CHANGE_LOG_KEEP at most CHANGE_LOG_TRIM_EVERY writes ago
+        long kept = scalar("SELECT COUNT(*) FROM change_log");
+        assertTrue(kept <= SessionService.CHANGE_LOG_KEEP + SessionService.CHANGE_LOG_TRIM_EVERY, "kept " + kept);
+        assertEquals(service.changeSeq(), scalar("SELECT MAX(seq) FROM change_log"));
+    }
+
+    @Test
+    void entriesAfterTheSnapshotAreKept() throws SQLException {
+        addBatch(100);
+        long pin = service.changeSeq();
+        service.keepChangesAfter(pin);
+        addBatch(SessionService.CHANGE_LOG_KEEP + 5_000);
+        for (int i = 0; i < SessionService.CHANGE_LOG_TRIM_EVERY; i++) assertTrue(service.add(session(nextId++)));
+
+        assertEquals(pin + 1, scalar("SELECT MIN(seq) FROM change_log"));
+
+        assertNotNull(service.changedSince(pin, Integer.MAX_VALUE));
+    }
+
+    private void addBatch(int n) {
+        List<WorkoutSession> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) list.add(session(nextId++));
+        for (boolean ok : service.addBatch(list)) assertTrue(ok);
+    }
+
+    private long scalar(String sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static WorkoutSession session(int id) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = "2025-10-11";
+        s.exerciseName = "Squat";
+        s.muscleGroup = "Legs";
+        s.sets = 3;
+        s.reps = 5;
+        s.weightLbs = 225;
+        s.durationMin = 10;
+        s.rpe = 8;
+        s.notes = "";
+        return s;
+    }
+}
@@ -0,0 +1,94 @@
+package gym;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunking and duplicate handling of the CSV import, and that the import
+ * lets other writes through between its chunks.
+ */
+class CsvImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rowsGoInChunksAndDuplicatesAreRejected() throws IOException, SQLException {
+        Path csv = csv("dup.csv", 1, 2, 3, 2, 4, 5);
+        Set<Integer> stored = new HashSet<>();
+        List<Integer> sizes = new ArrayList<>();
+        CsvImporter importer = new CsvImporter(chunk -> {
+            sizes.add(chunk.size());
+            int[] counts = new int[chunk.size()];
+            for (int i = 0; i < counts.length; i++) counts[i] = stored.add(chunk.get(i).id) ? 1 : 0;
+            return counts;
+        });
+        importer.setChunkSize(4);
+
+        CsvImporter.Result r = importer.importFile(csv, null, null);
+
+        assertEquals(List.of(4, 2), sizes);
+        assertEquals(6, r.rowsRead);
+        assertEquals(5, r.imported);
+        assertEquals(1, r.rejected);
+        assertEquals(5, r.rejects.get(0).line); // header is line 1
+    }
+
+    @Test
+    void otherWritesGoInBetweenChunks() throws IOException, SQLException {
+        int rows = CsvImporter.DEFAULT_CHUNK_SIZE * 2 + 10;
+        int[] ids = new int[rows];
+        for (int i = 0; i < rows; i++) ids[i] = i + 1;
+        Path csv = csv("big.csv", ids);
+
+        SessionService service = new SessionService();
+        service.connect(dir.resolve("import.db").toString());
+        try {
+            List<Boolean> added = new ArrayList<>();
+            service.importCsv(csv, null, (read, bytes, total) -> {
+                WorkoutSession s = session(rows + added.size() + 1);
+                added.add(service.add(s));
+            });
+            assertTrue(added.size() >= 2);
+            assertTrue(added.stream().allMatch(b -> b));
+            assertEquals(rows + added.size(), service.countAll());
+        } finally {
+            service.close();
+        }
+    }
+
+    private Path csv(String name, int... ids) throws IOException {
+        StringBuilder sb = new StringBuilder("id,date,exerciseName,muscleGroup,sets,reps,weightLbs,durationMin,rpe,notes\n");
+        for (int id : ids) sb.append(id).append(",2025-10-11,Bench Press,Chest,5,5,205,40,7,\n");
+        Path p = dir.resolve(name);
+        Files.writeString(p, sb);
+        return p;
+    }
+
+    private static WorkoutSession session(int id) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = "2025-10-12";
+        s.exerciseName = "Squat";
+        s.muscleGroup = "Legs";
+        s.sets = 3;
+        s.reps = 5;
+        s.weightLbs = 225;
+        s.durationMin = 10;
+        s.rpe = 8;
+        s.notes = "";
+        return s;
+    }
+}
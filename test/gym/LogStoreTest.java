@@ -0,0 +1,76 @@
+package gym;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compaction is housekeeping after a write: when it fails the write still
+ * counts and the store keeps working.
+ */
+class LogStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private LogStore store;
+
+    @BeforeEach
+    void connect() {
+        file = dir.resolve("test" + LogStore.EXTENSION);
+        store = new LogStore();
+        store.connect(file.toString());
+        assertTrue(store.add(session(1, 0)));
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    @Test
+    void failedCompactionKeepsTheWrite() throws IOException {
+        // a directory where the compacted copy goes makes every compaction fail
+        Path blocker = dir.resolve("test" + LogStore.EXTENSION + ".compact");
+        Files.createDirectories(blocker.resolve("x"));
+        for (int i = 1; i <= LogStore.COMPACT_MIN_DEAD + 5; i++) {
+            assertTrue(store.updateSession(session(1, i)), "update " + i);
+        }
+        assertTrue(store.deadRecords() >= LogStore.COMPACT_MIN_DEAD);
+        assertEquals(LogStore.COMPACT_MIN_DEAD + 5, store.findById(1).reps);
+        assertThrows(IllegalStateException.class, store::compact);
+
+        Files.delete(blocker.resolve("x"));
+        Files.delete(blocker);
+        assertTrue(store.updateSession(session(1, 7)));
+        assertEquals(0, store.deadRecords());
+        assertEquals(7, store.findById(1).reps);
+        assertTrue(store.add(session(2, 1)));
+        assertEquals(2, store.countAll());
+    }
+
+    private static WorkoutSession session(int id, int reps) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.date = "2025-10-11";
+        s.exerciseName = "Squat";
+        s.muscleGroup = "Legs";
+        s.sets = 3;
+        s.reps = reps;
+        s.weightLbs = 225;
+        s.durationMin = 10;
+        s.rpe = 8;
+        s.notes = "";
+        return s;
+    }
+}
@@ -0,0 +1,36 @@
+package gym;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * When one file cannot be opened, connect() waits for the others before
+ * closing them and keeps none open.
+ */
+class MultiSessionServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @RepeatedTest(5)
+    void failedConnectWaitsForTheOtherFiles() throws IOException {
+        Path good = dir.resolve("good.db");
+        Path bad = Files.createDirectories(dir.resolve("bad.db")); // a folder cannot be opened
+        MultiSessionService multi = new MultiSessionService();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> multi.connect(bad + MultiSessionService.SEPARATOR + good));
+            assertEquals(1, multi.getMetrics().op("connect[good.db]").getCount(), "good.db finished opening");
+            assertTrue(multi.sourceNames().isEmpty());
+        } finally {
+            multi.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package gym;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the hot queries keep using their indexes after every
+ * migration, both on a new file and once the planner has statistics.
+ */
+class QueryPlanTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void newDatabaseUsesIndexes() throws SQLException {
+        Path db = connect("new.db", 0);
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+            assertEquals(List.of(), SchemaMigrator.verifyQueryPlans(conn));
+        }
+    }
+
+    @Test
+    void analyzedDatabaseUsesIndexes() throws SQLException {
+        Path db = connect("analyzed.db", 500);
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement st = conn.createStatement()) {
+            st.execute("ANALYZE");
+            assertEquals(List.of(), SchemaMigrator.verifyQueryPlans(conn));
+        }
+    }
+
+    // migrates a new file through the service and adds that many sessions
+    private Path connect(String name, int rows) {
+        Path db = dir.resolve(name);
+        SessionService service = new SessionService();
+        service.connect(db.toString());
+        try {
+            String[] exercises = {"Bench Press", "Squat", "Deadlift"};
+            for (int i = 1; i <= rows; i++) {
+                WorkoutSession s = new WorkoutSession();
+                s.id = i;
+                s.date = LocalDate.of(2024, 1, 1).plusDays(i / 3).toString();
+                s.exerciseName = exercises[i % exercises.length];
+                s.muscleGroup = "Other";
+                s.sets = 3;
+                s.reps = 5;
+                s.weightLbs = 100 + i % 50;
+                s.durationMin = 10;
+                s.rpe = 8;
+                s.notes = "";
+                service.add(s);
+            }
+        } finally {
+            service.close();
+        }
+        return db;
+    }
+}
@@ -0,0 +1,64 @@
+package gym;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A fill from a database read must not undo a write that happened while
+ * the read was running.
+ */
+class SessionCacheTest {
+
+    @Test
+    void fillIsStoredWhenNothingChanged() {
+        SessionCache cache = new SessionCache(8);
+        long stamp = cache.stamp(1);
+        assertTrue(cache.putIfAbsent(session(1, 3), stamp));
+        assertEquals(3, cache.get(1).version);
+    }
+
+    @Test
+    void fillAfterDeleteIsDropped() {
+        SessionCache cache = new SessionCache(8);
+        long stamp = cache.stamp(1);
+        cache.remove(1); // deleted after the read saw the row
+        assertFalse(cache.putIfAbsent(session(1, 3), stamp));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void fillDoesNotReplaceNewerWrite() {
+        SessionCache cache = new SessionCache(8);
+        long stamp = cache.stamp(1);
+        cache.put(session(1, 4)); // updated after the read saw version 3
+        assertFalse(cache.putIfAbsent(session(1, 3), stamp));
+        assertEquals(4, cache.get(1).version);
+    }
+
+    @Test
+    void fillAfterClearIsDropped() {
+        SessionCache cache = new SessionCache(8);
+        long stamp = cache.stamp(1);
+        cache.clear();
+        assertFalse(cache.putIfAbsent(session(1, 3), stamp));
+    }
+
+    @Test
+    void writeToAnotherIdKeepsTheFill() {
+        SessionCache cache = new SessionCache(8);
+        long stamp = cache.stamp(1);
+        cache.remove(2);
+        assertTrue(cache.putIfAbsent(session(1, 3), stamp));
+    }
+
+    private static WorkoutSession session(int id, long version) {
+        WorkoutSession s = new WorkoutSession();
+        s.id = id;
+        s.version = version;
+        return s;
+    }
+}
@@ -0,0 +1,82 @@
+package gym;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A snapshot written by sync() reads back the same rows, and one that was
+ * damaged on disk is refused instead of shown.
+ */
+class StartupSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private SessionService service;
+
+    @BeforeEach
+    void connect() {
+        service = new SessionService();
+        service.connect(dir.resolve("snap.db").toString());
+        for (int id = 1; id <= 50; id++) {
+            WorkoutSession s = new WorkoutSession();
+            s.id = id;
+            s.date = "2025-10-11";
+            s.exerciseName = id % 2 == 0 ? "Squat" : "Bench Press";
+            s.muscleGroup = id % 2 == 0 ? "Legs" : "Chest";
+            s.sets = 3;
+            s.reps = 5;
+            s.weightLbs = 100 + id;
+            s.durationMin = 10;
+            s.rpe = 8;
+            s.notes = "note " + id;
+            service.add(s);
+        }
+    }
+
+    @AfterEach
+    void close() {
+        service.close();
+    }
+
+    @Test
+    void syncWritesRowsThatReadBack() throws IOException {
+        StartupSnapshot snap = StartupSnapshot.sync(service);
+        assertNotNull(snap);
+        assertEquals(50, snap.size());
+        SessionRecord r = StartupSnapshot.open(StartupSnapshot.fileFor(service.getPath())).record(6);
+        assertEquals(7, r.id());
+        assertEquals("note 7", r.notes());
+        assertFalse(Files.exists(Path.of(StartupSnapshot.fileFor(service.getPath()) + ".tmp")));
+    }
+
+    @Test
+    void damagedFileIsRefused() throws IOException {
+        assertNotNull(StartupSnapshot.sync(service));
+        Path file = StartupSnapshot.fileFor(service.getPath());
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long at = ch.size() - 3; // inside the notes
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, at);
+            b.put(0, (byte) (b.get(0) ^ 0x20));
+            ch.write(b.rewind(), at);
+        }
+        assertThrows(IOException.class, () -> StartupSnapshot.open(file));
+        assertNull(StartupSnapshot.openIfPresent(file));
+    }
+}